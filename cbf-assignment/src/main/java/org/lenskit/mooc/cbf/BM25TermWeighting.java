@@ -0,0 +1,36 @@
+package org.lenskit.mooc.cbf;
+
+import org.lenskit.inject.Shareable;
+
+import javax.inject.Inject;
+import java.io.Serializable;
+
+/**
+ * Okapi BM25 term frequency: {@code tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / avgLength))}.
+ * Frequencies saturate as they grow (controlled by {@linkplain TermSaturation k1}), and are
+ * discounted on items with more tag applications than average (controlled by
+ * {@linkplain LengthNormalization b}).
+ *
+ * <p>The model's usual log IDF is kept rather than BM25's probabilistic IDF, which is negative for
+ * tags on more than half the items.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Shareable
+public class BM25TermWeighting implements TermWeighting, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final double k1;
+    private final double b;
+
+    @Inject
+    public BM25TermWeighting(@TermSaturation double k1, @LengthNormalization double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public double weight(int tf, int maxTf, int length, double averageLength) {
+        return tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / averageLength));
+    }
+}
@@ -0,0 +1,20 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling the number of dimensions of the {@linkplain TagEmbedding dense tag
+ * embedding}.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(64)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface EmbeddingDimension {
+}
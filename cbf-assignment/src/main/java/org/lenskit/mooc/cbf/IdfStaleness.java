@@ -0,0 +1,23 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultDouble;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling how stale the IDF weights of an incrementally-updated model may become.
+ * It is the largest change in any tag's log-IDF (or in the log of the average item length), since
+ * the model was last fully normalized, that is tolerated before every item vector is recomputed.
+ *
+ * @see IncrementalTFIDFModelBuilder
+ */
+@Documented
+@Qualifier
+@Parameter(Double.class)
+@DefaultDouble(0.1)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface IdfStaleness {
+}
@@ -0,0 +1,284 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.data.entities.Entity;
+import org.lenskit.inject.Shareable;
+import org.lenskit.inject.Transient;
+import org.lenskit.util.IdBox;
+import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.SortedKeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Maintains a TF-IDF model as new tag applications arrive, without rebuilding it from scratch.
+ *
+ * <p>The builder keeps the raw term frequencies of each item and the global document frequencies
+ * of each tag.  Applying a batch of tag applications updates those counts and recomputes the
+ * vectors of the items that were tagged, using the current IDF.  The other items keep the weights
+ * they were given, so their IDF (and the average item length used by some
+ * {@linkplain TermWeighting term weightings}) is allowed to drift: when any tag's log-IDF, or the
+ * log of the average length, has moved by more than the {@linkplain IdfStaleness staleness
+ * threshold} since the last full normalization, every vector is recomputed.
+ *
+ * <p>Each batch publishes a new immutable model snapshot, which shares the unchanged item vectors
+ * with the previous one.  Bind this class as the {@link TFIDFModelSource} so that the scorer and
+ * the other model consumers see each snapshot as soon as it is published.  It is shared by every
+ * recommender built from the same engine; get it from a recommender with
+ * {@code get(IncrementalTFIDFModelBuilder.class)} to apply new tag applications.
+ *
+ * <p>The builder keeps the term frequencies of every item for as long as it lives, so its memory
+ * grows with the number of distinct item-tag pairs as well as with the model.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Shareable
+public class IncrementalTFIDFModelBuilder implements TFIDFModelSource, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalTFIDFModelBuilder.class);
+
+    private final double staleness;
+    private final TermWeighting termWeighting;
+    private final TagVocabulary vocabulary;
+    private final IntArrayList docFreq = new IntArrayList();
+    private final LongSet items;
+    private final Long2ObjectMap<Int2IntOpenHashMap> termFreqs = new Long2ObjectOpenHashMap<>();
+    private long totalLength;
+
+    /**
+     * The log-IDF of each tag as of the last full normalization (or when the tag first appeared).
+     */
+    private final DoubleArrayList baseIdf = new DoubleArrayList();
+    private double baseLogN;
+    private double baseLogLength;
+    /**
+     * Tags whose document frequency has changed since the last full normalization.
+     */
+    private final IntSet changedTags = new IntOpenHashSet();
+
+    private SortedKeyIndex itemIndex;
+    private TagVector[] vectors;
+    private TagVocabulary publishedVocabulary;
+
+    private volatile TFIDFModel model;
+
+    /**
+     * Construct the builder and compute the initial model.
+     * @param dao The data access object.
+     * @param lowercase Whether to lower-case tags.
+     * @param normalize Whether to normalize tags' Unicode form and whitespace.
+     * @param weighting The term frequency weighting.
+     * @param threshold The IDF staleness threshold.
+     */
+    @Inject
+    public IncrementalTFIDFModelBuilder(@Transient DataAccessObject dao,
+                                        @LowercaseTags boolean lowercase,
+                                        @NormalizeTags boolean normalize,
+                                        TermWeighting weighting,
+                                        @IdfStaleness double threshold) {
+        staleness = threshold;
+        termWeighting = weighting;
+        vocabulary = new TagVocabulary(lowercase, normalize);
+        items = new LongOpenHashSet(dao.getEntityIds(CommonTypes.ITEM));
+        try (ObjectStream<IdBox<List<Entity>>> stream = dao.query(TagData.ITEM_TAG_TYPE)
+                                                           .groupBy(TagData.ITEM_ID)
+                                                           .stream()) {
+            for (IdBox<List<Entity>> item : stream) {
+                for (Entity tagApplication : item.getValue()) {
+                    recordTag(item.getId(), tagApplication.get(TagData.TAG));
+                }
+            }
+        }
+        renormalize();
+    }
+
+    /**
+     * Get the current model snapshot.
+     * @return The most recently published model.
+     */
+    @Override
+    public TFIDFModel getModel() {
+        return model;
+    }
+
+    /**
+     * Apply a batch of new tag applications.
+     * @param tagApplications The tag applications, as entities of type
+     *                        {@link TagData#ITEM_TAG_TYPE}.
+     * @return The new model snapshot.
+     */
+    public synchronized TFIDFModel applyTags(Collection<? extends Entity> tagApplications) {
+        LongSet affected = new LongOpenHashSet();
+        for (Entity tagApplication : tagApplications) {
+            long item = tagApplication.getLong(TagData.ITEM_ID);
+            recordTag(item, tagApplication.get(TagData.TAG));
+            affected.add(item);
+        }
+
+        double drift = computeDrift();
+        if (drift > staleness) {
+            logger.info("collection statistics drifted by {}, renormalizing TF-IDF model", drift);
+            renormalize();
+        } else {
+            logger.debug("updating {} item vectors for {} new tag applications",
+                         affected.size(), tagApplications.size());
+            updateItems(affected);
+        }
+        return model;
+    }
+
+    /**
+     * Count a tag application.
+     */
+    private void recordTag(long item, String tag) {
+        int id = vocabulary.intern(tag);
+        if (id == docFreq.size()) {
+            docFreq.add(0);
+            baseIdf.add(Double.NaN);
+        }
+        items.add(item);
+        totalLength += 1;
+        Int2IntOpenHashMap tf = termFreqs.get(item);
+        if (tf == null) {
+            tf = new Int2IntOpenHashMap();
+            termFreqs.put(item, tf);
+        }
+        if (tf.addTo(id, 1) == 0) {
+            docFreq.set(id, docFreq.getInt(id) + 1);
+            changedTags.add(id);
+        }
+    }
+
+    /**
+     * Compute the current log-IDF of every tag.
+     */
+    private double[] computeIdf() {
+        double logN = Math.log(items.size());
+        double[] idf = new double[docFreq.size()];
+        for (int tag = 0; tag < idf.length; tag++) {
+            idf[tag] = logN - Math.log(docFreq.getInt(tag));
+        }
+        return idf;
+    }
+
+    /**
+     * Compute the average number of tag applications per tagged item.
+     */
+    private double averageLength() {
+        return (double) totalLength / termFreqs.size();
+    }
+
+    /**
+     * Compute the largest change in any tag's log-IDF, or in the log of the average item length,
+     * since the last full normalization.
+     */
+    private double computeDrift() {
+        double logN = Math.log(items.size());
+        // every tag's IDF moves with the number of items
+        double drift = Math.max(Math.abs(logN - baseLogN),
+                                Math.abs(Math.log(averageLength()) - baseLogLength));
+        IntIterator iter = changedTags.iterator();
+        while (iter.hasNext()) {
+            int tag = iter.nextInt();
+            double idf = logN - Math.log(docFreq.getInt(tag));
+            if (Double.isNaN(baseIdf.getDouble(tag))) {
+                // a new tag; only items computed with its current IDF have it
+                baseIdf.set(tag, idf);
+            }
+            drift = Math.max(drift, Math.abs(idf - baseIdf.getDouble(tag)));
+        }
+        return drift;
+    }
+
+    /**
+     * Recompute every item vector with the current IDF.
+     */
+    private void renormalize() {
+        double[] idf = computeIdf();
+        VectorBuilder builder = new VectorBuilder(idf, termWeighting, averageLength());
+        itemIndex = SortedKeyIndex.fromCollection(termFreqs.keySet());
+        vectors = new TagVector[itemIndex.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = makeVector(builder, termFreqs.get(itemIndex.getKey(i)));
+        }
+
+        baseIdf.clear();
+        baseIdf.addElements(0, idf);
+        baseLogN = Math.log(items.size());
+        baseLogLength = Math.log(averageLength());
+        changedTags.clear();
+        publish();
+    }
+
+    /**
+     * Recompute the vectors of some items with the current IDF.
+     */
+    private void updateItems(LongSet affected) {
+        VectorBuilder builder = new VectorBuilder(computeIdf(), termWeighting, averageLength());
+        boolean known = true;
+        LongIterator iter = affected.iterator();
+        while (known && iter.hasNext()) {
+            known = itemIndex.containsKey(iter.nextLong());
+        }
+        if (known) {
+            vectors = vectors.clone();
+        } else {
+            // some items are new, so re-index the vectors
+            SortedKeyIndex oldIndex = itemIndex;
+            TagVector[] oldVectors = vectors;
+            itemIndex = SortedKeyIndex.fromCollection(termFreqs.keySet());
+            vectors = new TagVector[itemIndex.size()];
+            for (int i = 0; i < oldVectors.length; i++) {
+                vectors[itemIndex.getIndex(oldIndex.getKey(i))] = oldVectors[i];
+            }
+        }
+
+        iter = affected.iterator();
+        while (iter.hasNext()) {
+            long item = iter.nextLong();
+            vectors[itemIndex.getIndex(item)] = makeVector(builder, termFreqs.get(item));
+        }
+        publish();
+    }
+
+    private static TagVector makeVector(VectorBuilder builder, Int2IntMap tf) {
+        int[] tags = new int[tf.size()];
+        int[] counts = new int[tf.size()];
+        int n = 0;
+        for (Int2IntMap.Entry e : tf.int2IntEntrySet()) {
+            tags[n] = e.getIntKey();
+            counts[n] = e.getIntValue();
+            n++;
+        }
+        return builder.makeVector(tags, counts);
+    }
+
+    /**
+     * Publish a model snapshot from the current vectors.
+     */
+    private void publish() {
+        // snapshots can share a vocabulary until new tags are added
+        if (publishedVocabulary == null || publishedVocabulary.size() != vocabulary.size()) {
+            publishedVocabulary = vocabulary.copy();
+        }
+        model = new TFIDFModel(publishedVocabulary, itemIndex, vectors);
+    }
+}
@@ -0,0 +1,16 @@
+package org.lenskit.mooc.cbf;
+
+/**
+ * A user profile builder that can also build profiles incrementally.  The profile of a
+ * {@linkplain #newAccumulator() fresh accumulator} fed a user's ratings has the same weights as
+ * the one returned by {@link #makeUserProfile(java.util.List)}.
+ *
+ * @see UserProfileCache
+ */
+public interface IncrementalUserProfileBuilder extends UserProfileBuilder {
+    /**
+     * Create an accumulator for a new, empty profile.
+     * @return The profile accumulator.
+     */
+    ProfileAccumulator newAccumulator();
+}
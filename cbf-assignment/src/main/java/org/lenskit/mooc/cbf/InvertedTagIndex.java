@@ -0,0 +1,126 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.io.Serializable;
+
+/**
+ * An inverted index from tags to the items that have them.  Each tag has a posting list of
+ * (item position, weight) pairs, sorted by decreasing weight, so a scan of a posting list sees the
+ * items where the tag matters most first.  The posting lists are stored back to back in flat
+ * arrays.
+ *
+ * @see TFIDFModel#getInvertedIndex()
+ */
+public final class InvertedTagIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int[] offsets;
+    private final int[] items;
+    private final float[] weights;
+    private final float minimumNorm;
+
+    /**
+     * Build an inverted index over item tag vectors.
+     * @param ntags The number of tags in the vocabulary.
+     * @param vectors The item tag vectors, by item position.
+     */
+    InvertedTagIndex(int ntags, TagVector[] vectors) {
+        offsets = new int[ntags + 1];
+        float minNorm = Float.POSITIVE_INFINITY;
+        for (TagVector vec: vectors) {
+            for (int i = 0; i < vec.size(); i++) {
+                offsets[vec.getTagId(i) + 1] += 1;
+            }
+            if (vec.getNorm() > 0) {
+                minNorm = Math.min(minNorm, vec.getNorm());
+            }
+        }
+        minimumNorm = minNorm;
+        for (int t = 0; t < ntags; t++) {
+            offsets[t + 1] += offsets[t];
+        }
+
+        items = new int[offsets[ntags]];
+        weights = new float[offsets[ntags]];
+        int[] fill = new int[ntags];
+        for (int item = 0; item < vectors.length; item++) {
+            TagVector vec = vectors[item];
+            for (int i = 0; i < vec.size(); i++) {
+                int tag = vec.getTagId(i);
+                int pos = offsets[tag] + fill[tag]++;
+                items[pos] = item;
+                weights[pos] = vec.getWeight(i);
+            }
+        }
+
+        for (int t = 0; t < ntags; t++) {
+            sortPostings(offsets[t], offsets[t + 1]);
+        }
+    }
+
+    /**
+     * Sort a range of postings by decreasing weight, breaking ties by item position.
+     */
+    private void sortPostings(int from, int to) {
+        int[] order = new int[to - from];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = from + i;
+        }
+        IntArrays.quickSort(order, new AbstractIntComparator() {
+            @Override
+            public int compare(int a, int b) {
+                int cmp = Float.compare(weights[b], weights[a]);
+                return cmp != 0 ? cmp : Integer.compare(items[a], items[b]);
+            }
+        });
+        int[] sortedItems = new int[order.length];
+        float[] sortedWeights = new float[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedItems[i] = items[order[i]];
+            sortedWeights[i] = weights[order[i]];
+        }
+        System.arraycopy(sortedItems, 0, items, from, order.length);
+        System.arraycopy(sortedWeights, 0, weights, from, order.length);
+    }
+
+    /**
+     * Get the number of items with a tag.
+     * @param tag The tag ID.
+     * @return The length of the tag's posting list.
+     */
+    public int getPostingCount(int tag) {
+        return offsets[tag + 1] - offsets[tag];
+    }
+
+    /**
+     * Get the item of a posting.
+     * @param tag The tag ID.
+     * @param k The posting number, in decreasing order of weight.
+     * @return The item position.
+     */
+    public int getItem(int tag, int k) {
+        return items[offsets[tag] + k];
+    }
+
+    /**
+     * Get the weight of a posting.
+     * @param tag The tag ID.
+     * @param k The posting number, in decreasing order of weight.
+     * @return The tag's weight in the item's vector.
+     */
+    public float getWeight(int tag, int k) {
+        return weights[offsets[tag] + k];
+    }
+
+    /**
+     * Get the smallest norm of any non-empty item vector.  Item vectors are normalized, so this is
+     * 1 up to rounding; it lets score bounds account for that rounding.
+     *
+     * @return The smallest non-zero item vector norm, or infinity if there are no items with tags.
+     */
+    public float getMinimumNorm() {
+        return minimumNorm;
+    }
+}
@@ -0,0 +1,20 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultDouble;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling how strongly {@link BM25TermWeighting} discounts items with many tag
+ * applications (BM25's {@code b}).  0 disables length normalization; 1 normalizes fully.
+ */
+@Documented
+@Qualifier
+@Parameter(Double.class)
+@DefaultDouble(0.75)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LengthNormalization {
+}
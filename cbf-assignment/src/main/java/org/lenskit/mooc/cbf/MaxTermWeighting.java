@@ -0,0 +1,24 @@
+package org.lenskit.mooc.cbf;
+
+import org.lenskit.inject.Shareable;
+
+import java.io.Serializable;
+
+/**
+ * Maximum term frequency normalization: {@code a + (1 - a) * tf / maxTf}, where {@code maxTf} is
+ * the frequency of the item's most-applied tag and {@code a} is a smoothing term of 0.4.  This
+ * scales each item's frequencies relative to its own most frequent tag.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Shareable
+public class MaxTermWeighting implements TermWeighting, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final double SMOOTHING = 0.4;
+
+    @Override
+    public double weight(int tf, int maxTf, int length, double averageLength) {
+        return SMOOTHING + (1 - SMOOTHING) * tf / maxTf;
+    }
+}
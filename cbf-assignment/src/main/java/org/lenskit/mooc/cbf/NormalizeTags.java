@@ -0,0 +1,21 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultBoolean;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling whether tags are normalized (converted to Unicode NFKC form, trimmed,
+ * and with runs of whitespace collapsed) before they are added to the
+ * {@linkplain TagVocabulary tag vocabulary}.
+ */
+@Documented
+@Qualifier
+@Parameter(Boolean.class)
+@DefaultBoolean(false)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface NormalizeTags {
+}
@@ -0,0 +1,29 @@
+package org.lenskit.mooc.cbf;
+
+/**
+ * Accumulates a user's tag profile one rating at a time, so that a cached profile can be updated
+ * when the user rates another item instead of being rebuilt from their whole history.
+ *
+ * @see IncrementalUserProfileBuilder
+ */
+public interface ProfileAccumulator {
+    /**
+     * Add a rating to the profile.
+     * @param item The item ID.
+     * @param rating The rating value.
+     */
+    void addRating(long item, double rating);
+
+    /**
+     * Remove a previously-added rating from the profile.
+     * @param item The item ID.
+     * @param rating The rating value that was added.
+     */
+    void removeRating(long item, double rating);
+
+    /**
+     * Get the current profile.
+     * @return The user's tag profile, over the model's tag IDs.
+     */
+    TagVector getProfile();
+}
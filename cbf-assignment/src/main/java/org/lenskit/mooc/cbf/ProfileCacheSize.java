@@ -0,0 +1,20 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling the maximum number of user profiles kept by the
+ * {@linkplain UserProfileCache profile cache}.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(10000)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ProfileCacheSize {
+}
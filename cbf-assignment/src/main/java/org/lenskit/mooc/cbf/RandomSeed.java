@@ -0,0 +1,20 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter for the seed of the random numbers used by the {@linkplain TagProjector tag
+ * projectors}, so that the same configuration and data always produce the same embedding.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(42)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RandomSeed {
+}
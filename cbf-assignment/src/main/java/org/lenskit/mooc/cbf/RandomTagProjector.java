@@ -0,0 +1,35 @@
+package org.lenskit.mooc.cbf;
+
+import javax.inject.Inject;
+import java.util.Random;
+
+/**
+ * Gaussian random projection.  Each tag is mapped to a random direction, scaled so that dot
+ * products are preserved in expectation.  It is cheap to compute but needs more dimensions than
+ * {@link SVDTagProjector} for the same accuracy.  The directions are drawn from a generator seeded
+ * with the {@linkplain RandomSeed random seed}, so the projection is reproducible.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class RandomTagProjector implements TagProjector {
+    private final Random random;
+
+    @Inject
+    public RandomTagProjector(@RandomSeed int seed) {
+        this(new Random(seed));
+    }
+
+    public RandomTagProjector(Random rng) {
+        random = rng;
+    }
+
+    @Override
+    public float[] computeProjection(TFIDFModel model, int dim) {
+        float[] projection = new float[model.getVocabulary().size() * dim];
+        double scale = 1.0 / Math.sqrt(dim);
+        for (int i = 0; i < projection.length; i++) {
+            projection[i] = (float) (random.nextGaussian() * scale);
+        }
+        return projection;
+    }
+}
@@ -0,0 +1,20 @@
+package org.lenskit.mooc.cbf;
+
+import org.lenskit.inject.Shareable;
+
+import java.io.Serializable;
+
+/**
+ * Raw term frequency: a tag's weight is the number of times it was applied to the item.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Shareable
+public class RawTermWeighting implements TermWeighting, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public double weight(int tf, int maxTf, int length, double averageLength) {
+        return tf;
+    }
+}
@@ -0,0 +1,197 @@
+package org.lenskit.mooc.cbf;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.RealVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Truncated SVD (latent semantic analysis) of the item-tag matrix.  Tags are projected onto the
+ * matrix's top right singular vectors, so the embedding keeps as much of the item vectors as any
+ * linear projection of its dimension can, and tags that are applied to the same items end up close
+ * together.
+ *
+ * <p>The SVD is computed with a randomized range finder: the matrix is multiplied by a few more
+ * random vectors than the requested dimension, and a couple of power iterations sharpen the range
+ * they span, so the work is a handful of passes over the sparse item vectors plus an eigenproblem
+ * the size of the dimension.  If the matrix has lower rank than the requested dimension, the extra
+ * dimensions are zero.  The random vectors are drawn from a generator seeded with the
+ * {@linkplain RandomSeed random seed}, so the result is reproducible.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class SVDTagProjector implements TagProjector {
+    private static final Logger logger = LoggerFactory.getLogger(SVDTagProjector.class);
+    /**
+     * Number of random vectors beyond the requested dimension.
+     */
+    private static final int OVERSAMPLING = 10;
+    private static final int POWER_ITERATIONS = 2;
+    /**
+     * Relative size below which a singular value is treated as zero.
+     */
+    private static final double EPSILON = 1.0e-10;
+
+    private final Random random;
+
+    @Inject
+    public SVDTagProjector(@RandomSeed int seed) {
+        this(new Random(seed));
+    }
+
+    public SVDTagProjector(Random rng) {
+        random = rng;
+    }
+
+    @Override
+    public float[] computeProjection(TFIDFModel model, int dim) {
+        int nitems = model.getItemIndex().size();
+        int ntags = model.getVocabulary().size();
+        int k = Math.min(dim + OVERSAMPLING, Math.min(nitems, ntags));
+        float[] projection = new float[ntags * dim];
+        if (k == 0) {
+            return projection;
+        }
+        logger.info("computing {}-dimensional SVD of {}x{} item-tag matrix", dim, nitems, ntags);
+
+        // find an orthonormal basis (by columns) for the range of the matrix
+        double[][] omega = new double[k][ntags];
+        for (double[] col: omega) {
+            for (int t = 0; t < ntags; t++) {
+                col[t] = random.nextGaussian();
+            }
+        }
+        double[][] basis = multiply(model, omega);
+        orthonormalize(basis);
+        for (int i = 0; i < POWER_ITERATIONS; i++) {
+            double[][] tagBasis = multiplyTranspose(model, basis, ntags);
+            orthonormalize(tagBasis);
+            basis = multiply(model, tagBasis);
+            orthonormalize(basis);
+        }
+
+        // project the matrix onto the basis, B = Q^T X, and decompose B B^T = U S^2 U^T
+        double[][] reduced = multiplyTranspose(model, basis, ntags);
+        Array2DRowRealMatrix gram = new Array2DRowRealMatrix(k, k);
+        for (int a = 0; a < k; a++) {
+            for (int b = a; b < k; b++) {
+                double dot = dot(reduced[a], reduced[b]);
+                gram.setEntry(a, b, dot);
+                gram.setEntry(b, a, dot);
+            }
+        }
+        EigenDecomposition eigen = new EigenDecomposition(gram);
+        double[] values = eigen.getRealEigenvalues();
+        Integer[] order = new Integer[k];
+        for (int i = 0; i < k; i++) {
+            order[i] = i;
+        }
+        sortDescending(order, values);
+
+        // the right singular vectors are V = B^T U S^-1
+        double threshold = Math.max(values[order[0]], 0) * EPSILON;
+        for (int j = 0; j < Math.min(dim, k); j++) {
+            double value = values[order[j]];
+            if (value <= threshold) {
+                break;
+            }
+            double sigma = Math.sqrt(value);
+            RealVector u = eigen.getEigenvector(order[j]);
+            for (int t = 0; t < ntags; t++) {
+                double v = 0;
+                for (int a = 0; a < k; a++) {
+                    v += reduced[a][t] * u.getEntry(a);
+                }
+                projection[t * dim + j] = (float) (v / sigma);
+            }
+        }
+        return projection;
+    }
+
+    /**
+     * Multiply the item-tag matrix by a matrix over tags.
+     * @param cols The columns of the matrix, each indexed by tag.
+     * @return The columns of the product, each indexed by item position.
+     */
+    private static double[][] multiply(TFIDFModel model, double[][] cols) {
+        int nitems = model.getItemIndex().size();
+        double[][] result = new double[cols.length][nitems];
+        for (int i = 0; i < nitems; i++) {
+            TagVector vec = model.getTagVectorByIndex(i);
+            for (int c = 0; c < cols.length; c++) {
+                double sum = 0;
+                for (int e = 0; e < vec.size(); e++) {
+                    sum += vec.getWeight(e) * cols[c][vec.getTagId(e)];
+                }
+                result[c][i] = sum;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Multiply the transpose of the item-tag matrix by a matrix over items.
+     * @param cols The columns of the matrix, each indexed by item position.
+     * @return The columns of the product, each indexed by tag.
+     */
+    private static double[][] multiplyTranspose(TFIDFModel model, double[][] cols, int ntags) {
+        double[][] result = new double[cols.length][ntags];
+        for (int i = 0; i < cols[0].length; i++) {
+            TagVector vec = model.getTagVectorByIndex(i);
+            for (int c = 0; c < cols.length; c++) {
+                double x = cols[c][i];
+                for (int e = 0; e < vec.size(); e++) {
+                    result[c][vec.getTagId(e)] += vec.getWeight(e) * x;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Orthonormalize columns in place with modified Gram-Schmidt, applied twice for numerical
+     * stability.  Columns that are (numerically) dependent on earlier ones are zeroed.
+     */
+    private static void orthonormalize(double[][] cols) {
+        for (int j = 0; j < cols.length; j++) {
+            double[] col = cols[j];
+            double before = Math.sqrt(dot(col, col));
+            for (int pass = 0; pass < 2; pass++) {
+                for (int p = 0; p < j; p++) {
+                    double r = dot(col, cols[p]);
+                    for (int i = 0; i < col.length; i++) {
+                        col[i] -= r * cols[p][i];
+                    }
+                }
+            }
+            double norm = Math.sqrt(dot(col, col));
+            double scale = norm > before * EPSILON ? 1 / norm : 0;
+            for (int i = 0; i < col.length; i++) {
+                col[i] *= scale;
+            }
+        }
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static void sortDescending(Integer[] order, final double[] values) {
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(values[b], values[a]);
+            }
+        });
+    }
+}
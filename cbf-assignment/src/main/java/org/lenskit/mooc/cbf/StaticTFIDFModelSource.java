@@ -0,0 +1,25 @@
+package org.lenskit.mooc.cbf;
+
+import org.lenskit.inject.Shareable;
+
+import javax.inject.Inject;
+import java.io.Serializable;
+
+/**
+ * Model source for a model that does not change once it is built.
+ */
+@Shareable
+public class StaticTFIDFModelSource implements TFIDFModelSource, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final TFIDFModel model;
+
+    @Inject
+    public StaticTFIDFModelSource(TFIDFModel m) {
+        model = m;
+    }
+
+    @Override
+    public TFIDFModel getModel() {
+        return model;
+    }
+}
@@ -0,0 +1,21 @@
+package org.lenskit.mooc.cbf;
+
+import org.lenskit.inject.Shareable;
+
+import java.io.Serializable;
+
+/**
+ * Sublinear term frequency, {@code 1 + log(tf)}, so that a tag applied many times does not
+ * dominate an item's vector.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Shareable
+public class SublinearTermWeighting implements TermWeighting, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public double weight(int tf, int maxTf, int length, double averageLength) {
+        return 1 + Math.log(tf);
+    }
+}
@@ -0,0 +1,188 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.doubles.DoubleHeapPriorityQueue;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.api.ResultList;
+import org.lenskit.basic.AbstractItemRecommender;
+import org.lenskit.results.ResultAccumulator;
+import org.lenskit.results.Results;
+import org.lenskit.util.keys.KeyIndex;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+/**
+ * Content-based recommender that searches the model's {@linkplain InvertedTagIndex inverted tag
+ * index} instead of scoring every item.  It walks the posting lists of the tags the user likes in
+ * decreasing order of weight, scoring each item the first time it is reached.  The weights at the
+ * current depth of each list bound the score of any item not yet reached, so the walk stops as
+ * soon as that bound falls below the N-th best score.  Scores are the same as those computed by
+ * {@link TFIDFItemScorer}.
+ *
+ * <p>If the walk cannot fill the top N with items it reaches (for example, because the user likes
+ * very few tags), or no limit is requested, every candidate is scored instead.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class TFIDFItemRecommender extends AbstractItemRecommender {
+    private final TFIDFItemScorer scorer;
+
+    @Inject
+    public TFIDFItemRecommender(TFIDFItemScorer scorer) {
+        this.scorer = scorer;
+    }
+
+    /**
+     * Recommend items for a user.
+     * @param user The user ID.
+     * @param n The number of recommendations to produce, or a negative value for unlimited.
+     * @param candidates The candidate items, or {@code null} to consider all items.
+     * @param exclude The items to exclude, or {@code null} to exclude the items the user has rated.
+     * @return The top-{@code n} recommendations.
+     */
+    @Override
+    protected ResultList recommendWithDetails(long user, int n,
+                                              @Nullable LongSet candidates,
+                                              @Nullable LongSet exclude) {
+        // Use the same model snapshot for the whole request
+        TFIDFModel model = scorer.getModelSource().getModel();
+        TagVector userVector = scorer.getProfile(user);
+        float[] profile = new float[model.getVocabulary().size()];
+        double userNorm = TFIDFItemScorer.makeProfileArray(userVector, profile);
+        if (userNorm == 0.0) {
+            // no item has a defined cosine with this user
+            return Results.newResultList();
+        }
+
+        LongSet excluded = exclude != null ? exclude : scorer.getRatedItems(user);
+
+        if (n > 0) {
+            // the walk usually stops after reaching a small fraction of the items
+            ResultList results = searchIndex(model, userVector, profile, userNorm, n,
+                                             candidates, excluded, new IntOpenHashSet());
+            if (results != null) {
+                return results;
+            }
+        }
+        return scoreAll(model, profile, userNorm, n, candidates, excluded);
+    }
+
+    /**
+     * Find the top N items by walking the posting lists of the user's positively-weighted tags.
+     * @param seen The set to which the positions of the items reached by the walk are added.
+     * @return The top N items, or {@code null} if the walk could not establish them.
+     */
+    @Nullable
+    ResultList searchIndex(TFIDFModel model, TagVector userVector, float[] profile,
+                           double userNorm, int n,
+                           @Nullable LongSet candidates, LongSet excluded, IntSet seen) {
+        InvertedTagIndex index = model.getInvertedIndex();
+        KeyIndex itemIndex = model.getItemIndex();
+
+        // Only tags the user likes can raise an item's score; negatively-weighted tags only
+        // lower the scores of the items that have them.
+        IntArrayList terms = new IntArrayList();
+        for (int i = 0; i < userVector.size(); i++) {
+            int tag = userVector.getTagId(i);
+            if (tag < profile.length && profile[tag] > 0 && index.getPostingCount(tag) > 0) {
+                terms.add(tag);
+            }
+        }
+
+        int[] cursors = new int[terms.size()];
+        ResultAccumulator accum = ResultAccumulator.create(n);
+        // the scores of the current top N, smallest first
+        DoubleHeapPriorityQueue top = new DoubleHeapPriorityQueue(n + 1);
+        // item vectors are unit vectors up to rounding, so divide the bound by the smallest norm
+        double scale = 1.0 / index.getMinimumNorm() / userNorm;
+
+        boolean active = true;
+        while (active) {
+            // advance each posting list by one entry
+            active = false;
+            for (int k = 0; k < cursors.length; k++) {
+                int tag = terms.getInt(k);
+                if (cursors[k] >= index.getPostingCount(tag)) {
+                    continue;
+                }
+                active = true;
+                int idx = index.getItem(tag, cursors[k]);
+                cursors[k] += 1;
+                if (!seen.add(idx)) {
+                    continue;
+                }
+
+                long item = itemIndex.getKey(idx);
+                if ((candidates != null && !candidates.contains(item)) || excluded.contains(item)) {
+                    continue;
+                }
+                TagVector iv = model.getTagVectorByIndex(idx);
+                double score = iv.dot(profile) / iv.getNorm() / userNorm;
+                accum.add(item, score);
+                top.enqueue(score);
+                if (top.size() > n) {
+                    top.dequeueDouble();
+                }
+            }
+
+            // An item we have not reached has, for each tag, at most the weight at the list's
+            // current position (and nothing for exhausted lists).
+            double threshold = 0;
+            for (int k = 0; k < cursors.length; k++) {
+                int tag = terms.getInt(k);
+                if (cursors[k] < index.getPostingCount(tag)) {
+                    threshold += (double) profile[tag] * index.getWeight(tag, cursors[k]);
+                }
+            }
+            if (top.size() == n && top.firstDouble() >= threshold * scale) {
+                return accum.finish();
+            }
+        }
+
+        // Every list is exhausted and there are fewer than N items with positive scores, so
+        // items outside the lists might still make the top N.
+        return null;
+    }
+
+    /**
+     * Score every candidate item.
+     */
+    private ResultList scoreAll(TFIDFModel model, float[] profile, double userNorm, int n,
+                                @Nullable LongSet candidates, LongSet excluded) {
+        KeyIndex itemIndex = model.getItemIndex();
+        ResultAccumulator accum = ResultAccumulator.create(n);
+        if (candidates != null) {
+            LongIterator iter = candidates.iterator();
+            while (iter.hasNext()) {
+                long item = iter.nextLong();
+                int idx = itemIndex.tryGetIndex(item);
+                if (idx >= 0 && !excluded.contains(item)) {
+                    addScore(model, accum, idx, profile, userNorm);
+                }
+            }
+        } else {
+            for (int idx = 0; idx < itemIndex.size(); idx++) {
+                if (!excluded.contains(itemIndex.getKey(idx))) {
+                    addScore(model, accum, idx, profile, userNorm);
+                }
+            }
+        }
+        return accum.finish();
+    }
+
+    /**
+     * Score an item and add it to an accumulator, if its cosine is defined.
+     */
+    private void addScore(TFIDFModel model, ResultAccumulator accum, int idx,
+                          float[] profile, double userNorm) {
+        TagVector iv = model.getTagVectorByIndex(idx);
+        double itemNorm = iv.getNorm();
+        if (itemNorm != 0.0) {
+            accum.add(model.getItemIndex().getKey(idx), iv.dot(profile) / itemNorm / userNorm);
+        }
+    }
+}
@@ -1,41 +1,41 @@
 package org.lenskit.mooc.cbf;
 
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.lenskit.api.Result;
 import org.lenskit.api.ResultMap;
 import org.lenskit.basic.AbstractItemScorer;
 import org.lenskit.data.dao.DataAccessObject;
-import org.lenskit.data.entities.CommonAttributes;
-import org.lenskit.data.ratings.Rating;
 import org.lenskit.results.Results;
+import org.lenskit.util.collections.LongUtils;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public class TFIDFItemScorer extends AbstractItemScorer {
+    private final TFIDFModelSource modelSource;
+    private final UserProfileCache profiles;
     private final DataAccessObject dao;
-    private final TFIDFModel model;
-    private final UserProfileBuilder profileBuilder;
 
     /**
      * Construct a new item scorer.  LensKit's dependency injector will call this constructor and
      * provide the appropriate parameters.
      *
-     * @param dao The data access object, for looking up users' ratings.
-     * @param m   The precomputed model containing the item tag vectors.
-     * @param upb The user profile builder for building user tag profiles.
+     * @param src   The source of the model containing the item tag vectors.
+     * @param cache The cache of user tag profiles.
+     * @param dao   The data access object, to load profiles the cache does not have.
      */
     @Inject
-    public TFIDFItemScorer(DataAccessObject dao, TFIDFModel m, UserProfileBuilder upb) {
+    public TFIDFItemScorer(TFIDFModelSource src, UserProfileCache cache, DataAccessObject dao) {
+        modelSource = src;
+        profiles = cache;
         this.dao = dao;
-        model = m;
-        profileBuilder = upb;
     }
 
     /**
@@ -48,113 +48,81 @@ public class TFIDFItemScorer extends AbstractItemScorer {
     @Nonnull
     @Override
     public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items){
-        // Get the user's ratings
-        List<Rating> ratings = dao.query(Rating.class)
-                                  .withAttribute(CommonAttributes.USER_ID, user)
-                                  .get();
+        // Use the same model snapshot for the whole request
+        TFIDFModel model = modelSource.getModel();
 
-        if (ratings == null) {
-            // the user doesn't exist, so return an empty ResultMap
+        // Create a place to store the results of our score computations
+        List<Result> results = new ArrayList<>(items.size());
+
+        // Get the user's profile, which is a vector with their 'like' for each tag.  It is laid out
+        // as a dense vector over tag IDs, so each item's cosine is a single pass over its (already
+        // normalized) tag vector.
+        float[] profile = new float[model.getVocabulary().size()];
+        double userNorm = makeProfileArray(getProfile(user), profile);
+        if (userNorm == 0.0) {
+            // If the denominator of the cosine similarity is 0, we can't score any items
             return Results.newResultMap();
         }
 
-        // Create a place to store the results of our score computations
-        List<Result> results = new ArrayList<>();
-
-        // Get the user's profile, which is a vector with their 'like' for each tag
-        Map<String, Double> userVector = profileBuilder.makeUserProfile(ratings);
-
-        for (Long item: items) {
-            Map<String, Double> iv = model.getItemVector(item);
+        LongIterator iter = LongUtils.asLongCollection(items).iterator();
+        while (iter.hasNext()) {
+            long item = iter.nextLong();
+            TagVector iv = model.getTagVector(item);
 
             // Compute the cosine of this item and the user's profile, store it in the output list
             // If the denominator of the cosine similarity is 0, skip the item
-            double userNorm = 0.0;
-            double itemNorm = 0.0;
-            for (Map.Entry<String, Double> e : iv.entrySet()) {
-                itemNorm += e.getValue()*e.getValue();
-            }
-
-            for (Map.Entry<String, Double> e : userVector.entrySet()) {
-                userNorm += e.getValue()*e.getValue();
-            }
-            if(itemNorm != 0.0 && userNorm != 0.0) {
-                itemNorm = Math.sqrt(itemNorm);
-                userNorm = Math.sqrt(userNorm);
-                double userItem = 0.0;
-                for (Map.Entry<String, Double> e : userVector.entrySet()) {
-                    if(iv.containsKey(e.getKey()))
-                        userItem += e.getValue() * iv.get(e.getKey());
-                }
-                double cosine = userItem / itemNorm / userNorm;
+            double itemNorm = iv.getNorm();
+            if (itemNorm != 0.0) {
+                double cosine = iv.dot(profile) / itemNorm / userNorm;
                 results.add(Results.create(item, cosine));
             }
         }
 
         return Results.newResultMap(results);
     }
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+    /**
+     * Get the items a user has rated.
+     * @param user The user ID.
+     * @return The user's rated items.
+     */
+    LongSet getRatedItems(long user) {
+        return profiles.getRatedItems(dao, user);
+    }
 
+    /**
+     * Get a user's tag profile.
+     * @param user The user ID.
+     * @return The user's profile vector.
+     */
+    TagVector getProfile(long user) {
+        return profiles.getProfile(dao, user);
+    }
 
+    /**
+     * Get the source of the model.
+     * @return The model source.
+     */
+    TFIDFModelSource getModelSource() {
+        return modelSource;
+    }
 
+    /**
+     * Lay a user's profile out as a dense vector over the model's tag IDs.  Tag IDs are stable
+     * across model snapshots, so if the profile comes from a newer snapshot than the caller's, any
+     * tags the caller's snapshot does not know are skipped.
+     *
+     * @param userVector The user's profile vector.
+     * @param profile The array to fill, indexed by tag ID.  It must be zeroed.
+     * @return The Euclidean norm of the profile.
+     */
+    static double makeProfileArray(TagVector userVector, float[] profile) {
+        for (int i = 0; i < userVector.size(); i++) {
+            int tag = userVector.getTagId(i);
+            if (tag < profile.length) {
+                profile[tag] = userVector.getWeight(i);
+            }
+        }
+        return userVector.getNorm();
+    }
+}
@@ -1,8 +1,10 @@
 package org.lenskit.mooc.cbf;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.lenskit.inject.Shareable;
+import org.lenskit.util.keys.KeyIndex;
 
 import java.io.Serializable;
 import java.util.Collections;
@@ -10,7 +12,9 @@ import java.util.Map;
 
 /**
  * The model for a TF-IDF recommender.  The model just remembers the normalized tag vector for each
- * item.
+ * item.  Tags are interned in a {@linkplain TagVocabulary vocabulary}, and each item's vector is
+ * stored as a compact {@link TagVector} of tag IDs and weights.  The model also provides an
+ * {@linkplain InvertedTagIndex inverted index} from tags to items for top-N search.
  *
  * @see TFIDFModelProvider
  */
@@ -19,22 +23,72 @@ import java.util.Map;
 // This model class will be built by the model builder
 @DefaultProvider(TFIDFModelProvider.class)
 public class TFIDFModel implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private final Map<Long, Map<String, Double>> itemVectors;
+    private final TagVocabulary vocabulary;
+    private final KeyIndex itemIndex;
+    private final TagVector[] itemVectors;
+    private transient volatile InvertedTagIndex invertedIndex;
 
     /**
      * Constructor for the model.  This is package-private; the only way to build a model is with
      * the {@linkplain TFIDFModelProvider model builder}.
      *
-     * @param itemVectors A map of item IDs to tag vectors.
+     * @param vocab The tag vocabulary.
+     * @param items The index of items with tag vectors.
+     * @param vectors The item tag vectors, by item position.
      */
-    TFIDFModel(Map<Long, Map<String, Double>> itemVectors) {
-        ImmutableMap.Builder<Long,Map<String,Double>> bld = ImmutableMap.builder();
-        for (Map.Entry<Long,Map<String,Double>> e: itemVectors.entrySet()) {
-            bld.put(e.getKey(), ImmutableMap.copyOf(e.getValue()));
+    TFIDFModel(TagVocabulary vocab, KeyIndex items, TagVector[] vectors) {
+        Preconditions.checkArgument(vectors.length == items.size(),
+                                    "vector array has incorrect size (%s != %s)",
+                                    vectors.length, items.size());
+        vocabulary = vocab;
+        itemIndex = items;
+        itemVectors = vectors;
+    }
+
+    /**
+     * Get the tag vocabulary.
+     * @return The vocabulary mapping tags to the IDs used in {@linkplain TagVector tag vectors}.
+     */
+    public TagVocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * Get the index of items in the model.
+     * @return The item index; item positions in this index are used by the
+     *         {@linkplain #getInvertedIndex() inverted index}.
+     */
+    public KeyIndex getItemIndex() {
+        return itemIndex;
+    }
+
+    /**
+     * Get the inverted index from tags to items.  The index is built the first time it is needed.
+     * @return The inverted index.
+     */
+    public InvertedTagIndex getInvertedIndex() {
+        InvertedTagIndex index = invertedIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = invertedIndex;
+                if (index == null) {
+                    index = new InvertedTagIndex(vocabulary.size(), itemVectors);
+                    invertedIndex = index;
+                }
+            }
         }
-        this.itemVectors = bld.build();
+        return index;
+    }
+
+    /**
+     * Get the normalized tag vector for an item by its position.
+     * @param idx The item's position in the {@linkplain #getItemIndex() item index}.
+     * @return The item's tag vector.
+     */
+    public TagVector getTagVectorByIndex(int idx) {
+        return itemVectors[idx];
     }
 
     /**
@@ -44,14 +98,29 @@ public class TFIDFModel implements Serializable {
      * @return The item's tag vector.  If the item is not known to the model, then this vector is
      *         empty.
      */
+    public TagVector getTagVector(long item) {
+        int idx = itemIndex.tryGetIndex(item);
+        return idx >= 0 ? itemVectors[idx] : TagVector.EMPTY;
+    }
+
+    /**
+     * Get the normalized tag vector for a particular item as a map.  This is a compatibility view
+     * of {@link #getTagVector(long)} that is built on each call.
+     *
+     * @param item The item.
+     * @return The item's tag vector.  If the item is not known to the model, then this vector is
+     *         empty.
+     */
     public Map<String, Double> getItemVector(long item) {
-        // Look up the item
-        Map<String, Double> vec = itemVectors.get(item);
-        if (vec == null) {
+        TagVector vec = getTagVector(item);
+        if (vec.size() == 0) {
             // We don't know the item! Return an empty vector
             return Collections.emptyMap();
-        } else {
-            return vec;
         }
+        ImmutableMap.Builder<String, Double> bld = ImmutableMap.builder();
+        for (int i = 0; i < vec.size(); i++) {
+            bld.put(vocabulary.getTag(vec.getTagId(i)), (double) vec.getWeight(i));
+        }
+        return bld.build();
     }
 }
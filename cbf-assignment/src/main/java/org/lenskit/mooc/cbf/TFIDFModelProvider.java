@@ -1,19 +1,26 @@
 package org.lenskit.mooc.cbf;
 
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.entities.CommonTypes;
 import org.lenskit.data.entities.Entity;
 import org.lenskit.inject.Transient;
+import org.lenskit.util.IdBox;
+import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.SortedKeyIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Builder for computing {@linkplain TFIDFModel TF-IDF models} from item tag data.  Each item is
@@ -23,18 +30,59 @@ import java.util.Set;
  */
 public class TFIDFModelProvider implements Provider<TFIDFModel> {
     private static final Logger logger = LoggerFactory.getLogger(TFIDFModelProvider.class);
+    /**
+     * Default number of items below which a build task is not split further.
+     */
+    static final int TASK_SIZE = 256;
 
     private final DataAccessObject dao;
+    private final boolean lowercaseTags;
+    private final boolean normalizeTags;
+    private final TermWeighting termWeighting;
+    private final int taskSize;
 
     /**
      * Construct a model builder.  The {@link Inject} annotation on this constructor tells LensKit
      * that it can be used to build the model builder.
      *
      * @param dao The data access object.
+     * @param lowercase Whether to lower-case tags.
+     * @param normalize Whether to normalize tags' Unicode form and whitespace.
+     * @param weighting The term frequency weighting.
      */
     @Inject
-    public TFIDFModelProvider(@Transient DataAccessObject dao) {
+    public TFIDFModelProvider(@Transient DataAccessObject dao,
+                              @LowercaseTags boolean lowercase,
+                              @NormalizeTags boolean normalize,
+                              @Transient TermWeighting weighting) {
+        this(dao, lowercase, normalize, weighting, TASK_SIZE);
+    }
+
+    /**
+     * Construct a model builder with a particular task size.
+     *
+     * @param dao The data access object.
+     * @param lowercase Whether to lower-case tags.
+     * @param normalize Whether to normalize tags' Unicode form and whitespace.
+     * @param weighting The term frequency weighting.
+     * @param taskSize The number of items below which a build task is not split further.
+     */
+    TFIDFModelProvider(DataAccessObject dao, boolean lowercase, boolean normalize,
+                       TermWeighting weighting, int taskSize) {
         this.dao = dao;
+        lowercaseTags = lowercase;
+        normalizeTags = normalize;
+        termWeighting = weighting;
+        this.taskSize = taskSize;
+    }
+
+    /**
+     * Construct a model builder that uses tags as they are, weighted by raw term frequency.
+     *
+     * @param dao The data access object.
+     */
+    public TFIDFModelProvider(DataAccessObject dao) {
+        this(dao, false, false, new RawTermWeighting());
     }
 
     /**
@@ -45,79 +93,185 @@ public class TFIDFModelProvider implements Provider<TFIDFModel> {
     public TFIDFModel get() {
         logger.info("Building TF-IDF model");
 
-        // Create a map to accumulate document frequencies for the IDF computation
-        Map<String, Double> docFreq = new HashMap<>();
+        // Read the tag applications once, grouped by item, and measure the items' lengths.
+        List<IdBox<List<Entity>>> items = new ArrayList<>();
+        LongSet itemIds = new LongOpenHashSet();
+        long totalLength = 0;
+        try (ObjectStream<IdBox<List<Entity>>> stream = dao.query(TagData.ITEM_TAG_TYPE)
+                                                           .groupBy(TagData.ITEM_ID)
+                                                           .stream()) {
+            for (IdBox<List<Entity>> item : stream) {
+                items.add(item);
+                itemIds.add(item.getId());
+                totalLength += item.getValue().size();
+            }
+        }
+        double averageLength = (double) totalLength / items.size();
+
+        // Tag vocabulary for canonicalizing tags and interning them as dense IDs.
+        TagVocabulary vocabulary = new TagVocabulary(lowercaseTags, normalizeTags);
 
-        // We now proceed in 2 stages. First, we build a TF vector for each item.
-        // While we do this, we also build the DF vector.
+        // We now proceed in 2 stages, each of which is split across the items in parallel. First,
+        // we build a TF vector for each item.  While we do this, each task also counts the document
+        // frequencies of its items' tags, and the counts are merged as the tasks are joined.
         // We will then apply the IDF to each TF vector and normalize it to a unit vector.
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Object2IntMap<String>> termFreqs = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                termFreqs.add(null);
+            }
+            Object2IntLinkedOpenHashMap<String> docFreq =
+                    pool.invoke(new TermFrequencyTask(vocabulary, items, termFreqs, taskSize,
+                                                      0, items.size()));
 
-        // Create a map to store the item TF vectors.
-        Map<Long, Map<String, Double>> itemVectors = new HashMap<>();
-
-        // Iterate over the items to compute each item's vector.
-        LongSet items = dao.getEntityIds(CommonTypes.ITEM);
-        for (long item : items) {
-            // Create a work vector to accumulate this item's tag vector.
-            Map<String, Double> work = new HashMap<>();
-            Set<String> addedTags = new HashSet<>();
-            for (Entity tagApplication : dao.query(TagData.ITEM_TAG_TYPE)
-                                            .withAttribute(TagData.ITEM_ID, item)
-                                            .get()) {
-                String tag = tagApplication.get(TagData.TAG);
-                // Count this tag application in the term frequency vector
-                if(work.containsKey(tag))
-                    work.put(tag, work.get(tag) + 1.0);
-                else
-                    work.put(tag, 1.0);
-                // Also count it in the document frequencey vector when needed
-                if(!addedTags.contains(tag)) {
-                    addedTags.add(tag);
-                    if (docFreq.containsKey(tag))
-                        docFreq.put(tag, docFreq.get(tag) + 1.0);
-                    else
-                        docFreq.put(tag, 1.0);
-                }
+            // The merged counts list the tags in the order the sequential scan would first see
+            // them, so interning them in that order gives the same tag IDs.
+            int[] df = new int[docFreq.size()];
+            for (Object2IntMap.Entry<String> e : docFreq.object2IntEntrySet()) {
+                df[vocabulary.internCanonical(e.getKey())] = e.getIntValue();
+            }
+
+            logger.info("Computed TF vectors for {} items and {} tags",
+                        items.size(), vocabulary.size());
+
+            // Now we've seen all the items, so we have each item's TF vector and a global vector
+            // of document frequencies.
+            // Invert and log the document frequency.
+            final double logN = Math.log(dao.getEntityIds(CommonTypes.ITEM).size());
+            double[] idf = new double[vocabulary.size()];
+            for (int tag = 0; tag < idf.length; tag++) {
+                idf[tag] = logN - Math.log(df[tag]);
             }
 
-            itemVectors.put(item, work);
+            // Now idf is a log-IDF vector.  Its values can therefore be multiplied by TF values.
+            // So we can use it to apply IDF to each item vector to put it in the final model.
+            SortedKeyIndex itemIndex = SortedKeyIndex.fromCollection(itemIds);
+            TagVector[] modelData = new TagVector[itemIndex.size()];
+            VectorBuilder builder = new VectorBuilder(idf, termWeighting, averageLength);
+            pool.invoke(new WeightTask(vocabulary, builder, items, termFreqs, itemIndex, modelData,
+                                       taskSize, 0, items.size()));
+
+            // We don't need the IDF vector anymore, as long as as we have no new tags
+            return new TFIDFModel(vocabulary, itemIndex, modelData);
+        } finally {
+            pool.shutdown();
         }
+    }
+
+    /**
+     * Task computing the term frequencies of a range of items.  Its result is the document
+     * frequencies of the range's tags, in order of first appearance.
+     */
+    private static class TermFrequencyTask extends RecursiveTask<Object2IntLinkedOpenHashMap<String>> {
+        private static final long serialVersionUID = 1L;
 
-        logger.info("Computed TF vectors for {} items", itemVectors.size());
+        private final TagVocabulary vocabulary;
+        private final List<IdBox<List<Entity>>> items;
+        private final List<Object2IntMap<String>> termFreqs;
+        private final int taskSize;
+        private final int start;
+        private final int end;
 
-        // Now we've seen all the items, so we have each item's TF vector and a global vector
-        // of document frequencies.
-        // Invert and log the document frequency.  We can do this in-place.
-        final double logN = Math.log(items.size());
-        for (Map.Entry<String, Double> e : docFreq.entrySet()) {
-            e.setValue(logN - Math.log(e.getValue()));
+        TermFrequencyTask(TagVocabulary vocab, List<IdBox<List<Entity>>> items,
+                          List<Object2IntMap<String>> tfs, int taskSize, int start, int end) {
+            vocabulary = vocab;
+            this.items = items;
+            termFreqs = tfs;
+            this.taskSize = taskSize;
+            this.start = start;
+            this.end = end;
         }
 
-        // Now docFreq is a log-IDF vector.  Its values can therefore be multiplied by TF values.
-        // So we can use it to apply IDF to each item vector to put it in the final model.
-        // Create a map to store the final model data.
-        Map<Long, Map<String, Double>> modelData = new HashMap<>();
-        for (Map.Entry<Long, Map<String, Double>> entry : itemVectors.entrySet()) {
-            Map<String, Double> tv = new HashMap<>(entry.getValue());
-            // Convert this vector to a TF-IDF vector
-            for (Map.Entry<String, Double> e : tv.entrySet()) {
-                e.setValue(e.getValue() * docFreq.get(e.getKey()));
-            }
-            // Normalize the TF-IDF vector to be a unit vector
-            // Normalize it by dividing each element by its Euclidean norm, which is the
-            // square root of the sum of the squares of the values.
-            double sumSquares = 0.0;
-            for(Map.Entry<String, Double> e : tv.entrySet()) {
-                sumSquares += e.getValue()*e.getValue();
+        @Override
+        protected Object2IntLinkedOpenHashMap<String> compute() {
+            if (end - start > taskSize) {
+                int mid = (start + end) >>> 1;
+                TermFrequencyTask right = new TermFrequencyTask(vocabulary, items, termFreqs,
+                                                                taskSize, mid, end);
+                right.fork();
+                Object2IntLinkedOpenHashMap<String> docFreq =
+                        new TermFrequencyTask(vocabulary, items, termFreqs, taskSize, start, mid)
+                                .compute();
+                // Merging the right half after the left keeps tags in order of first appearance
+                for (Object2IntMap.Entry<String> e : right.join().object2IntEntrySet()) {
+                    docFreq.addTo(e.getKey(), e.getIntValue());
+                }
+                return docFreq;
             }
-            double norm = Math.sqrt(sumSquares);
-            for (Map.Entry<String, Double> e : tv.entrySet()) {
-                e.setValue(e.getValue() / norm);
+
+            Object2IntLinkedOpenHashMap<String> docFreq = new Object2IntLinkedOpenHashMap<>();
+            for (int i = start; i < end; i++) {
+                // Create a work vector to accumulate this item's tag vector.
+                Object2IntLinkedOpenHashMap<String> work = new Object2IntLinkedOpenHashMap<>();
+                for (Entity tagApplication : items.get(i).getValue()) {
+                    String tag = vocabulary.canonicalize(tagApplication.get(TagData.TAG));
+                    // Count this tag application in the term frequency vector
+                    if (work.addTo(tag, 1) == 0) {
+                        // First time we see the tag on this item, so count it in the document
+                        // frequency vector too
+                        docFreq.addTo(tag, 1);
+                    }
+                }
+                termFreqs.set(i, work);
             }
-            modelData.put(entry.getKey(), tv);
+            return docFreq;
         }
+    }
 
-        // We don't need the IDF vector anymore, as long as as we have no new tags
-        return new TFIDFModel(modelData);
+    /**
+     * Task converting the term frequencies of a range of items to TF-IDF vectors.
+     */
+    private static class WeightTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TagVocabulary vocabulary;
+        private final VectorBuilder builder;
+        private final List<IdBox<List<Entity>>> items;
+        private final List<Object2IntMap<String>> termFreqs;
+        private final SortedKeyIndex itemIndex;
+        private final TagVector[] vectors;
+        private final int taskSize;
+        private final int start;
+        private final int end;
+
+        WeightTask(TagVocabulary vocab, VectorBuilder builder, List<IdBox<List<Entity>>> items,
+                   List<Object2IntMap<String>> tfs, SortedKeyIndex index, TagVector[] vectors,
+                   int taskSize, int start, int end) {
+            vocabulary = vocab;
+            this.builder = builder;
+            this.items = items;
+            termFreqs = tfs;
+            itemIndex = index;
+            this.vectors = vectors;
+            this.taskSize = taskSize;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > taskSize) {
+                int mid = (start + end) >>> 1;
+                invokeAll(new WeightTask(vocabulary, builder, items, termFreqs, itemIndex, vectors,
+                                         taskSize, start, mid),
+                          new WeightTask(vocabulary, builder, items, termFreqs, itemIndex, vectors,
+                                         taskSize, mid, end));
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                Object2IntMap<String> tf = termFreqs.get(i);
+                int[] tags = new int[tf.size()];
+                int[] counts = new int[tf.size()];
+                int n = 0;
+                for (Object2IntMap.Entry<String> e : tf.object2IntEntrySet()) {
+                    tags[n] = vocabulary.getCanonicalTagId(e.getKey());
+                    counts[n] = e.getIntValue();
+                    n++;
+                }
+                int idx = itemIndex.getIndex(items.get(i).getId());
+                vectors[idx] = builder.makeVector(tags, counts);
+            }
+        }
     }
 }
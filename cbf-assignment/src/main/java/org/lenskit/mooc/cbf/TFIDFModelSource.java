@@ -0,0 +1,17 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultImplementation;
+
+/**
+ * Source of the current TF-IDF model.  Components that use the model get it from the source once
+ * per request, so that a request sees a single consistent snapshot even if the model is
+ * {@linkplain IncrementalTFIDFModelBuilder updated} while it runs.
+ */
+@DefaultImplementation(StaticTFIDFModelSource.class)
+public interface TFIDFModelSource {
+    /**
+     * Get the current model.
+     * @return The most recent model snapshot.
+     */
+    TFIDFModel getModel();
+}
@@ -0,0 +1,138 @@
+package org.lenskit.mooc.cbf;
+
+import com.google.common.base.Preconditions;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.inject.Shareable;
+import org.lenskit.util.keys.KeyIndex;
+
+import java.io.Serializable;
+
+/**
+ * Dense, fixed-dimension embeddings of the items in a {@link TFIDFModel}.  Each item's tag vector
+ * is multiplied by a {@linkplain TagProjector projection} from tags to the dense space, normalized,
+ * and stored in one contiguous row-major array; user profiles are embedded with the same
+ * projection.  Comparing a user with an item is then a dot product of a fixed length, whatever the
+ * lengths of their tag vectors.
+ *
+ * <p>The embedding is computed from the model snapshot current when it is built.  It does not
+ * follow {@linkplain IncrementalTFIDFModelBuilder incremental updates}: tags added since are
+ * ignored when embedding profiles, and items added since have no embedding.
+ *
+ * @see TagEmbeddingProvider
+ */
+@Shareable
+@DefaultProvider(TagEmbeddingProvider.class)
+public class TagEmbedding implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final KeyIndex itemIndex;
+    private final int dimension;
+    private final int tagCount;
+    private final float[] projection;
+    private final float[] itemVectors;
+    private final boolean[] embedded;
+
+    /**
+     * Embed a model's item vectors.
+     * @param model The TF-IDF model.
+     * @param proj The projection, with {@code dim} values for each tag in the model's vocabulary.
+     * @param dim The dimension of the embedding.
+     */
+    TagEmbedding(TFIDFModel model, float[] proj, int dim) {
+        tagCount = model.getVocabulary().size();
+        Preconditions.checkArgument(proj.length == tagCount * dim,
+                                    "projection has incorrect size (%s != %s)",
+                                    proj.length, tagCount * dim);
+        itemIndex = model.getItemIndex();
+        dimension = dim;
+        projection = proj;
+
+        int nitems = itemIndex.size();
+        itemVectors = new float[nitems * dim];
+        embedded = new boolean[nitems];
+        float[] row = new float[dim];
+        for (int i = 0; i < nitems; i++) {
+            if (embed(model.getTagVectorByIndex(i), row)) {
+                System.arraycopy(row, 0, itemVectors, i * dim, dim);
+                embedded[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Get the dimension of the embedding.
+     * @return The number of values in each embedded vector.
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Get the index of items in the embedding.
+     * @return The item index.
+     */
+    public KeyIndex getItemIndex() {
+        return itemIndex;
+    }
+
+    /**
+     * Embed a tag vector.
+     * @param vector The tag vector.  Tags not in the vocabulary the embedding was built from are
+     *               ignored.
+     * @param out An array of length {@link #getDimension()} to receive the normalized embedding.
+     * @return {@code true} if the vector has a non-zero embedding; if {@code false}, the contents of
+     *         {@code out} are undefined.
+     */
+    public boolean embed(TagVector vector, float[] out) {
+        Preconditions.checkArgument(out.length == dimension, "output has incorrect dimension");
+        double[] sum = new double[dimension];
+        for (int e = 0; e < vector.size(); e++) {
+            int tag = vector.getTagId(e);
+            if (tag >= tagCount) {
+                continue;
+            }
+            double w = vector.getWeight(e);
+            int off = tag * dimension;
+            for (int j = 0; j < dimension; j++) {
+                sum[j] += w * projection[off + j];
+            }
+        }
+
+        double sumSquares = 0;
+        for (double x: sum) {
+            sumSquares += x * x;
+        }
+        if (sumSquares == 0) {
+            return false;
+        }
+        double norm = Math.sqrt(sumSquares);
+        for (int j = 0; j < dimension; j++) {
+            out[j] = (float) (sum[j] / norm);
+        }
+        return true;
+    }
+
+    /**
+     * Query whether an item has an embedding.  Items whose tag vectors project to zero do not.
+     * @param idx The item's position in the {@linkplain #getItemIndex() item index}.
+     * @return {@code true} if the item has a (normalized) embedding.
+     */
+    public boolean hasEmbedding(int idx) {
+        return embedded[idx];
+    }
+
+    /**
+     * Compute the cosine of an item's embedding with an embedded vector.
+     * @param idx The item's position in the {@linkplain #getItemIndex() item index}.
+     * @param vector A normalized embedded vector, as produced by {@link #embed(TagVector, float[])}.
+     * @return The cosine of the two embeddings.
+     */
+    public double cosine(int idx, float[] vector) {
+        int off = idx * dimension;
+        float sum = 0;
+        for (int j = 0; j < dimension; j++) {
+            sum += itemVectors[off + j] * vector[j];
+        }
+        return sum;
+    }
+}
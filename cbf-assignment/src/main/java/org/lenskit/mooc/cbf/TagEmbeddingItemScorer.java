@@ -0,0 +1,65 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.basic.AbstractItemScorer;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.results.Results;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.KeyIndex;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Content-based item scorer that compares users and items in a {@linkplain TagEmbedding dense tag
+ * embedding}.  The user's tag profile is embedded once per request, and each item's score is the
+ * cosine of the two embeddings, so every item costs the same fixed-length dot product.  The scores
+ * approximate those of {@link TFIDFItemScorer}.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class TagEmbeddingItemScorer extends AbstractItemScorer {
+    private final TagEmbedding embedding;
+    private final UserProfileCache profiles;
+    private final DataAccessObject dao;
+
+    /**
+     * Construct a new item scorer.
+     * @param emb The item embeddings.
+     * @param cache The cache of user tag profiles.
+     * @param dao The data access object, to load profiles the cache does not have.
+     */
+    @Inject
+    public TagEmbeddingItemScorer(TagEmbedding emb, UserProfileCache cache, DataAccessObject dao) {
+        embedding = emb;
+        profiles = cache;
+        this.dao = dao;
+    }
+
+    @Nonnull
+    @Override
+    public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
+        float[] profile = new float[embedding.getDimension()];
+        if (!embedding.embed(profiles.getProfile(dao, user), profile)) {
+            // the user has no profile in the embedding, so no cosine is defined
+            return Results.newResultMap();
+        }
+
+        KeyIndex itemIndex = embedding.getItemIndex();
+        List<Result> results = new ArrayList<>(items.size());
+        LongIterator iter = LongUtils.asLongCollection(items).iterator();
+        while (iter.hasNext()) {
+            long item = iter.nextLong();
+            int idx = itemIndex.tryGetIndex(item);
+            if (idx >= 0 && embedding.hasEmbedding(idx)) {
+                results.add(Results.create(item, embedding.cosine(idx, profile)));
+            }
+        }
+        return Results.newResultMap(results);
+    }
+}
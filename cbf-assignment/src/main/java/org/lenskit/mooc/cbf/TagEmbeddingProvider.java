@@ -0,0 +1,44 @@
+package org.lenskit.mooc.cbf;
+
+import org.lenskit.inject.Transient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Builder for {@linkplain TagEmbedding dense tag embeddings} of a TF-IDF model.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class TagEmbeddingProvider implements Provider<TagEmbedding> {
+    private static final Logger logger = LoggerFactory.getLogger(TagEmbeddingProvider.class);
+
+    private final TFIDFModelSource modelSource;
+    private final TagProjector projector;
+    private final int dimension;
+
+    /**
+     * Construct an embedding builder.
+     * @param src The source of the TF-IDF model.
+     * @param proj The projection from tags to the embedding.
+     * @param dim The dimension of the embedding.
+     */
+    @Inject
+    public TagEmbeddingProvider(@Transient TFIDFModelSource src,
+                                @Transient TagProjector proj,
+                                @EmbeddingDimension int dim) {
+        modelSource = src;
+        projector = proj;
+        dimension = dim;
+    }
+
+    @Override
+    public TagEmbedding get() {
+        TFIDFModel model = modelSource.getModel();
+        logger.info("embedding {} items in {} dimensions", model.getItemIndex().size(), dimension);
+        float[] projection = projector.computeProjection(model, dimension);
+        return new TagEmbedding(model, projection, dimension);
+    }
+}
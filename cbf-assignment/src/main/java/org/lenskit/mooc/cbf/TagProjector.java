@@ -0,0 +1,22 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultImplementation;
+
+/**
+ * Computes the linear map from tag space to the dense space of a {@link TagEmbedding}.  Item
+ * vectors and user profiles are both embedded by multiplying them by this map, so their dot
+ * products in the dense space approximate their dot products over tags.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@DefaultImplementation(SVDTagProjector.class)
+public interface TagProjector {
+    /**
+     * Compute a projection for a model's item vectors.
+     * @param model The TF-IDF model.
+     * @param dim The number of dimensions to project to.
+     * @return The projection, as a row-major matrix with one row of {@code dim} values for each
+     *         tag in the model's vocabulary.
+     */
+    float[] computeProjection(TFIDFModel model, int dim);
+}
@@ -0,0 +1,109 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A sparse vector over tags, stored as tag IDs in increasing order with parallel weights.
+ *
+ * @see TagVocabulary
+ */
+public final class TagVector implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The empty tag vector.
+     */
+    public static final TagVector EMPTY = new TagVector(new int[0], new float[0]);
+
+    private final int[] tagIds;
+    private final float[] weights;
+    private final float norm;
+
+    /**
+     * Create a tag vector.
+     * @param ids The tag IDs, in increasing order.
+     * @param wts The tag weights, parallel to {@code ids}.
+     */
+    TagVector(int[] ids, float[] wts) {
+        tagIds = ids;
+        weights = wts;
+        double sumSquares = 0;
+        for (float w: wts) {
+            sumSquares += w * w;
+        }
+        norm = (float) Math.sqrt(sumSquares);
+    }
+
+    /**
+     * Create a tag vector from a map of weights, omitting zero weights.
+     * @param map The weights, keyed by tag ID.
+     * @return The tag vector.
+     */
+    static TagVector fromMap(Int2DoubleMap map) {
+        int[] ids = new int[map.size()];
+        int n = 0;
+        for (Int2DoubleMap.Entry e: map.int2DoubleEntrySet()) {
+            if (e.getDoubleValue() != 0) {
+                ids[n++] = e.getIntKey();
+            }
+        }
+        ids = Arrays.copyOf(ids, n);
+        Arrays.sort(ids);
+        float[] wts = new float[n];
+        for (int i = 0; i < n; i++) {
+            wts[i] = (float) map.get(ids[i]);
+        }
+        return new TagVector(ids, wts);
+    }
+
+    /**
+     * Get the number of tags with weights in this vector.
+     * @return The number of stored entries.
+     */
+    public int size() {
+        return tagIds.length;
+    }
+
+    /**
+     * Get the tag ID of an entry.
+     * @param i The entry number.
+     * @return The tag ID.
+     */
+    public int getTagId(int i) {
+        return tagIds[i];
+    }
+
+    /**
+     * Get the weight of an entry.
+     * @param i The entry number.
+     * @return The weight.
+     */
+    public float getWeight(int i) {
+        return weights[i];
+    }
+
+    /**
+     * Get the Euclidean norm of this vector.
+     * @return The precomputed vector norm.
+     */
+    public float getNorm() {
+        return norm;
+    }
+
+    /**
+     * Compute the dot product of this vector with a dense vector over tag IDs.
+     * @param dense The dense vector, indexed by tag ID.  It must be large enough to hold every tag
+     *              ID in this vector.
+     * @return The dot product.
+     */
+    public double dot(float[] dense) {
+        double sum = 0;
+        for (int i = 0; i < tagIds.length; i++) {
+            sum += (double) weights[i] * dense[tagIds[i]];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,125 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.io.Serializable;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A vocabulary of tags, mapping each distinct tag string to a dense integer ID.  Tags can
+ * optionally be lower-cased and normalized (Unicode NFKC, trimmed, and with runs of whitespace
+ * collapsed) before they are interned, so that spelling variants share an ID.
+ */
+public class TagVocabulary implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final boolean lowercase;
+    private final boolean normalize;
+    private final Object2IntOpenHashMap<String> ids;
+    private final ObjectArrayList<String> tags;
+
+    /**
+     * Create an empty vocabulary.
+     * @param lowercase Whether to lower-case tags.
+     * @param normalize Whether to normalize tags' Unicode form and whitespace.
+     */
+    public TagVocabulary(boolean lowercase, boolean normalize) {
+        this.lowercase = lowercase;
+        this.normalize = normalize;
+        ids = new Object2IntOpenHashMap<>();
+        ids.defaultReturnValue(-1);
+        tags = new ObjectArrayList<>();
+    }
+
+    /**
+     * Copy this vocabulary.
+     * @return A new vocabulary with the same tags, IDs and canonicalization options.
+     */
+    TagVocabulary copy() {
+        TagVocabulary copy = new TagVocabulary(lowercase, normalize);
+        copy.ids.putAll(ids);
+        copy.tags.addAll(tags);
+        return copy;
+    }
+
+    /**
+     * Get the ID of a tag, adding it to the vocabulary if it is new.
+     * @param tag The tag.
+     * @return The tag's ID.
+     */
+    int intern(String tag) {
+        return internCanonical(canonicalize(tag));
+    }
+
+    /**
+     * Get the ID of a tag that is already in canonical form, adding it if it is new.
+     * @param key The canonicalized tag.
+     * @return The tag's ID.
+     */
+    int internCanonical(String key) {
+        int id = ids.getInt(key);
+        if (id < 0) {
+            id = tags.size();
+            ids.put(key, id);
+            tags.add(key);
+        }
+        return id;
+    }
+
+    /**
+     * Get the ID of a tag.
+     * @param tag The tag.
+     * @return The tag's ID, or -1 if the tag is not in the vocabulary.
+     */
+    public int getTagId(String tag) {
+        return ids.getInt(canonicalize(tag));
+    }
+
+    /**
+     * Get the ID of a tag that is already in canonical form.
+     * @param key The canonicalized tag.
+     * @return The tag's ID, or -1 if the tag is not in the vocabulary.
+     */
+    int getCanonicalTagId(String key) {
+        return ids.getInt(key);
+    }
+
+    /**
+     * Get a tag by its ID.
+     * @param id The tag ID.
+     * @return The (canonicalized) tag.
+     */
+    public String getTag(int id) {
+        return tags.get(id);
+    }
+
+    /**
+     * Get the number of tags in the vocabulary.  Tag IDs range from 0 up to (but not including)
+     * this size.
+     * @return The vocabulary size.
+     */
+    public int size() {
+        return tags.size();
+    }
+
+    /**
+     * Put a tag in the canonical form used by this vocabulary.
+     * @param tag The tag.
+     * @return The canonical form of the tag.
+     */
+    public String canonicalize(String tag) {
+        String result = tag;
+        if (normalize) {
+            result = Normalizer.normalize(result, Normalizer.Form.NFKC);
+            result = WHITESPACE.matcher(result.trim()).replaceAll(" ");
+        }
+        if (lowercase) {
+            result = result.toLowerCase(Locale.ROOT);
+        }
+        return result;
+    }
+}
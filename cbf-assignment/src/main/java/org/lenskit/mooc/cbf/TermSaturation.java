@@ -0,0 +1,20 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultDouble;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling how quickly term frequencies saturate in {@link BM25TermWeighting} (BM25's
+ * {@code k1}).  0 ignores frequencies entirely; larger values approach raw term frequency.
+ */
+@Documented
+@Qualifier
+@Parameter(Double.class)
+@DefaultDouble(1.2)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TermSaturation {
+}
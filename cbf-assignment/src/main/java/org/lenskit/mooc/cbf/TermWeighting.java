@@ -0,0 +1,24 @@
+package org.lenskit.mooc.cbf;
+
+import org.grouplens.grapht.annotation.DefaultImplementation;
+
+/**
+ * Term frequency weighting for TF-IDF vectors.  The weighting computes the TF component of a
+ * tag's weight in an item's vector; the model multiplies it by the tag's IDF and normalizes each
+ * vector to unit length.  Everything is folded into the stored weights, so the weighting scheme
+ * does not affect scoring cost.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@DefaultImplementation(RawTermWeighting.class)
+public interface TermWeighting {
+    /**
+     * Compute the TF weight of a tag on an item.
+     * @param tf The number of times the tag was applied to the item.
+     * @param maxTf The largest number of times any tag was applied to the item.
+     * @param length The total number of tag applications on the item.
+     * @param averageLength The average number of tag applications per tagged item.
+     * @return The TF weight.
+     */
+    double weight(int tf, int maxTf, int length, double averageLength);
+}
@@ -1,9 +1,12 @@
 package org.lenskit.mooc.cbf;
 
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 import org.lenskit.data.ratings.Rating;
+import org.lenskit.inject.Shareable;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,39 +14,50 @@ import java.util.Map;
 /**
  * Build a user profile from all positive ratings.
  */
-public class ThresholdUserProfileBuilder implements UserProfileBuilder {
+@Shareable
+public class ThresholdUserProfileBuilder implements IncrementalUserProfileBuilder, Serializable {
+    private static final long serialVersionUID = 1L;
+
     /**
      * The lowest rating that will be considered in the user's profile.
      */
     private static final double RATING_THRESHOLD = 3.5;
 
     /**
-     * The tag model, to get item tag vectors.
+     * The source of the tag model, to get item tag vectors.
      */
-    private final TFIDFModel model;
+    private final TFIDFModelSource modelSource;
 
     @Inject
+    public ThresholdUserProfileBuilder(TFIDFModelSource src) {
+        modelSource = src;
+    }
+
     public ThresholdUserProfileBuilder(TFIDFModel m) {
-        model = m;
+        this(new StaticTFIDFModelSource(m));
     }
 
     @Override
     public Map<String, Double> makeUserProfile(@Nonnull List<Rating> ratings) {
         // Create a new vector over tags to accumulate the user profile
         Map<String,Double> profile = new HashMap<>();
+        TFIDFModel model = modelSource.getModel();
+        TagVocabulary vocabulary = model.getVocabulary();
 
         // Iterate over the user's ratings to build their profile
         for (Rating r: ratings) {
             if (r.getValue() >= RATING_THRESHOLD) {
 
                 // Get this item's vector and add it to the user's profile
-                Map<String, Double> itemVector = model.getItemVector(r.getItemId());
-                for (Map.Entry<String, Double> e : itemVector.entrySet()) {
-                    if(profile.containsKey(e.getKey())) {
-                        profile.put(e.getKey(), e.getValue()+profile.get(e.getKey()));
+                TagVector itemVector = model.getTagVector(r.getItemId());
+                for (int i = 0; i < itemVector.size(); i++) {
+                    String tag = vocabulary.getTag(itemVector.getTagId(i));
+                    double weight = itemVector.getWeight(i);
+                    if(profile.containsKey(tag)) {
+                        profile.put(tag, weight+profile.get(tag));
                     }
                     else {
-                        profile.put(e.getKey(), e.getValue());
+                        profile.put(tag, weight);
                     }
                 }
             }
@@ -52,4 +66,48 @@ public class ThresholdUserProfileBuilder implements UserProfileBuilder {
         // The profile is accumulated, return it.
         return profile;
     }
+
+    @Override
+    public ProfileAccumulator newAccumulator() {
+        return new Accumulator(modelSource.getModel());
+    }
+
+    /**
+     * Accumulator for threshold profiles.  The profile is a plain sum of item vectors, so adding
+     * or removing a rating adds or subtracts one vector.
+     */
+    private static class Accumulator implements ProfileAccumulator {
+        private final TFIDFModel model;
+        private final Int2DoubleOpenHashMap profile = new Int2DoubleOpenHashMap();
+
+        Accumulator(TFIDFModel m) {
+            model = m;
+        }
+
+        @Override
+        public void addRating(long item, double rating) {
+            if (rating >= RATING_THRESHOLD) {
+                addVector(item, 1);
+            }
+        }
+
+        @Override
+        public void removeRating(long item, double rating) {
+            if (rating >= RATING_THRESHOLD) {
+                addVector(item, -1);
+            }
+        }
+
+        private void addVector(long item, double scale) {
+            TagVector itemVector = model.getTagVector(item);
+            for (int i = 0; i < itemVector.size(); i++) {
+                profile.addTo(itemVector.getTagId(i), scale * itemVector.getWeight(i));
+            }
+        }
+
+        @Override
+        public TagVector getProfile() {
+            return TagVector.fromMap(profile);
+        }
+    }
 }
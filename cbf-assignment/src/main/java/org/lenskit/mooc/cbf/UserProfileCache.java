@@ -0,0 +1,221 @@
+package org.lenskit.mooc.cbf;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.inject.Shareable;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cache of user tag profiles.  A user's profile is built from their ratings the first time it is
+ * needed and kept as a compact {@link TagVector}.  When the user rates an item, the cached profile
+ * is updated in place if the profile builder is an {@link IncrementalUserProfileBuilder}, and
+ * reloaded on next use otherwise.  The least recently used profiles are evicted once the cache
+ * reaches its {@linkplain ProfileCacheSize maximum size}.
+ *
+ * <p>Profiles are built from a particular model snapshot; if the {@link TFIDFModelSource} has
+ * published a newer snapshot since, a profile is rebuilt the next time it is requested.
+ *
+ * <p>The cache is shared by every recommender built from the same engine, so a profile loaded while
+ * serving one request is reused by later recommenders instead of being rebuilt for each one.  The
+ * data access object is therefore passed to each lookup rather than injected.  Because a cached
+ * profile outlives the recommender whose data it was loaded from, an application that stores new
+ * ratings should report them with {@link #addRating(Rating)} (getting the cache from any
+ * recommender with {@code get(UserProfileCache.class)}), or {@linkplain #invalidate(long) discard}
+ * the user's profile, so that later requests see them.
+ */
+@Shareable
+public class UserProfileCache implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final TFIDFModelSource modelSource;
+    private final UserProfileBuilder builder;
+    private final int maxSize;
+    private transient Cache<Long, CachedProfile> cache;
+
+    /**
+     * Construct a new profile cache.
+     * @param src The source of the TF-IDF model.
+     * @param upb The user profile builder.
+     * @param size The maximum number of profiles to keep.
+     */
+    @Inject
+    public UserProfileCache(TFIDFModelSource src, UserProfileBuilder upb,
+                            @ProfileCacheSize int size) {
+        modelSource = src;
+        builder = upb;
+        maxSize = size;
+        cache = createCache(size);
+    }
+
+    private static Cache<Long, CachedProfile> createCache(int size) {
+        return CacheBuilder.newBuilder()
+                           .maximumSize(size)
+                           .build();
+    }
+
+    /**
+     * Get a user's profile.
+     * @param dao The data access object, to load the user's ratings if they are not cached.
+     * @param user The user ID.
+     * @return The user's profile over the model's tag IDs.  It is empty if the user has no ratings.
+     */
+    public TagVector getProfile(DataAccessObject dao, long user) {
+        return load(dao, user).getProfile();
+    }
+
+    /**
+     * Get the items a user has rated.
+     * @param dao The data access object, to load the user's ratings if they are not cached.
+     * @param user The user ID.
+     * @return A copy of the items in the user's (cached) rating history.
+     */
+    public LongSet getRatedItems(DataAccessObject dao, long user) {
+        return load(dao, user).getRatedItems();
+    }
+
+    /**
+     * Record a new or changed rating.  If the user's profile is cached and can be updated
+     * incrementally, it is updated to reflect the rating; otherwise, the rating will be picked up
+     * from the DAO when the profile is next loaded.
+     *
+     * @param rating The rating.
+     */
+    public void addRating(Rating rating) {
+        CachedProfile profile = cache.getIfPresent(rating.getUserId());
+        if (profile == null) {
+            return;
+        }
+        if (profile.isIncremental()) {
+            profile.addRating(rating.getItemId(), rating.getValue());
+        } else {
+            cache.invalidate(rating.getUserId());
+        }
+    }
+
+    /**
+     * Discard a user's cached profile.
+     * @param user The user ID.
+     */
+    public void invalidate(long user) {
+        cache.invalidate(user);
+    }
+
+    private CachedProfile load(DataAccessObject dao, long user) {
+        CachedProfile profile = lookup(dao, user);
+        if (profile.model != modelSource.getModel()) {
+            // built from an older model snapshot
+            cache.invalidate(user);
+            profile = lookup(dao, user);
+        }
+        return profile;
+    }
+
+    private CachedProfile lookup(final DataAccessObject dao, final long user) {
+        try {
+            return cache.get(user, new Callable<CachedProfile>() {
+                @Override
+                public CachedProfile call() {
+                    List<Rating> ratings = dao.query(Rating.class)
+                                              .withAttribute(CommonAttributes.USER_ID, user)
+                                              .get();
+                    return new CachedProfile(ratings);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // cached profiles are not kept across serialization
+        cache = createCache(maxSize);
+    }
+
+    /**
+     * A user's cached ratings and profile.
+     */
+    private class CachedProfile {
+        private final TFIDFModel model;
+        private final Long2DoubleMap ratings = new Long2DoubleOpenHashMap();
+        @Nullable
+        private final ProfileAccumulator accumulator;
+        @Nullable
+        private final List<Rating> history;
+        private TagVector profile;
+
+        CachedProfile(List<Rating> ratings) {
+            model = modelSource.getModel();
+            if (builder instanceof IncrementalUserProfileBuilder) {
+                accumulator = ((IncrementalUserProfileBuilder) builder).newAccumulator();
+                history = null;
+            } else {
+                accumulator = null;
+                history = ratings;
+            }
+            this.ratings.defaultReturnValue(Double.NaN);
+            for (Rating r: ratings) {
+                addRating(r.getItemId(), r.getValue());
+            }
+        }
+
+        boolean isIncremental() {
+            return accumulator != null;
+        }
+
+        synchronized void addRating(long item, double value) {
+            double old = ratings.put(item, value);
+            if (accumulator != null) {
+                if (!Double.isNaN(old)) {
+                    accumulator.removeRating(item, old);
+                }
+                accumulator.addRating(item, value);
+            }
+            profile = null;
+        }
+
+        synchronized LongSet getRatedItems() {
+            return new LongOpenHashSet(ratings.keySet());
+        }
+
+        synchronized TagVector getProfile() {
+            if (profile == null) {
+                profile = accumulator != null ? accumulator.getProfile() : buildProfile();
+            }
+            return profile;
+        }
+
+        /**
+         * Build the profile with a non-incremental builder.
+         */
+        private TagVector buildProfile() {
+            TagVocabulary vocabulary = model.getVocabulary();
+            Int2DoubleOpenHashMap weights = new Int2DoubleOpenHashMap();
+            for (Map.Entry<String, Double> e: builder.makeUserProfile(history).entrySet()) {
+                int tag = vocabulary.getTagId(e.getKey());
+                if (tag >= 0) {
+                    weights.put(tag, e.getValue().doubleValue());
+                }
+            }
+            return TagVector.fromMap(weights);
+        }
+    }
+}
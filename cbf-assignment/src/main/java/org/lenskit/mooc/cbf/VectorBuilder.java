@@ -0,0 +1,87 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+
+/**
+ * Converts item term frequencies to normalized TF-IDF vectors, given the collection statistics
+ * (IDF and average item length) that the weights depend on.
+ */
+class VectorBuilder {
+    private final double[] idf;
+    private final TermWeighting weighting;
+    private final double averageLength;
+
+    /**
+     * Create a vector builder.
+     * @param idf The log-IDF of each tag.
+     * @param weighting The term frequency weighting.
+     * @param avgLength The average number of tag applications per tagged item.
+     */
+    VectorBuilder(double[] idf, TermWeighting weighting, double avgLength) {
+        this.idf = idf;
+        this.weighting = weighting;
+        averageLength = avgLength;
+    }
+
+    /**
+     * Convert one item's term frequencies to a normalized TF-IDF vector.
+     * @param tags The item's tag IDs.  This array is sorted in place, and becomes part of the
+     *             vector.
+     * @param counts The term frequency of each tag, parallel to {@code tags}.  This array is
+     *               reordered along with the tag IDs.
+     * @return The item's unit TF-IDF vector.
+     */
+    TagVector makeVector(int[] tags, int[] counts) {
+        int n = tags.length;
+        sortByTag(tags, counts);
+
+        // The item's length statistics, for weightings that normalize by them
+        int length = 0;
+        int maxTf = 0;
+        for (int k = 0; k < n; k++) {
+            length += counts[k];
+            maxTf = Math.max(maxTf, counts[k]);
+        }
+
+        // Convert this vector to a TF-IDF vector
+        double[] weights = new double[n];
+        double sumSquares = 0.0;
+        for (int k = 0; k < n; k++) {
+            weights[k] = weighting.weight(counts[k], maxTf, length, averageLength) * idf[tags[k]];
+            sumSquares += weights[k] * weights[k];
+        }
+        // Normalize the TF-IDF vector to be a unit vector
+        // Normalize it by dividing each element by its Euclidean norm, which is the
+        // square root of the sum of the squares of the values.
+        double norm = Math.sqrt(sumSquares);
+        float[] unit = new float[n];
+        for (int k = 0; k < n; k++) {
+            unit[k] = (float) (weights[k] / norm);
+        }
+        return new TagVector(tags, unit);
+    }
+
+    /**
+     * Sort parallel arrays of tag IDs and counts by tag ID.
+     */
+    private static void sortByTag(final int[] tags, final int[] counts) {
+        Arrays.quickSort(0, tags.length, new AbstractIntComparator() {
+            @Override
+            public int compare(int a, int b) {
+                return Integer.compare(tags[a], tags[b]);
+            }
+        }, new Swapper() {
+            @Override
+            public void swap(int a, int b) {
+                int t = tags[a];
+                tags[a] = tags[b];
+                tags[b] = t;
+                int c = counts[a];
+                counts[a] = counts[b];
+                counts[b] = c;
+            }
+        });
+    }
+}
@@ -1,9 +1,13 @@
 package org.lenskit.mooc.cbf;
 
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 import org.lenskit.data.ratings.Rating;
+import org.lenskit.inject.Shareable;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,21 +15,36 @@ import java.util.Map;
 /**
  * Build a user profile from all positive ratings.
  */
-public class WeightedUserProfileBuilder implements UserProfileBuilder {
+@Shareable
+public class WeightedUserProfileBuilder implements IncrementalUserProfileBuilder, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Relative tolerance below which an incrementally-computed profile weight is considered to be
+     * zero.
+     */
+    private static final double EPSILON = 1.0e-10;
+
     /**
-     * The tag model, to get item tag vectors.
+     * The source of the tag model, to get item tag vectors.
      */
-    private final TFIDFModel model;
+    private final TFIDFModelSource modelSource;
 
     @Inject
+    public WeightedUserProfileBuilder(TFIDFModelSource src) {
+        modelSource = src;
+    }
+
     public WeightedUserProfileBuilder(TFIDFModel m) {
-        model = m;
+        this(new StaticTFIDFModelSource(m));
     }
 
     @Override
     public Map<String, Double> makeUserProfile(@Nonnull List<Rating> ratings) {
         // Create a new vector over tags to accumulate the user profile
         Map<String,Double> profile = new HashMap<>();
+        TFIDFModel model = modelSource.getModel();
+        TagVocabulary vocabulary = model.getVocabulary();
 
         // Normalize the user's ratings
         double sum = 0.0;
@@ -36,17 +55,81 @@ public class WeightedUserProfileBuilder implements UserProfileBuilder {
 
         // Build the user's weighted profile
         for (Rating r: ratings) {
-            Map<String, Double> itemVector = model.getItemVector(r.getItemId());
-            for (Map.Entry<String, Double> e : itemVector.entrySet()) {
-                double weight = e.getValue() * (r.getValue() - mean);
-                if(profile.containsKey(e.getKey())) {
-                    weight += profile.get(e.getKey());
+            TagVector itemVector = model.getTagVector(r.getItemId());
+            for (int i = 0; i < itemVector.size(); i++) {
+                String tag = vocabulary.getTag(itemVector.getTagId(i));
+                double weight = itemVector.getWeight(i) * (r.getValue() - mean);
+                if(profile.containsKey(tag)) {
+                    weight += profile.get(tag);
                 }
-                profile.put(e.getKey(), weight);
+                profile.put(tag, weight);
             }
         }
 
         // The profile is accumulated, return it.
         return profile;
     }
+
+    @Override
+    public ProfileAccumulator newAccumulator() {
+        return new Accumulator(modelSource.getModel());
+    }
+
+    /**
+     * Accumulator for weighted profiles.  Each weight is the sum of {@code w * (r - mean)} over
+     * the user's ratings, and adding a rating shifts the mean under all of them.  So the
+     * accumulator keeps the sums of {@code w * r} and of {@code w} separately and applies the
+     * current mean when the profile is requested: {@code sum(w * r) - mean * sum(w)}.
+     */
+    private static class Accumulator implements ProfileAccumulator {
+        private final TFIDFModel model;
+        private final Int2DoubleOpenHashMap weightedRatings = new Int2DoubleOpenHashMap();
+        private final Int2DoubleOpenHashMap weights = new Int2DoubleOpenHashMap();
+        private double ratingSum;
+        private int ratingCount;
+
+        Accumulator(TFIDFModel m) {
+            model = m;
+        }
+
+        @Override
+        public void addRating(long item, double rating) {
+            addVector(item, rating, 1);
+            ratingSum += rating;
+            ratingCount += 1;
+        }
+
+        @Override
+        public void removeRating(long item, double rating) {
+            addVector(item, rating, -1);
+            ratingSum -= rating;
+            ratingCount -= 1;
+        }
+
+        private void addVector(long item, double rating, double scale) {
+            TagVector itemVector = model.getTagVector(item);
+            for (int i = 0; i < itemVector.size(); i++) {
+                double weight = scale * itemVector.getWeight(i);
+                weightedRatings.addTo(itemVector.getTagId(i), weight * rating);
+                weights.addTo(itemVector.getTagId(i), weight);
+            }
+        }
+
+        @Override
+        public TagVector getProfile() {
+            Int2DoubleOpenHashMap profile = new Int2DoubleOpenHashMap(weights.size());
+            if (ratingCount > 0) {
+                double mean = ratingSum / ratingCount;
+                for (Int2DoubleMap.Entry e: weightedRatings.int2DoubleEntrySet()) {
+                    double sum = e.getDoubleValue();
+                    double shift = mean * weights.get(e.getIntKey());
+                    // cancellation leaves rounding noise where the exact weight is zero
+                    if (Math.abs(sum - shift) > EPSILON * Math.abs(sum)) {
+                        profile.put(e.getIntKey(), sum - shift);
+                    }
+                }
+            }
+            return TagVector.fromMap(profile);
+        }
+    }
 }
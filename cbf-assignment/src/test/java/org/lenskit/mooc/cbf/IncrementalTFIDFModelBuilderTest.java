@@ -0,0 +1,123 @@
+package org.lenskit.mooc.cbf;
+
+import org.junit.Test;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.api.ItemScorer;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.data.entities.Entities;
+import org.lenskit.data.entities.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class IncrementalTFIDFModelBuilderTest {
+    @Test
+    public void testUpdatedItemsMatchBatchBuild() {
+        IncrementalTFIDFModelBuilder builder = newBuilder(1000);
+        TFIDFModel initial = builder.getModel();
+        TFIDFModel updated = builder.applyTags(newTags());
+
+        // the tagged items are recomputed with the current IDF
+        TFIDFModel expected = batchModel(true);
+        assertSameVector(updated.getItemVector(1), expected.getItemVector(1));
+        assertSameVector(updated.getItemVector(3), expected.getItemVector(3));
+        // item 2 keeps its weights until the IDF drifts far enough to renormalize
+        assertSameVector(updated.getItemVector(2), initial.getItemVector(2));
+        assertThat(builder.getModel(), sameInstance(updated));
+    }
+
+    @Test
+    public void testRenormalizedModelMatchesBatchBuild() {
+        IncrementalTFIDFModelBuilder builder = newBuilder(0);
+        TFIDFModel updated = builder.applyTags(newTags());
+
+        TFIDFModel expected = batchModel(true);
+        for (long item = 1; item <= 3; item++) {
+            assertSameVector(updated.getItemVector(item), expected.getItemVector(item));
+        }
+    }
+
+    @Test
+    public void testInitialModelMatchesBatchBuild() {
+        TFIDFModel initial = newBuilder(0).getModel();
+        TFIDFModel expected = batchModel(false);
+        for (long item = 1; item <= 3; item++) {
+            assertSameVector(initial.getItemVector(item), expected.getItemVector(item));
+        }
+    }
+
+    @Test
+    public void testRecommendersShareUpdates() {
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(ItemScorer.class).to(TFIDFItemScorer.class);
+        config.bind(UserProfileBuilder.class).to(ThresholdUserProfileBuilder.class);
+        config.bind(TFIDFModelSource.class).to(IncrementalTFIDFModelBuilder.class);
+        DataAccessObject dao = dao(false);
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(config, dao);
+        LenskitRecommender first = engine.createRecommender(dao);
+        LenskitRecommender second = engine.createRecommender(dao);
+
+        IncrementalTFIDFModelBuilder builder = first.get(IncrementalTFIDFModelBuilder.class);
+        assertThat(second.get(IncrementalTFIDFModelBuilder.class), sameInstance(builder));
+
+        TFIDFModel updated = builder.applyTags(newTags());
+        assertThat(second.get(TFIDFModelSource.class).getModel(), sameInstance(updated));
+    }
+
+    private static IncrementalTFIDFModelBuilder newBuilder(double staleness) {
+        return new IncrementalTFIDFModelBuilder(dao(false), false, false,
+                                                new RawTermWeighting(), staleness);
+    }
+
+    private static TFIDFModel batchModel(boolean withNewTags) {
+        return new TFIDFModelProvider(dao(withNewTags)).get();
+    }
+
+    private static DataAccessObject dao(boolean withNewTags) {
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(TFIDFModelProviderTest.createTags());
+        if (withNewTags) {
+            data.addSource(newTags());
+        }
+        data.addDerivedEntity(CommonTypes.ITEM, TagData.ITEM_TAG_TYPE, TagData.ITEM_ID);
+        return data.get();
+    }
+
+    /**
+     * Tag applications adding a known tag and a new tag to existing items.
+     */
+    private static List<Entity> newTags() {
+        List<Entity> tags = new ArrayList<>();
+        tags.add(Entities.newBuilder(TagData.ITEM_TAG_TYPE)
+                         .setId(5)
+                         .setAttribute(TagData.ITEM_ID, 3L)
+                         .setAttribute(TagData.TAG, "hamster")
+                         .build());
+        tags.add(Entities.newBuilder(TagData.ITEM_TAG_TYPE)
+                         .setId(6)
+                         .setAttribute(TagData.ITEM_ID, 1L)
+                         .setAttribute(TagData.TAG, "narwhal")
+                         .build());
+        tags.add(Entities.newBuilder(TagData.ITEM_TAG_TYPE)
+                         .setId(7)
+                         .setAttribute(TagData.ITEM_ID, 1L)
+                         .setAttribute(TagData.TAG, "walrus")
+                         .build());
+        return tags;
+    }
+
+    private static void assertSameVector(Map<String, Double> actual, Map<String, Double> expected) {
+        assertThat(actual.keySet(), equalTo(expected.keySet()));
+        for (Map.Entry<String, Double> e: expected.entrySet()) {
+            assertThat(actual.get(e.getKey()), closeTo(e.getValue(), 1.0e-6));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.api.ItemRecommender;
+import org.lenskit.api.ItemScorer;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.data.entities.Entities;
+import org.lenskit.data.entities.Entity;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.results.ResultAccumulator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TFIDFItemRecommenderTest {
+    private static final int ITEMS = 2000;
+    private static final int TAGS = 200;
+    private static final int USERS = 20;
+    private static final int N = 10;
+
+    private DataAccessObject dao;
+    private Set<Long> allItems;
+
+    @Before
+    public void createData() {
+        // tag popularity falls off with the tag number, as in real tag data
+        Random rng = new Random(42);
+        List<Entity> tags = new ArrayList<>();
+        allItems = new HashSet<>();
+        long id = 1;
+        for (long item = 1; item <= ITEMS; item++) {
+            allItems.add(item);
+            int count = 2 + rng.nextInt(7);
+            for (int t = 0; t < count; t++) {
+                int tag = (int) (TAGS * Math.pow(rng.nextDouble(), 2));
+                tags.add(Entities.newBuilder(TagData.ITEM_TAG_TYPE)
+                                 .setId(id++)
+                                 .setAttribute(TagData.ITEM_ID, item)
+                                 .setAttribute(TagData.TAG, "tag" + tag)
+                                 .build());
+            }
+        }
+
+        EntityFactory factory = new EntityFactory();
+        List<Rating> ratings = new ArrayList<>();
+        for (long user = 1; user <= USERS; user++) {
+            for (int r = 0; r < 15; r++) {
+                ratings.add(factory.rating(user, 1 + rng.nextInt(ITEMS), 1 + rng.nextInt(9) * 0.5));
+            }
+        }
+
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(tags);
+        data.addSource(ratings);
+        data.addDerivedEntity(CommonTypes.ITEM, TagData.ITEM_TAG_TYPE, TagData.ITEM_ID);
+        dao = data.get();
+    }
+
+    @Test
+    public void testSearchMatchesExhaustiveRanking() {
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(ItemScorer.class).to(TFIDFItemScorer.class);
+        config.bind(ItemRecommender.class).to(TFIDFItemRecommender.class);
+        config.bind(UserProfileBuilder.class).to(WeightedUserProfileBuilder.class);
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(config, dao);
+
+        try (LenskitRecommender rec = engine.createRecommender(dao)) {
+            TFIDFItemRecommender recommender = (TFIDFItemRecommender) rec.getItemRecommender();
+            TFIDFItemScorer scorer = rec.get(TFIDFItemScorer.class);
+            TFIDFModel model = scorer.getModelSource().getModel();
+            int cutShort = 0;
+            for (long user = 1; user <= USERS; user++) {
+                ResultAccumulator accum = ResultAccumulator.create(N);
+                LongSet rated = scorer.getRatedItems(user);
+                for (Result r: scorer.scoreWithDetails(user, allItems)) {
+                    if (!rated.contains(r.getId())) {
+                        accum.add(r.getId(), r.getScore());
+                    }
+                }
+                ResultList expected = accum.finish();
+
+                assertSameRanking(recommender.recommendWithDetails(user, N, null, null),
+                                  expected, scorer, user);
+
+                // check that the threshold stopped the walk before it reached every item
+                TagVector userVector = scorer.getProfile(user);
+                float[] profile = new float[model.getVocabulary().size()];
+                double userNorm = TFIDFItemScorer.makeProfileArray(userVector, profile);
+                IntSet seen = new IntOpenHashSet();
+                ResultList searched = recommender.searchIndex(model, userVector, profile, userNorm,
+                                                              N, null, rated, seen);
+                assertThat(searched, notNullValue());
+                assertSameRanking(searched, expected, scorer, user);
+                if (seen.size() < ITEMS / 2) {
+                    cutShort++;
+                }
+            }
+            assertThat(cutShort, greaterThan(USERS / 2));
+        }
+    }
+
+    /**
+     * Check a ranking against the exhaustive one.  Items with the same tags tie, so they may be
+     * ranked in either order.
+     */
+    private static void assertSameRanking(ResultList actual, ResultList expected,
+                                          TFIDFItemScorer scorer, long user) {
+        assertThat(actual, hasSize(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            Result r = actual.get(i);
+            assertThat(r.getScore(), closeTo(expected.get(i).getScore(), 1.0e-6));
+            assertThat(r.getScore(), closeTo(scorer.score(user, r.getId()).getScore(), 1.0e-6));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.lenskit.mooc.cbf;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.dao.file.StaticDataSource;
 import org.lenskit.data.entities.CommonTypes;
 import org.lenskit.data.entities.Entities;
@@ -10,20 +11,30 @@ import org.lenskit.data.entities.Entity;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
 
 /**
  * Basic tests for the TFIDF model builder.  These do not test value correctness, only that the
- * right tags are present.
+ * right tags are present, and that the parallel build gives the same model as a sequential one.
  */
 public class TFIDFModelProviderTest {
     private TFIDFModel model;
 
     static TFIDFModel createModel() {
         StaticDataSource data = new StaticDataSource("test");
+        data.addSource(createTags());
+        data.addDerivedEntity(CommonTypes.ITEM, TagData.ITEM_TAG_TYPE, TagData.ITEM_ID);
+
+        TFIDFModelProvider mb = new TFIDFModelProvider(data.get());
+        return mb.get();
+    }
+
+    static List<Entity> createTags() {
         List<Entity> tags = new ArrayList<>();
         tags.add(Entities.newBuilder(TagData.ITEM_TAG_TYPE)
                          .setId(1)
@@ -45,12 +56,7 @@ public class TFIDFModelProviderTest {
                          .setAttribute(TagData.ITEM_ID, 3L)
                          .setAttribute(TagData.TAG, "jubjub bird")
                          .build());
-
-        data.addSource(tags);
-        data.addDerivedEntity(CommonTypes.ITEM, TagData.ITEM_TAG_TYPE, TagData.ITEM_ID);
-
-        TFIDFModelProvider mb = new TFIDFModelProvider(data.get());
-        return mb.get();
+        return tags;
     }
 
     @Before
@@ -80,4 +86,46 @@ public class TFIDFModelProviderTest {
         assertThat(v3.keySet(),
                    contains("jubjub bird"));
     }
+
+    @Test
+    public void testParallelBuildMatchesSequential() {
+        // enough items that the build is split into several tasks, with mixed-case tags so the
+        // vocabulary has to merge them
+        Random rng = new Random(42);
+        List<Entity> tags = new ArrayList<>();
+        int nitems = 3 * TFIDFModelProvider.TASK_SIZE + 17;
+        long id = 1;
+        for (long item = 1; item <= nitems; item++) {
+            int count = 1 + rng.nextInt(6);
+            for (int t = 0; t < count; t++) {
+                String tag = "tag" + rng.nextInt(100);
+                if (rng.nextBoolean()) {
+                    tag = tag.toUpperCase();
+                }
+                tags.add(Entities.newBuilder(TagData.ITEM_TAG_TYPE)
+                                 .setId(id++)
+                                 .setAttribute(TagData.ITEM_ID, item)
+                                 .setAttribute(TagData.TAG, tag)
+                                 .build());
+            }
+        }
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(tags);
+        data.addDerivedEntity(CommonTypes.ITEM, TagData.ITEM_TAG_TYPE, TagData.ITEM_ID);
+        DataAccessObject dao = data.get();
+
+        TermWeighting weighting = new SublinearTermWeighting();
+        TFIDFModel parallel = new TFIDFModelProvider(dao, true, false, weighting).get();
+        TFIDFModel sequential =
+                new TFIDFModelProvider(dao, true, false, weighting, Integer.MAX_VALUE).get();
+
+        TagVocabulary vocab = sequential.getVocabulary();
+        assertThat(parallel.getVocabulary().size(), equalTo(vocab.size()));
+        for (int tag = 0; tag < vocab.size(); tag++) {
+            assertThat(parallel.getVocabulary().getTag(tag), equalTo(vocab.getTag(tag)));
+        }
+        for (long item = 1; item <= nitems; item++) {
+            assertThat(parallel.getItemVector(item), equalTo(sequential.getItemVector(item)));
+        }
+    }
 }
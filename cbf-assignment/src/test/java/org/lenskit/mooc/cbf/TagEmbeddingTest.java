@@ -0,0 +1,63 @@
+package org.lenskit.mooc.cbf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for dense tag embeddings.  The test model has rank 3, so an SVD embedding with at least 3
+ * dimensions preserves every cosine.
+ */
+public class TagEmbeddingTest {
+    private TFIDFModel model;
+
+    @Before
+    public void buildModel() {
+        model = TFIDFModelProviderTest.createModel();
+    }
+
+    private TagEmbedding embed(int dim) {
+        StaticTFIDFModelSource src = new StaticTFIDFModelSource(model);
+        return new TagEmbeddingProvider(src, new SVDTagProjector(new Random(42)), dim).get();
+    }
+
+    @Test
+    public void testFullRankPreservesCosines() {
+        checkCosines(embed(3));
+    }
+
+    @Test
+    public void testExtraDimensions() {
+        TagEmbedding emb = embed(8);
+        assertThat(emb.getDimension(), equalTo(8));
+        checkCosines(emb);
+    }
+
+    @Test
+    public void testEmptyVector() {
+        TagEmbedding emb = embed(3);
+        assertThat(emb.embed(TagVector.EMPTY, new float[3]), equalTo(false));
+    }
+
+    private void checkCosines(TagEmbedding emb) {
+        float[] vec = new float[emb.getDimension()];
+        for (int i = 0; i < model.getItemIndex().size(); i++) {
+            TagVector iv = model.getTagVectorByIndex(i);
+            assertThat(emb.embed(iv, vec), equalTo(true));
+            for (int j = 0; j < model.getItemIndex().size(); j++) {
+                TagVector jv = model.getTagVectorByIndex(j);
+                float[] dense = new float[model.getVocabulary().size()];
+                for (int e = 0; e < jv.size(); e++) {
+                    dense[jv.getTagId(e)] = jv.getWeight(e);
+                }
+                double expected = iv.dot(dense) / iv.getNorm() / jv.getNorm();
+                assertThat(emb.cosine(j, vec), closeTo(expected, 1.0e-5));
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.lenskit.mooc.cbf;
+
+import org.junit.Test;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.data.entities.Entities;
+import org.lenskit.data.entities.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the term frequency weightings, and the item vectors they produce.
+ */
+public class TermWeightingTest {
+    private static final double EPSILON = 1.0e-6;
+    // 4 items, with tags a, b and c on 2 items each, and d and e on one
+    private static final double LOG_2 = Math.log(2);
+    private static final double LOG_4 = Math.log(4);
+    private static final double AVERAGE_LENGTH = 13 / 4.0;
+
+    /**
+     * Build a model from a small data set:
+     *
+     * <ul>
+     * <li>item 1: a &times; 3, b</li>
+     * <li>item 2: a, c</li>
+     * <li>item 3: b &times; 2, c, d &times; 3</li>
+     * <li>item 4: e</li>
+     * </ul>
+     */
+    private static TFIDFModel buildModel(TermWeighting weighting) {
+        List<Entity> tags = new ArrayList<>();
+        addTags(tags, 1, "a", "a", "a", "b");
+        addTags(tags, 2, "a", "c");
+        addTags(tags, 3, "b", "b", "c", "d", "d", "d");
+        addTags(tags, 4, "e");
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(tags);
+        data.addDerivedEntity(CommonTypes.ITEM, TagData.ITEM_TAG_TYPE, TagData.ITEM_ID);
+        return new TFIDFModelProvider(data.get(), false, false, weighting).get();
+    }
+
+    private static void addTags(List<Entity> tags, long item, String... names) {
+        for (String name: names) {
+            tags.add(Entities.newBuilder(TagData.ITEM_TAG_TYPE)
+                             .setId(tags.size() + 1)
+                             .setAttribute(TagData.ITEM_ID, item)
+                             .setAttribute(TagData.TAG, name)
+                             .build());
+        }
+    }
+
+    @Test
+    public void testRawVectors() {
+        TFIDFModel model = buildModel(new RawTermWeighting());
+        assertVector(model.getItemVector(1), "a", 3 * LOG_2, "b", LOG_2);
+        assertVector(model.getItemVector(2), "a", LOG_2, "c", LOG_2);
+        assertVector(model.getItemVector(3), "b", 2 * LOG_2, "c", LOG_2, "d", 3 * LOG_4);
+        assertVector(model.getItemVector(4), "e", 1.0);
+    }
+
+    @Test
+    public void testSublinearVectors() {
+        TermWeighting weighting = new SublinearTermWeighting();
+        assertThat(weighting.weight(1, 3, 6, AVERAGE_LENGTH), closeTo(1, EPSILON));
+        assertThat(weighting.weight(3, 3, 6, AVERAGE_LENGTH), closeTo(1 + Math.log(3), EPSILON));
+
+        TFIDFModel model = buildModel(weighting);
+        assertVector(model.getItemVector(1), "a", (1 + Math.log(3)) * LOG_2, "b", LOG_2);
+        assertVector(model.getItemVector(2), "a", LOG_2, "c", LOG_2);
+        assertVector(model.getItemVector(3),
+                     "b", (1 + Math.log(2)) * LOG_2, "c", LOG_2, "d", (1 + Math.log(3)) * LOG_4);
+    }
+
+    @Test
+    public void testMaxVectors() {
+        TermWeighting weighting = new MaxTermWeighting();
+        // the most frequent tag always gets weight 1, and the rest are smoothed towards 0.4
+        assertThat(weighting.weight(3, 3, 6, AVERAGE_LENGTH), closeTo(1, EPSILON));
+        assertThat(weighting.weight(1, 3, 6, AVERAGE_LENGTH), closeTo(0.6, EPSILON));
+
+        TFIDFModel model = buildModel(weighting);
+        assertVector(model.getItemVector(1), "a", LOG_2, "b", 0.6 * LOG_2);
+        // every tag on item 2 is the most frequent
+        assertVector(model.getItemVector(2), "a", LOG_2, "c", LOG_2);
+        assertVector(model.getItemVector(3), "b", 0.8 * LOG_2, "c", 0.6 * LOG_2, "d", LOG_4);
+    }
+
+    @Test
+    public void testBM25Vectors() {
+        TFIDFModel model = buildModel(new BM25TermWeighting(1.2, 0.75));
+        // k1 scaled by the length normalization: item 1 has length 4, and item 3 length 6
+        double len1 = 1.2 * (0.25 + 0.75 * 4 / AVERAGE_LENGTH);
+        assertVector(model.getItemVector(1),
+                     "a", 3 * 2.2 / (3 + len1) * LOG_2, "b", 2.2 / (1 + len1) * LOG_2);
+        double len3 = 1.2 * (0.25 + 0.75 * 6 / AVERAGE_LENGTH);
+        assertVector(model.getItemVector(3),
+                     "b", 2 * 2.2 / (2 + len3) * LOG_2, "c", 2.2 / (1 + len3) * LOG_2,
+                     "d", 3 * 2.2 / (3 + len3) * LOG_4);
+    }
+
+    @Test
+    public void testBM25TermSaturation() {
+        // without saturation, only whether a tag was applied matters
+        TermWeighting binary = new BM25TermWeighting(0, 0.75);
+        for (int tf = 1; tf <= 5; tf++) {
+            assertThat(binary.weight(tf, 5, 6, AVERAGE_LENGTH), closeTo(1, EPSILON));
+        }
+        assertVector(buildModel(binary).getItemVector(3),
+                     "b", LOG_2, "c", LOG_2, "d", LOG_4);
+
+        // weights grow with frequency, but stay below k1 + 1
+        TermWeighting bm25 = new BM25TermWeighting(1.2, 0);
+        double last = 0;
+        for (int tf = 1; tf <= 100; tf *= 10) {
+            double w = bm25.weight(tf, tf, tf, AVERAGE_LENGTH);
+            assertThat(w, greaterThan(last));
+            assertThat(w, lessThan(2.2));
+            last = w;
+        }
+
+        // a large k1 approaches raw term frequency
+        TFIDFModel raw = buildModel(new RawTermWeighting());
+        TFIDFModel saturated = buildModel(new BM25TermWeighting(1.0e6, 0));
+        for (long item = 1; item <= 4; item++) {
+            Map<String, Double> expected = raw.getItemVector(item);
+            Map<String, Double> actual = saturated.getItemVector(item);
+            assertThat(actual.keySet(), equalTo(expected.keySet()));
+            for (Map.Entry<String, Double> e: expected.entrySet()) {
+                assertThat(actual.get(e.getKey()), closeTo(e.getValue(), 1.0e-5));
+            }
+        }
+    }
+
+    @Test
+    public void testBM25LengthNormalization() {
+        // without length normalization, the item's length does not matter
+        TermWeighting flat = new BM25TermWeighting(1.2, 0);
+        assertThat(flat.weight(2, 2, 1, AVERAGE_LENGTH),
+                   closeTo(flat.weight(2, 2, 20, AVERAGE_LENGTH), EPSILON));
+        assertThat(flat.weight(2, 2, 20, AVERAGE_LENGTH), closeTo(2 * 2.2 / 3.2, EPSILON));
+
+        // with it, a tag counts for less on a longer item, and items of average length are
+        // unaffected
+        TermWeighting full = new BM25TermWeighting(1.2, 1);
+        assertThat(full.weight(2, 2, 6, AVERAGE_LENGTH),
+                   lessThan(full.weight(2, 2, 2, AVERAGE_LENGTH)));
+        assertThat(full.weight(2, 2, 13, 13), closeTo(2 * 2.2 / 3.2, EPSILON));
+
+        // the length of item 3 is folded into the weights of all its tags
+        double len3 = 1.2 * 6 / AVERAGE_LENGTH;
+        assertVector(buildModel(full).getItemVector(3),
+                     "b", 2 * 2.2 / (2 + len3) * LOG_2, "c", 2.2 / (1 + len3) * LOG_2,
+                     "d", 3 * 2.2 / (3 + len3) * LOG_4);
+    }
+
+    /**
+     * Check that an item vector is the unit vector in the direction of some TF-IDF weights.
+     * @param actual The item vector.
+     * @param expected Alternating tags and unnormalized weights.
+     */
+    private static void assertVector(Map<String, Double> actual, Object... expected) {
+        double sumSquares = 0;
+        for (int i = 1; i < expected.length; i += 2) {
+            double w = (Double) expected[i];
+            sumSquares += w * w;
+        }
+        double norm = Math.sqrt(sumSquares);
+
+        assertThat(actual.size(), equalTo(expected.length / 2));
+        for (int i = 0; i < expected.length; i += 2) {
+            assertThat(actual, hasKey((String) expected[i]));
+            assertThat(actual.get(expected[i]), closeTo((Double) expected[i + 1] / norm, EPSILON));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.lenskit.mooc.cbf;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.api.ItemScorer;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class UserProfileCacheTest {
+    private EntityFactory factory = new EntityFactory();
+    private TFIDFModel model;
+    private List<Rating> ratings;
+
+    @Before
+    public void buildModel() {
+        model = TFIDFModelProviderTest.createModel();
+        ratings = Arrays.asList(factory.rating(42, 1, 4.0),
+                                factory.rating(42, 3, 2.0));
+    }
+
+    @Test
+    public void testProfileMatchesBuilder() {
+        WeightedUserProfileBuilder builder = new WeightedUserProfileBuilder(model);
+        UserProfileCache cache = newCache(builder);
+        assertSameProfile(cache.getProfile(dao(ratings), 42), builder.makeUserProfile(ratings));
+        assertThat(cache.getRatedItems(dao(ratings), 42), containsInAnyOrder(1L, 3L));
+    }
+
+    @Test
+    public void testAddRatingUpdatesProfile() {
+        WeightedUserProfileBuilder builder = new WeightedUserProfileBuilder(model);
+        UserProfileCache cache = newCache(builder);
+        DataAccessObject dao = dao(ratings);
+        cache.getProfile(dao, 42);
+
+        Rating added = factory.rating(42, 2, 5.0);
+        Rating changed = factory.rating(42, 3, 3.5);
+        cache.addRating(added);
+        cache.addRating(changed);
+
+        // the cached profile reflects the new ratings even though the DAO does not
+        List<Rating> updated = Arrays.asList(ratings.get(0), added, changed);
+        assertSameProfile(cache.getProfile(dao, 42), builder.makeUserProfile(updated));
+        assertThat(cache.getRatedItems(dao, 42), containsInAnyOrder(1L, 2L, 3L));
+    }
+
+    @Test
+    public void testAddRatingIgnoresUncachedUser() {
+        UserProfileCache cache = newCache(new WeightedUserProfileBuilder(model));
+        cache.addRating(factory.rating(42, 2, 5.0));
+        assertThat(cache.getRatedItems(dao(ratings), 42), containsInAnyOrder(1L, 3L));
+    }
+
+    @Test
+    public void testAddRatingReloadsNonIncrementalProfile() {
+        final ThresholdUserProfileBuilder threshold = new ThresholdUserProfileBuilder(model);
+        UserProfileCache cache = newCache(new UserProfileBuilder() {
+            @Override
+            public Map<String, Double> makeUserProfile(@Nonnull List<Rating> ratings) {
+                return threshold.makeUserProfile(ratings);
+            }
+        });
+        cache.getProfile(dao(ratings), 42);
+
+        List<Rating> updated = new ArrayList<>(ratings);
+        updated.add(factory.rating(42, 2, 5.0));
+        cache.addRating(updated.get(2));
+        // the profile was discarded, so it is loaded again from the (updated) DAO
+        assertSameProfile(cache.getProfile(dao(updated), 42), threshold.makeUserProfile(updated));
+    }
+
+    @Test
+    public void testInvalidate() {
+        WeightedUserProfileBuilder builder = new WeightedUserProfileBuilder(model);
+        UserProfileCache cache = newCache(builder);
+        cache.getProfile(dao(ratings), 42);
+
+        List<Rating> updated = new ArrayList<>(ratings);
+        updated.add(factory.rating(42, 2, 5.0));
+        assertSameProfile(cache.getProfile(dao(updated), 42), builder.makeUserProfile(ratings));
+        cache.invalidate(42);
+        assertSameProfile(cache.getProfile(dao(updated), 42), builder.makeUserProfile(updated));
+    }
+
+    @Test
+    public void testSharedAcrossRecommenders() {
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(TFIDFModelProviderTest.createTags());
+        data.addSource(ratings);
+        data.addDerivedEntity(CommonTypes.ITEM, TagData.ITEM_TAG_TYPE, TagData.ITEM_ID);
+        DataAccessObject dao = data.get();
+
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(ItemScorer.class).to(TFIDFItemScorer.class);
+        config.bind(UserProfileBuilder.class).to(WeightedUserProfileBuilder.class);
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(config, dao);
+        LenskitRecommender first = engine.createRecommender(dao);
+        LenskitRecommender second = engine.createRecommender(dao);
+
+        UserProfileCache cache = first.get(UserProfileCache.class);
+        assertThat(cache, notNullValue());
+        assertThat(second.get(UserProfileCache.class), sameInstance(cache));
+    }
+
+    private UserProfileCache newCache(UserProfileBuilder builder) {
+        return new UserProfileCache(new StaticTFIDFModelSource(model), builder, 10);
+    }
+
+    private static DataAccessObject dao(List<Rating> ratings) {
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(ratings);
+        return data.get();
+    }
+
+    private void assertSameProfile(TagVector actual, Map<String, Double> expected) {
+        TagVocabulary vocabulary = model.getVocabulary();
+        Map<String, Double> weights = new HashMap<>();
+        for (int i = 0; i < actual.size(); i++) {
+            weights.put(vocabulary.getTag(actual.getTagId(i)), (double) actual.getWeight(i));
+        }
+        assertThat(weights.keySet(), equalTo(expected.keySet()));
+        for (Map.Entry<String, Double> e: expected.entrySet()) {
+            assertThat(weights.get(e.getKey()), closeTo(e.getValue(), 1.0e-6));
+        }
+    }
+}
@@ -9,16 +9,18 @@ import org.lenskit.data.ratings.Rating;
 
 import java.util.Map;
 
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
 
 public class WeightedUserProfileBuilderTest {
     private EntityFactory factory = new EntityFactory();
+    private TFIDFModel model;
     private WeightedUserProfileBuilder profileBuilder;
 
     @Before
     public void buildModel() {
-        TFIDFModel model = TFIDFModelProviderTest.createModel();
+        model = TFIDFModelProviderTest.createModel();
         profileBuilder = new WeightedUserProfileBuilder(model);
     }
 
@@ -45,4 +47,47 @@ public class WeightedUserProfileBuilderTest {
         // two tags!
         assertThat(vector.size(), equalTo(2));
     }
+
+    @Test
+    public void testAccumulatorMatchesProfile() throws Exception {
+        ProfileAccumulator acc = profileBuilder.newAccumulator();
+        acc.addRating(1, 4.0);
+        acc.addRating(2, 3.0);
+        acc.addRating(3, 5.0);
+        assertSameProfile(acc.getProfile(),
+                          profileBuilder.makeUserProfile(History.forUser(42, factory.rating(42, 1, 4.0),
+                                                                         factory.rating(42, 2, 3.0),
+                                                                         factory.rating(42, 3, 5.0))));
+
+        // change the rating of item 3, shifting the user's mean
+        acc.removeRating(3, 5.0);
+        acc.addRating(3, 2.0);
+        assertSameProfile(acc.getProfile(),
+                          profileBuilder.makeUserProfile(History.forUser(42, factory.rating(42, 1, 4.0),
+                                                                         factory.rating(42, 2, 3.0),
+                                                                         factory.rating(42, 3, 2.0))));
+    }
+
+    @Test
+    public void testAccumulatorDropsZeroWeights() throws Exception {
+        ProfileAccumulator acc = profileBuilder.newAccumulator();
+        // a single rating is exactly the user's mean
+        acc.addRating(1, 3.5);
+        assertThat(acc.getProfile().size(), equalTo(0));
+    }
+
+    private void assertSameProfile(TagVector profile, Map<String, Double> expected) {
+        TagVocabulary vocab = model.getVocabulary();
+        int nonzero = 0;
+        for (Map.Entry<String, Double> e: expected.entrySet()) {
+            if (e.getValue() != 0) {
+                nonzero += 1;
+            }
+        }
+        assertThat(profile.size(), equalTo(nonzero));
+        for (int i = 0; i < profile.size(); i++) {
+            String tag = vocab.getTag(profile.getTagId(i));
+            assertThat((double) profile.getWeight(i), closeTo(expected.get(tag), 1.0e-6));
+        }
+    }
 }
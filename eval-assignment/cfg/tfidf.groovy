@@ -0,0 +1,39 @@
+import org.lenskit.api.ItemScorer
+import org.lenskit.bias.BiasModel
+import org.lenskit.bias.ItemBiasModel
+import org.lenskit.knn.NeighborhoodSize
+import org.lenskit.knn.item.ItemItemScorer
+import org.lenskit.knn.item.ModelSize
+import org.lenskit.transform.normalize.BiasUserVectorNormalizer
+import org.lenskit.transform.normalize.UserVectorNormalizer
+import org.lenskit.mooc.cbf.TFIDFItemItemModel
+import org.lenskit.knn.item.model.ItemItemModel
+
+// the same content-based item-item algorithms as lucene.groovy, with neighbors by TF-IDF tag cosine
+for (nnbrs in [5, 10, 15, 20, 25, 30, 40, 50, 75, 100]) {
+    algorithm("TFIDF") {
+        attributes["NNbrs"] = nnbrs
+        // use fallback scorer for unscorable items
+        include 'fallback.groovy'
+        bind ItemScorer to ItemItemScorer
+        bind ItemItemModel to TFIDFItemItemModel
+        // keep every neighbor, like the Lucene model; a positive size keeps the most similar ones
+        set ModelSize to 0
+        set NeighborhoodSize to nnbrs
+    }
+
+    algorithm("TFIDFNorm") {
+        attributes["NNbrs"] = nnbrs
+        include 'fallback.groovy'
+        bind ItemScorer to ItemItemScorer
+        bind ItemItemModel to TFIDFItemItemModel
+        set ModelSize to 0
+        set NeighborhoodSize to nnbrs
+        // normalize user rating vectors by subtracting biases
+        bind UserVectorNormalizer to BiasUserVectorNormalizer
+        // subtract the item bias (so we normalize by item mean rating)
+        within(UserVectorNormalizer) {
+            bind BiasModel to ItemBiasModel
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.data.entities.Entities;
+import org.lenskit.data.entities.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TFIDFItemItemModelTest {
+    private DataAccessObject dao;
+
+    @Before
+    public void createData() {
+        // 200 items with a few tags each, drawn from a skewed vocabulary of 50 tags
+        Random rng = new Random(42);
+        List<Entity> tags = new ArrayList<>();
+        for (long item = 1; item <= 200; item++) {
+            int ntags = 1 + rng.nextInt(8);
+            for (int k = 0; k < ntags; k++) {
+                int tag = (int) Math.floor(50 * Math.pow(rng.nextDouble(), 2));
+                tags.add(Entities.newBuilder(TagData.ITEM_TAG_TYPE)
+                                 .setId(tags.size() + 1)
+                                 .setAttribute(TagData.ITEM_ID, item)
+                                 .setAttribute(TagData.TAG, "tag" + tag)
+                                 .build());
+            }
+        }
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(tags);
+        data.addDerivedEntity(CommonTypes.ITEM, TagData.ITEM_TAG_TYPE, TagData.ITEM_ID);
+        dao = data.get();
+    }
+
+    @Test
+    public void testNeighborsAreCosines() {
+        TFIDFItemItemModel model = new TFIDFItemItemModelBuilder(dao, 0).get();
+        assertThat(model.getItemUniverse(), hasSize(200));
+        for (long item: model.getItemUniverse()) {
+            Long2DoubleMap nbrs = model.getNeighbors(item);
+            assertThat(nbrs.containsKey(item), equalTo(false));
+            for (Long2DoubleMap.Entry e: nbrs.long2DoubleEntrySet()) {
+                assertThat(e.getDoubleValue(), allOf(greaterThan(0.0), lessThan(1.0 + 1.0e-6)));
+                // similarity is symmetric
+                assertThat(model.getNeighbors(e.getLongKey()).get(item),
+                           closeTo(e.getDoubleValue(), 1.0e-6));
+            }
+        }
+        assertThat(model.getNeighbors(1000).size(), equalTo(0));
+    }
+
+    @Test
+    public void testTruncatedNeighborsAreTopN() {
+        TFIDFItemItemModel full = new TFIDFItemItemModelBuilder(dao, 0).get();
+        TFIDFItemItemModel truncated = new TFIDFItemItemModelBuilder(dao, 10).get();
+        for (long item: full.getItemUniverse()) {
+            Long2DoubleMap all = full.getNeighbors(item);
+            Long2DoubleMap top = truncated.getNeighbors(item);
+            assertThat(top.size(), equalTo(Math.min(10, all.size())));
+            double min = Double.POSITIVE_INFINITY;
+            for (Long2DoubleMap.Entry e: top.long2DoubleEntrySet()) {
+                assertThat(e.getDoubleValue(), closeTo(all.get(e.getLongKey()), 1.0e-6));
+                min = Math.min(min, e.getDoubleValue());
+            }
+            // nothing left out scores better than what was kept
+            for (Long2DoubleMap.Entry e: all.long2DoubleEntrySet()) {
+                if (!top.containsKey(e.getLongKey())) {
+                    assertThat(e.getDoubleValue(), lessThanOrEqualTo(min + 1.0e-6));
+                }
+            }
+        }
+    }
+}
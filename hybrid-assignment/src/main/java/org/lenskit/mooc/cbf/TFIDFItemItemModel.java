@@ -0,0 +1,50 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.inject.Shareable;
+import org.lenskit.knn.item.model.ItemItemModel;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+
+/**
+ * Content-based item-item model whose neighbors are the items with the most similar tags, by the
+ * cosine of their TF-IDF tag vectors.  The neighborhoods are computed up front, so it can stand in
+ * for {@link LuceneItemItemModel} without querying an index for each item.
+ *
+ * @see TFIDFItemItemModelBuilder
+ */
+@Shareable
+@DefaultProvider(TFIDFItemItemModelBuilder.class)
+public class TFIDFItemItemModel implements ItemItemModel, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final SortedKeyIndex itemIndex;
+    private final Long2DoubleMap[] neighborhoods;
+
+    /**
+     * Construct the model.
+     * @param items The item universe.
+     * @param nbrs The neighborhood of each item, by its position in {@code items}.
+     */
+    TFIDFItemItemModel(SortedKeyIndex items, Long2DoubleMap[] nbrs) {
+        itemIndex = items;
+        neighborhoods = nbrs;
+    }
+
+    @Override
+    public LongSortedSet getItemUniverse() {
+        return itemIndex.keySet();
+    }
+
+    @Nonnull
+    @Override
+    public Long2DoubleMap getNeighbors(long item) {
+        int idx = itemIndex.tryGetIndex(item);
+        return idx >= 0 ? neighborhoods[idx] : Long2DoubleMaps.EMPTY_MAP;
+    }
+}
@@ -0,0 +1,410 @@
+package org.lenskit.mooc.cbf;
+
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.doubles.DoubleHeapPriorityQueue;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.data.entities.Entity;
+import org.lenskit.inject.Transient;
+import org.lenskit.knn.item.ModelSize;
+import org.lenskit.util.IdBox;
+import org.lenskit.util.ScoredIdAccumulator;
+import org.lenskit.util.TopNScoredIdAccumulator;
+import org.lenskit.util.UnlimitedScoredIdAccumulator;
+import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.keys.SortedKeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a {@link TFIDFItemItemModel} from item tag data.
+ *
+ * <p>Each item is represented by a unit TF-IDF vector over its (lower-cased) tags, and its
+ * neighbors are the other items whose vectors have a positive cosine with it.  The neighbors are
+ * found through an inverted index from tags to items, so an item is only compared with items that
+ * share a tag with it.  The neighborhoods are computed in parallel, one range of items per task.
+ *
+ * <p>If the {@linkplain ModelSize model size} is limited, each item keeps only its most similar
+ * neighbors, and the search is pruned: the item's tags are visited in decreasing order of how much
+ * they can add to a cosine, and once the tags left to visit cannot lift an item it has not yet
+ * reached above the items already found, the rest of their posting lists are skipped.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class TFIDFItemItemModelBuilder implements Provider<TFIDFItemItemModel> {
+    private static final Logger logger = LoggerFactory.getLogger(TFIDFItemItemModelBuilder.class);
+    /**
+     * Number of items below which a neighborhood task is not split further.
+     */
+    private static final int TASK_SIZE = 64;
+
+    private final DataAccessObject dao;
+    private final int modelSize;
+
+    /**
+     * Construct a model builder.
+     * @param dao The data access object.
+     * @param size The number of neighbors to keep for each item, or 0 for all of them.
+     */
+    @Inject
+    public TFIDFItemItemModelBuilder(@Transient DataAccessObject dao, @ModelSize int size) {
+        this.dao = dao;
+        modelSize = size;
+    }
+
+    @Override
+    public TFIDFItemItemModel get() {
+        SortedKeyIndex itemIndex = SortedKeyIndex.fromCollection(dao.getEntityIds(CommonTypes.ITEM));
+        int nitems = itemIndex.size();
+
+        // count each item's tags, interning the tags as dense IDs
+        Object2IntMap<String> tagIds = new Object2IntOpenHashMap<>();
+        tagIds.defaultReturnValue(-1);
+        IntArrayList docFreq = new IntArrayList();
+        int[][] itemTags = new int[nitems][];
+        int[][] itemCounts = new int[nitems][];
+        try (ObjectStream<IdBox<List<Entity>>> stream = dao.query(TagData.ITEM_TAG_TYPE)
+                                                           .groupBy(TagData.ITEM_ID)
+                                                           .stream()) {
+            for (IdBox<List<Entity>> item : stream) {
+                int idx = itemIndex.tryGetIndex(item.getId());
+                if (idx < 0) {
+                    continue;
+                }
+                Object2IntOpenHashMap<String> tf = new Object2IntOpenHashMap<>();
+                for (Entity tagApplication : item.getValue()) {
+                    tf.addTo(tagApplication.get(TagData.TAG).toLowerCase(Locale.ROOT), 1);
+                }
+                int[] tags = new int[tf.size()];
+                int[] counts = new int[tf.size()];
+                int n = 0;
+                for (Object2IntMap.Entry<String> e : tf.object2IntEntrySet()) {
+                    int tag = tagIds.getInt(e.getKey());
+                    if (tag < 0) {
+                        tag = tagIds.size();
+                        tagIds.put(e.getKey(), tag);
+                        docFreq.add(0);
+                    }
+                    docFreq.set(tag, docFreq.getInt(tag) + 1);
+                    tags[n] = tag;
+                    counts[n] = e.getIntValue();
+                    n++;
+                }
+                itemTags[idx] = tags;
+                itemCounts[idx] = counts;
+            }
+        }
+
+        // weight the counts by log IDF and normalize them to unit vectors
+        int ntags = docFreq.size();
+        double logN = Math.log(nitems);
+        float[][] itemWeights = new float[nitems][];
+        for (int i = 0; i < nitems; i++) {
+            if (itemTags[i] == null) {
+                itemTags[i] = new int[0];
+                itemCounts[i] = new int[0];
+            }
+            itemWeights[i] = makeVector(itemTags[i], itemCounts[i], docFreq, logN);
+        }
+        logger.info("computed TF-IDF vectors for {} items and {} tags", nitems, ntags);
+
+        InvertedIndex index = new InvertedIndex(ntags, itemTags, itemWeights);
+        Long2DoubleMap[] neighborhoods = new Long2DoubleMap[nitems];
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            pool.invoke(new NeighborhoodTask(itemIndex, itemTags, itemWeights, index, modelSize,
+                                             neighborhoods, 0, nitems));
+        } finally {
+            pool.shutdown();
+        }
+        logger.info("computed neighborhoods for {} items", nitems);
+
+        return new TFIDFItemItemModel(itemIndex, neighborhoods);
+    }
+
+    /**
+     * Compute an item's unit TF-IDF vector.  The tags are sorted by ID, and the counts reordered
+     * to match.
+     * @return The weights, parallel to the sorted tags.
+     */
+    private static float[] makeVector(final int[] tags, final int[] counts, IntArrayList docFreq,
+                                      double logN) {
+        Arrays.quickSort(0, tags.length, new AbstractIntComparator() {
+            @Override
+            public int compare(int a, int b) {
+                return Integer.compare(tags[a], tags[b]);
+            }
+        }, new Swapper() {
+            @Override
+            public void swap(int a, int b) {
+                int t = tags[a];
+                tags[a] = tags[b];
+                tags[b] = t;
+                int c = counts[a];
+                counts[a] = counts[b];
+                counts[b] = c;
+            }
+        });
+
+        double[] weights = new double[tags.length];
+        double sumSquares = 0;
+        for (int k = 0; k < tags.length; k++) {
+            weights[k] = counts[k] * (logN - Math.log(docFreq.getInt(tags[k])));
+            sumSquares += weights[k] * weights[k];
+        }
+        // a tag on every item has no weight, so an item may have no usable tags at all
+        double norm = sumSquares > 0 ? Math.sqrt(sumSquares) : 1;
+        float[] unit = new float[tags.length];
+        for (int k = 0; k < tags.length; k++) {
+            unit[k] = (float) (weights[k] / norm);
+        }
+        return unit;
+    }
+
+    /**
+     * Posting lists from tags to (item, weight) pairs, stored back to back and sorted by decreasing
+     * weight.
+     */
+    private static class InvertedIndex {
+        final int[] offsets;
+        final int[] items;
+        final float[] weights;
+
+        InvertedIndex(int ntags, int[][] itemTags, float[][] itemWeights) {
+            offsets = new int[ntags + 1];
+            for (int[] tags : itemTags) {
+                for (int tag : tags) {
+                    offsets[tag + 1] += 1;
+                }
+            }
+            for (int t = 0; t < ntags; t++) {
+                offsets[t + 1] += offsets[t];
+            }
+            items = new int[offsets[ntags]];
+            weights = new float[offsets[ntags]];
+            int[] fill = new int[ntags];
+            for (int i = 0; i < itemTags.length; i++) {
+                for (int k = 0; k < itemTags[i].length; k++) {
+                    int tag = itemTags[i][k];
+                    int pos = offsets[tag] + fill[tag]++;
+                    items[pos] = i;
+                    weights[pos] = itemWeights[i][k];
+                }
+            }
+            for (int t = 0; t < ntags; t++) {
+                sortPostings(offsets[t], offsets[t + 1]);
+            }
+        }
+
+        private void sortPostings(int from, int to) {
+            Arrays.quickSort(from, to, new AbstractIntComparator() {
+                @Override
+                public int compare(int a, int b) {
+                    return Float.compare(weights[b], weights[a]);
+                }
+            }, new Swapper() {
+                @Override
+                public void swap(int a, int b) {
+                    int i = items[a];
+                    items[a] = items[b];
+                    items[b] = i;
+                    float w = weights[a];
+                    weights[a] = weights[b];
+                    weights[b] = w;
+                }
+            });
+        }
+
+        /**
+         * Get the largest weight of a tag on any item.
+         */
+        float getMaxWeight(int tag) {
+            return offsets[tag] < offsets[tag + 1] ? weights[offsets[tag]] : 0;
+        }
+    }
+
+    /**
+     * Task computing the neighborhoods of a range of items.
+     */
+    private static class NeighborhoodTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SortedKeyIndex itemIndex;
+        private final int[][] itemTags;
+        private final float[][] itemWeights;
+        private final InvertedIndex index;
+        private final int modelSize;
+        private final Long2DoubleMap[] neighborhoods;
+        private final int start;
+        private final int end;
+
+        NeighborhoodTask(SortedKeyIndex items, int[][] tags, float[][] weights, InvertedIndex index,
+                         int size, Long2DoubleMap[] nbrs, int start, int end) {
+            itemIndex = items;
+            itemTags = tags;
+            itemWeights = weights;
+            this.index = index;
+            modelSize = size;
+            neighborhoods = nbrs;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > TASK_SIZE) {
+                int mid = (start + end) >>> 1;
+                invokeAll(new NeighborhoodTask(itemIndex, itemTags, itemWeights, index, modelSize,
+                                               neighborhoods, start, mid),
+                          new NeighborhoodTask(itemIndex, itemTags, itemWeights, index, modelSize,
+                                               neighborhoods, mid, end));
+                return;
+            }
+
+            // scratch space, reused for each item in the range
+            double[] scores = new double[itemTags.length];
+            boolean[] seen = new boolean[itemTags.length];
+            IntArrayList reached = new IntArrayList();
+            for (int i = start; i < end; i++) {
+                ScoredIdAccumulator acc = modelSize > 0
+                        ? new TopNScoredIdAccumulator(modelSize)
+                        : new UnlimitedScoredIdAccumulator();
+                double remaining = search(i, scores, seen, reached);
+                // if the walk was cut short, only the items that might still make the top N need
+                // their full cosines
+                double cutoff = remaining > 0 ? kthScore(scores, reached) : 0;
+                for (int k = 0; k < reached.size(); k++) {
+                    int j = reached.getInt(k);
+                    double sim = scores[j];
+                    if (remaining > 0) {
+                        sim = sim + remaining >= cutoff ? dot(i, j) : 0;
+                    }
+                    if (sim > 0) {
+                        acc.put(itemIndex.getKey(j), sim);
+                    }
+                    scores[j] = 0;
+                    seen[j] = false;
+                }
+                reached.clear();
+                neighborhoods[i] = Long2DoubleSortedArrayMap.create(acc.finishMap());
+            }
+        }
+
+        /**
+         * Walk the posting lists of an item's tags, accumulating the partial cosine of each item
+         * reached.
+         * @param item The item.
+         * @param scores The partial cosines, by item position.  Must be zero on entry.
+         * @param seen Whether each item has been reached.  Must be false on entry.
+         * @param reached Receives the items reached (other than {@code item} itself).
+         * @return 0 if every posting list was walked, so the partial cosines are exact; otherwise,
+         *         the most that the posting lists left unwalked can add to any cosine.
+         */
+        private double search(int item, double[] scores, boolean[] seen, IntArrayList reached) {
+            final int[] tags = itemTags[item];
+            final float[] weights = itemWeights[item];
+            int n = tags.length;
+
+            // visit the tags in decreasing order of the most they can add to a cosine
+            final double[] bounds = new double[n];
+            int[] order = new int[n];
+            for (int k = 0; k < n; k++) {
+                bounds[k] = weights[k] * index.getMaxWeight(tags[k]);
+                order[k] = k;
+            }
+            IntArrays.quickSort(order, new AbstractIntComparator() {
+                @Override
+                public int compare(int a, int b) {
+                    return Double.compare(bounds[b], bounds[a]);
+                }
+            });
+            double remaining = 0;
+            for (double b : bounds) {
+                remaining += b;
+            }
+
+            double best = 0;
+            for (int step = 0; step < n; step++) {
+                // An item not yet reached can get at most the remaining bound, and the partial
+                // cosines of the items reached are lower bounds on their cosines.  The N-th best
+                // partial cosine is only worth finding once the best one passes the bound.
+                if (modelSize > 0 && reached.size() >= modelSize && remaining <= best
+                        && remaining <= kthScore(scores, reached)) {
+                    return remaining;
+                }
+                int k = order[step];
+                int tag = tags[k];
+                double w = weights[k];
+                for (int p = index.offsets[tag]; p < index.offsets[tag + 1]; p++) {
+                    int j = index.items[p];
+                    if (j == item) {
+                        continue;
+                    }
+                    if (!seen[j]) {
+                        seen[j] = true;
+                        reached.add(j);
+                    }
+                    scores[j] += w * index.weights[p];
+                    best = Math.max(best, scores[j]);
+                }
+                remaining -= bounds[k];
+            }
+            return 0;
+        }
+
+        /**
+         * Get the {@link #modelSize}-th largest partial cosine among the items reached.
+         */
+        private double kthScore(double[] scores, IntArrayList reached) {
+            DoubleHeapPriorityQueue top = new DoubleHeapPriorityQueue(modelSize + 1);
+            for (int k = 0; k < reached.size(); k++) {
+                double score = scores[reached.getInt(k)];
+                if (top.size() < modelSize) {
+                    top.enqueue(score);
+                } else if (score > top.firstDouble()) {
+                    top.dequeueDouble();
+                    top.enqueue(score);
+                }
+            }
+            return top.firstDouble();
+        }
+
+        /**
+         * Compute the cosine of two items by merging their (sorted) tag vectors.
+         */
+        private double dot(int a, int b) {
+            int[] ta = itemTags[a];
+            int[] tb = itemTags[b];
+            double sum = 0;
+            int i = 0;
+            int j = 0;
+            while (i < ta.length && j < tb.length) {
+                if (ta[i] < tb[j]) {
+                    i++;
+                } else if (ta[i] > tb[j]) {
+                    j++;
+                } else {
+                    sum += (double) itemWeights[a][i] * itemWeights[b][j];
+                    i++;
+                    j++;
+                }
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.lenskit.mooc.hybrid;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.junit.Test;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.config.ConfigHelpers;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.data.entities.Entities;
+import org.lenskit.data.entities.Entity;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.knn.item.model.ItemItemModel;
+import org.lenskit.mooc.cbf.TFIDFItemItemModel;
+import org.lenskit.mooc.cbf.TagData;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Smoke test for {@code cfg/tfidf-svd.groovy}: the configuration builds on a small tagged data
+ * set, wires the TF-IDF item-item model into the blend, and produces scores.
+ */
+public class TFIDFSVDConfigTest {
+    private static final String[] TAGS = {
+            "space", "robots", "heist", "romance", "war", "comedy", "noir", "musical"
+    };
+
+    @Test
+    public void testConfigBuildsAndScores() throws Exception {
+        Random rng = new Random(42);
+        List<Entity> tags = new ArrayList<>();
+        Map<Long, Set<String>> itemTags = new HashMap<>();
+        for (long item = 1; item <= 30; item++) {
+            itemTags.put(item, new HashSet<String>());
+            for (int k = 0; k < 3; k++) {
+                String tag = TAGS[rng.nextInt(TAGS.length)];
+                itemTags.get(item).add(tag);
+                tags.add(Entities.newBuilder(TagData.ITEM_TAG_TYPE)
+                                 .setId(tags.size() + 1)
+                                 .setAttribute(TagData.ITEM_ID, item)
+                                 .setAttribute(TagData.TAG, tag)
+                                 .build());
+            }
+        }
+        List<Rating> ratings = new ArrayList<>();
+        for (long user = 1; user <= 40; user++) {
+            for (long item = 1; item <= 30; item++) {
+                if (rng.nextDouble() < 0.4) {
+                    ratings.add(Rating.newBuilder()
+                                      .setId(1000 * user + item)
+                                      .setUserId(user)
+                                      .setItemId(item)
+                                      .setRating(1 + rng.nextInt(5))
+                                      .build());
+                }
+            }
+        }
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(ratings);
+        data.addSource(tags);
+        data.addDerivedEntity(CommonTypes.ITEM, TagData.ITEM_TAG_TYPE, TagData.ITEM_ID);
+        data.addDerivedEntity(CommonTypes.USER, CommonTypes.RATING, TagData.USER_ID);
+        DataAccessObject dao = data.get();
+
+        LenskitRecommenderEngine engine =
+                LenskitRecommenderEngine.build(ConfigHelpers.load(new File("cfg/tfidf-svd.groovy")),
+                                               dao);
+        try (LenskitRecommender rec = engine.createRecommender(dao)) {
+            assertThat(rec.getItemScorer(), instanceOf(LinearBlendItemScorer.class));
+            ItemItemModel model = rec.get(ItemItemModel.class);
+            assertThat(model, instanceOf(TFIDFItemItemModel.class));
+
+            // neighbors come from shared tags
+            int nneighbors = 0;
+            for (long item = 1; item <= 30; item++) {
+                nneighbors += model.getNeighbors(item).size();
+                for (Long2DoubleMap.Entry e: model.getNeighbors(item).long2DoubleEntrySet()) {
+                    Set<String> shared = new HashSet<>(itemTags.get(item));
+                    shared.retainAll(itemTags.get(e.getLongKey()));
+                    assertThat(shared, not(empty()));
+                    assertThat(e.getDoubleValue(), greaterThan(0.0));
+                }
+            }
+            assertThat(nneighbors, greaterThan(0));
+
+            LongSet items = new LongOpenHashSet(dao.getEntityIds(CommonTypes.ITEM));
+            ResultMap scores = rec.getItemScorer().scoreWithDetails(1, items);
+            assertThat(scores.size(), greaterThan(0));
+            for (Result r: scores) {
+                assertThat(Double.isNaN(r.getScore()) || Double.isInfinite(r.getScore()),
+                           equalTo(false));
+            }
+        }
+    }
+}
@@ -1,8 +1,32 @@
+import org.lenskit.api.ItemBasedItemRecommender
 import org.lenskit.api.ItemBasedItemScorer
+import org.lenskit.api.ItemRecommender
 import org.lenskit.api.ItemScorer
+import org.lenskit.mooc.ii.CosineItemSimilarity
+import org.lenskit.mooc.ii.IncrementalItemItemModelBuilder
+import org.lenskit.mooc.ii.ItemItemModelSource
+import org.lenskit.mooc.ii.ItemSimilarity
+import org.lenskit.mooc.ii.ModelSize
+import org.lenskit.mooc.ii.SignificanceThreshold
+import org.lenskit.mooc.ii.SimpleItemBasedItemRecommender
 import org.lenskit.mooc.ii.SimpleItemBasedItemScorer
+import org.lenskit.mooc.ii.SimpleItemItemRecommender
 import org.lenskit.mooc.ii.SimpleItemItemScorer
 
 // use our item scorer
 bind ItemScorer to SimpleItemItemScorer
-bind ItemBasedItemScorer to SimpleItemBasedItemScorer
\ No newline at end of file
+bind ItemBasedItemScorer to SimpleItemBasedItemScorer
+// recommend by propagating scores from the user's rated items
+bind ItemRecommender to SimpleItemItemRecommender
+// and find related items directly from the basket's neighborhoods
+bind ItemBasedItemRecommender to SimpleItemBasedItemRecommender
+
+// item similarity: CosineItemSimilarity (item-mean-centered), AdjustedCosineItemSimilarity
+// (user-mean-centered), PearsonItemSimilarity or JaccardItemSimilarity (binary)
+bind ItemSimilarity to CosineItemSimilarity
+// damp similarities computed from fewer common users than this (0 disables damping)
+set SignificanceThreshold to 0
+// number of neighbors to keep for each item (0 keeps all positive similarities)
+set ModelSize to 0
+// to apply new ratings without rebuilding, uncomment (cosine only, no damping)
+// bind ItemItemModelSource to IncrementalItemItemModelBuilder
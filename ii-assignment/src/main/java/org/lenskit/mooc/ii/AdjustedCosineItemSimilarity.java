@@ -0,0 +1,15 @@
+package org.lenskit.mooc.ii;
+
+/**
+ * Adjusted cosine similarity: the cosine between item rating vectors centered by user mean.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class AdjustedCosineItemSimilarity extends CosineItemSimilarity {
+    @Override
+    public void normalize(int[] users, double[] ratings, double itemMean, double[] userMeans) {
+        for (int i = 0; i < ratings.length; i++) {
+            ratings[i] -= userMeans[users[i]];
+        }
+    }
+}
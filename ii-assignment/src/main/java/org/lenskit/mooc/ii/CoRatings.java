@@ -0,0 +1,136 @@
+package org.lenskit.mooc.ii;
+
+/**
+ * Statistics over the users two items have in common.  These are computed by a single merge of
+ * the items' sorted user arrays, and are all that {@linkplain ItemSimilarity item similarity
+ * functions} need, so every similarity function shares the same allocation-free inner loop.
+ * Instances are reused from one item pair to the next.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public final class CoRatings {
+    int count;
+    double sumX;
+    double sumY;
+    double sumXY;
+    double sumXX;
+    double sumYY;
+    int size1;
+    int size2;
+    double norm1;
+    double norm2;
+
+    /**
+     * Compute the co-rating statistics of two items.
+     * @param users1 The positions of the users who rated the first item, in increasing order.
+     * @param values1 The first item's normalized ratings, parallel to {@code users1}.
+     * @param norm1 The Euclidean norm of {@code values1}.
+     * @param users2 The positions of the users who rated the second item, in increasing order.
+     * @param values2 The second item's normalized ratings, parallel to {@code users2}.
+     * @param norm2 The Euclidean norm of {@code values2}.
+     */
+    void compute(int[] users1, double[] values1, double norm1,
+                 int[] users2, double[] values2, double norm2) {
+        int n = 0;
+        double sx = 0, sy = 0, sxy = 0, sxx = 0, syy = 0;
+        int i = 0, j = 0;
+        while (i < users1.length && j < users2.length) {
+            int u1 = users1[i];
+            int u2 = users2[j];
+            if (u1 < u2) {
+                i++;
+            } else if (u1 > u2) {
+                j++;
+            } else {
+                double x = values1[i++];
+                double y = values2[j++];
+                n++;
+                sx += x;
+                sy += y;
+                sxy += x * y;
+                sxx += x * x;
+                syy += y * y;
+            }
+        }
+        count = n;
+        sumX = sx;
+        sumY = sy;
+        sumXY = sxy;
+        sumXX = sxx;
+        sumYY = syy;
+        size1 = users1.length;
+        size2 = users2.length;
+        this.norm1 = norm1;
+        this.norm2 = norm2;
+    }
+
+    /**
+     * Get the number of users who rated both items.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the sum of the first item's ratings over the common users.
+     */
+    public double getSumX() {
+        return sumX;
+    }
+
+    /**
+     * Get the sum of the second item's ratings over the common users.
+     */
+    public double getSumY() {
+        return sumY;
+    }
+
+    /**
+     * Get the dot product of the two items' ratings over the common users.
+     */
+    public double getSumXY() {
+        return sumXY;
+    }
+
+    /**
+     * Get the sum of squares of the first item's ratings over the common users.
+     */
+    public double getSumXX() {
+        return sumXX;
+    }
+
+    /**
+     * Get the sum of squares of the second item's ratings over the common users.
+     */
+    public double getSumYY() {
+        return sumYY;
+    }
+
+    /**
+     * Get the number of users who rated the first item.
+     */
+    public int getSize1() {
+        return size1;
+    }
+
+    /**
+     * Get the number of users who rated the second item.
+     */
+    public int getSize2() {
+        return size2;
+    }
+
+    /**
+     * Get the Euclidean norm of the first item's whole rating vector.
+     */
+    public double getNorm1() {
+        return norm1;
+    }
+
+    /**
+     * Get the Euclidean norm of the second item's whole rating vector.
+     */
+    public double getNorm2() {
+        return norm2;
+    }
+}
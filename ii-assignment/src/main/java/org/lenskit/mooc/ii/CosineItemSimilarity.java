@@ -0,0 +1,21 @@
+package org.lenskit.mooc.ii;
+
+/**
+ * Cosine similarity between item rating vectors centered by item mean.  Cosine similarities can
+ * also be computed as a dense matrix product; see {@link SimpleItemItemModelProvider}.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class CosineItemSimilarity implements ItemSimilarity {
+    @Override
+    public void normalize(int[] users, double[] ratings, double itemMean, double[] userMeans) {
+        for (int i = 0; i < ratings.length; i++) {
+            ratings[i] -= itemMean;
+        }
+    }
+
+    @Override
+    public double similarity(CoRatings stats) {
+        return stats.getSumXY() / stats.getNorm1() / stats.getNorm2();
+    }
+}
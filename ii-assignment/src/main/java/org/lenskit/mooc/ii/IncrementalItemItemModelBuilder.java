@@ -0,0 +1,367 @@
+package org.lenskit.mooc.ii;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.inject.Shareable;
+import org.lenskit.inject.Transient;
+import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.SortedKeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * Maintains an item-item model as new ratings arrive, without rebuilding it from scratch.
+ *
+ * <p>The builder keeps sufficient statistics for the item-mean-centered cosine similarity
+ * ({@link CosineItemSimilarity}, without significance damping): the count, sum and sum of
+ * squares of each item's ratings, and, for each pair of items with common raters, the number of
+ * co-raters, the dot product of their raw ratings and each item's rating sum over the
+ * co-raters.  Applying a batch of new or changed ratings updates only the statistics those
+ * ratings touch, recomputes the neighborhoods of the affected items and their neighbors, and
+ * publishes a new immutable model snapshot that shares the unchanged neighborhoods with the
+ * previous one.  Each neighborhood is recomputed in full from the statistics and then truncated
+ * to the {@linkplain ModelSize model size}, as {@link SimpleItemItemModelProvider} does.  The
+ * builder rejects any other {@link ItemSimilarity}, and a nonzero
+ * {@linkplain SignificanceThreshold significance threshold}.
+ *
+ * <p>Batches larger than the {@linkplain RebuildThreshold rebuild threshold}, or that introduce
+ * previously-unseen items, trigger a full rebuild from the retained ratings instead.
+ *
+ * <p>Bind this class as the {@link ItemItemModelSource} so that the scorers and recommenders see
+ * each snapshot as soon as it is published.  It is shared by every recommender built from the same
+ * engine, so ratings applied through one are seen by all of them; get it from a recommender with
+ * {@code get(IncrementalItemItemModelBuilder.class)} to apply them.
+ *
+ * <p>The builder keeps every rating it has seen, and statistics for every pair of items with a
+ * common rater, for as long as it lives, so its memory grows with the number of ratings plus the
+ * number of co-rated item pairs (the sum over users of the square of their profile size), which
+ * can be far larger than the model itself.  It suits data sets where that fits in memory.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Shareable
+public class IncrementalItemItemModelBuilder implements ItemItemModelSource, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalItemItemModelBuilder.class);
+    /**
+     * Relative tolerance below which a centered item vector is considered to be zero.
+     */
+    private static final double EPSILON = 1.0e-10;
+
+    private final int modelSize;
+    private final double rebuildFraction;
+    private final Long2ObjectMap<Long2DoubleMap> userRatings = new Long2ObjectOpenHashMap<>();
+    private int ratingCount;
+
+    private SortedKeyIndex itemIndex;
+    private int[] itemCounts;
+    private double[] itemSums;
+    private double[] itemSquares;
+    private PairStatistics[] pairs;
+    private int[][] neighbors;
+    private double[][] similarities;
+
+    private volatile SimpleItemItemModel model;
+
+    /**
+     * Construct the builder and compute the initial model.
+     * @param dao The data access object.
+     * @param sim The item similarity function; must be {@link CosineItemSimilarity}.
+     * @param threshold The significance damping threshold; must be 0.
+     * @param size The number of neighbors to retain per item (0 to retain all).
+     * @param fraction The rebuild threshold.
+     */
+    @Inject
+    public IncrementalItemItemModelBuilder(@Transient DataAccessObject dao,
+                                           @Transient ItemSimilarity sim,
+                                           @SignificanceThreshold int threshold,
+                                           @ModelSize int size,
+                                           @RebuildThreshold double fraction) {
+        Preconditions.checkArgument(sim.getClass().equals(CosineItemSimilarity.class),
+                                    "incremental updates require CosineItemSimilarity, not %s",
+                                    sim.getClass().getName());
+        Preconditions.checkArgument(threshold == 0,
+                                    "incremental updates do not support significance damping");
+        modelSize = size;
+        rebuildFraction = fraction;
+        try (ObjectStream<Rating> ratings = dao.query(Rating.class).stream()) {
+            for (Rating r: ratings) {
+                recordRating(r.getUserId(), r.getItemId(), r.getValue());
+            }
+        }
+        rebuild();
+    }
+
+    /**
+     * Get the current model snapshot.
+     * @return The most recently published model.
+     */
+    @Override
+    public SimpleItemItemModel getModel() {
+        return model;
+    }
+
+    /**
+     * Apply a batch of new or changed ratings.
+     * @param ratings The ratings.  A rating for a user-item pair that is already known replaces
+     *                the previous value.
+     * @return The new model snapshot.
+     */
+    public synchronized SimpleItemItemModel applyRatings(Collection<Rating> ratings) {
+        boolean full = ratings.size() > rebuildFraction * ratingCount;
+        for (Rating r: ratings) {
+            if (!itemIndex.containsKey(r.getItemId())) {
+                full = true;
+                break;
+            }
+        }
+
+        if (full) {
+            logger.info("rebuilding item-item model for {} new ratings", ratings.size());
+            for (Rating r: ratings) {
+                recordRating(r.getUserId(), r.getItemId(), r.getValue());
+            }
+            rebuild();
+            return model;
+        }
+
+        IntSet affected = new IntOpenHashSet();
+        for (Rating r: ratings) {
+            Long2DoubleMap profile = userRatings.get(r.getUserId());
+            double old = profile != null ? profile.get(r.getItemId()) : Double.NaN;
+            recordRating(r.getUserId(), r.getItemId(), r.getValue());
+            profile = userRatings.get(r.getUserId());
+
+            int i = itemIndex.getIndex(r.getItemId());
+            double value = r.getValue();
+            boolean added = Double.isNaN(old);
+            double delta = added ? value : value - old;
+            itemCounts[i] += added ? 1 : 0;
+            itemSums[i] += delta;
+            itemSquares[i] += added ? value * value : value * value - old * old;
+
+            for (Long2DoubleMap.Entry e: profile.long2DoubleEntrySet()) {
+                if (e.getLongKey() == r.getItemId()) {
+                    continue;
+                }
+                int j = itemIndex.getIndex(e.getLongKey());
+                double other = e.getDoubleValue();
+                int n = added ? 1 : 0;
+                pairs[i].update(j, n, delta * other, delta, added ? other : 0);
+                pairs[j].update(i, n, delta * other, added ? other : 0, delta);
+            }
+            affected.add(i);
+        }
+
+        // Every similarity involving an affected item may have changed.
+        IntSet rows = new IntOpenHashSet(affected);
+        IntIterator iter = affected.iterator();
+        while (iter.hasNext()) {
+            rows.addAll(pairs[iter.nextInt()].partners);
+        }
+        logger.debug("updating {} item neighborhoods for {} new ratings",
+                     rows.size(), ratings.size());
+
+        neighbors = neighbors.clone();
+        similarities = similarities.clone();
+        iter = rows.iterator();
+        while (iter.hasNext()) {
+            computeNeighborhood(iter.nextInt());
+        }
+        publish();
+        return model;
+    }
+
+    /**
+     * Store a rating in a user's profile.
+     */
+    private void recordRating(long user, long item, double value) {
+        Long2DoubleMap profile = userRatings.get(user);
+        if (profile == null) {
+            profile = new Long2DoubleOpenHashMap();
+            profile.defaultReturnValue(Double.NaN);
+            userRatings.put(user, profile);
+        }
+        if (Double.isNaN(profile.put(item, value))) {
+            ratingCount += 1;
+        }
+    }
+
+    /**
+     * Recompute all statistics and neighborhoods from the retained ratings.
+     */
+    private void rebuild() {
+        LongSet items = new LongOpenHashSet();
+        for (Long2DoubleMap profile: userRatings.values()) {
+            items.addAll(profile.keySet());
+        }
+        itemIndex = SortedKeyIndex.fromCollection(items);
+        int nitems = itemIndex.size();
+        itemCounts = new int[nitems];
+        itemSums = new double[nitems];
+        itemSquares = new double[nitems];
+        pairs = new PairStatistics[nitems];
+        for (int i = 0; i < nitems; i++) {
+            pairs[i] = new PairStatistics();
+        }
+
+        int[] positions = new int[0];
+        double[] values = new double[0];
+        for (Long2DoubleMap profile: userRatings.values()) {
+            int size = profile.size();
+            if (positions.length < size) {
+                positions = new int[size];
+                values = new double[size];
+            }
+            int k = 0;
+            for (Long2DoubleMap.Entry e: profile.long2DoubleEntrySet()) {
+                positions[k] = itemIndex.getIndex(e.getLongKey());
+                values[k] = e.getDoubleValue();
+                k++;
+            }
+            for (int a = 0; a < size; a++) {
+                int i = positions[a];
+                itemCounts[i] += 1;
+                itemSums[i] += values[a];
+                itemSquares[i] += values[a] * values[a];
+                for (int b = 0; b < size; b++) {
+                    if (b != a) {
+                        pairs[i].update(positions[b], 1, values[a] * values[b],
+                                        values[a], values[b]);
+                    }
+                }
+            }
+        }
+
+        neighbors = new int[nitems][];
+        similarities = new double[nitems][];
+        for (int i = 0; i < nitems; i++) {
+            computeNeighborhood(i);
+        }
+        publish();
+    }
+
+    /**
+     * Recompute an item's neighborhood from the sufficient statistics.
+     * @param i The item position.
+     */
+    private void computeNeighborhood(int i) {
+        IntArrayList nbrs = new IntArrayList();
+        DoubleArrayList sims = new DoubleArrayList();
+        double normI = norm(i);
+        if (normI > 0) {
+            nbrs.add(i);
+            sims.add(1.0);
+            double meanI = itemSums[i] / itemCounts[i];
+            PairStatistics ps = pairs[i];
+            for (int k = 0; k < ps.partners.size(); k++) {
+                int j = ps.partners.getInt(k);
+                double normJ = norm(j);
+                if (normJ <= 0) {
+                    continue;
+                }
+                double meanJ = itemSums[j] / itemCounts[j];
+                // sum over co-raters of (r_i - mean_i) * (r_j - mean_j)
+                double dot = ps.dots.getDouble(k)
+                        - meanJ * ps.ownSums.getDouble(k)
+                        - meanI * ps.otherSums.getDouble(k)
+                        + meanI * meanJ * ps.counts.getInt(k);
+                double similarity = dot / normI / normJ;
+                if (similarity > 0) {
+                    nbrs.add(j);
+                    sims.add(similarity);
+                }
+            }
+        }
+        SimpleItemItemModelProvider.sortNeighbors(nbrs, sims);
+        if (modelSize > 0 && nbrs.size() > modelSize) {
+            nbrs.size(modelSize);
+            sims.size(modelSize);
+        }
+        neighbors[i] = nbrs.toIntArray();
+        similarities[i] = sims.toDoubleArray();
+    }
+
+    /**
+     * Compute the Euclidean norm of an item's mean-centered rating vector.
+     * @param i The item position.
+     * @return The norm, or 0 if the item's ratings are all equal.
+     */
+    private double norm(int i) {
+        double sumSquares = itemSquares[i] - itemSums[i] * itemSums[i] / itemCounts[i];
+        return sumSquares > EPSILON * itemSquares[i] ? Math.sqrt(sumSquares) : 0;
+    }
+
+    /**
+     * Publish a model snapshot from the current neighborhoods.
+     */
+    private void publish() {
+        int nitems = itemIndex.size();
+        double[] means = new double[nitems];
+        for (int i = 0; i < nitems; i++) {
+            means[i] = itemSums[i] / itemCounts[i];
+        }
+        model = new SimpleItemItemModel(itemIndex, means, neighbors.clone(), similarities.clone());
+    }
+
+    /**
+     * Co-rating statistics between one item and each item it shares raters with.
+     */
+    private static class PairStatistics implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Int2IntMap slots = new Int2IntOpenHashMap();
+        private final IntArrayList partners = new IntArrayList();
+        private final IntArrayList counts = new IntArrayList();
+        private final DoubleArrayList dots = new DoubleArrayList();
+        private final DoubleArrayList ownSums = new DoubleArrayList();
+        private final DoubleArrayList otherSums = new DoubleArrayList();
+
+        PairStatistics() {
+            slots.defaultReturnValue(-1);
+        }
+
+        /**
+         * Add to the statistics for a partner item.
+         * @param partner The partner item position.
+         * @param n The change in the number of co-raters.
+         * @param dot The change in the dot product of the two items' ratings.
+         * @param own The change in this item's rating sum over the co-raters.
+         * @param other The change in the partner's rating sum over the co-raters.
+         */
+        void update(int partner, int n, double dot, double own, double other) {
+            int slot = slots.get(partner);
+            if (slot < 0) {
+                slot = partners.size();
+                slots.put(partner, slot);
+                partners.add(partner);
+                counts.add(0);
+                dots.add(0);
+                ownSums.add(0);
+                otherSums.add(0);
+            }
+            counts.set(slot, counts.getInt(slot) + n);
+            dots.set(slot, dots.getDouble(slot) + dot);
+            ownSums.set(slot, ownSums.getDouble(slot) + own);
+            otherSums.set(slot, otherSums.getDouble(slot) + other);
+        }
+    }
+}
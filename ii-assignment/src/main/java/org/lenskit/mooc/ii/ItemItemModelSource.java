@@ -0,0 +1,19 @@
+package org.lenskit.mooc.ii;
+
+import org.grouplens.grapht.annotation.DefaultImplementation;
+
+/**
+ * Source of the current item-item model.  Components that use the model get it from the source
+ * once per request, so that a request sees a single consistent snapshot even if the model is
+ * {@linkplain IncrementalItemItemModelBuilder updated} while it runs.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@DefaultImplementation(StaticItemItemModelSource.class)
+public interface ItemItemModelSource {
+    /**
+     * Get the current model.
+     * @return The most recent model snapshot.
+     */
+    SimpleItemItemModel getModel();
+}
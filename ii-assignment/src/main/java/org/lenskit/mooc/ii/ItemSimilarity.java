@@ -0,0 +1,29 @@
+package org.lenskit.mooc.ii;
+
+import org.grouplens.grapht.annotation.DefaultImplementation;
+
+/**
+ * Similarity function for item rating vectors.  A similarity function first normalizes each
+ * item's ratings, and then computes the similarity of a pair of items from their
+ * {@linkplain CoRatings co-rating statistics}.  Similarities must be symmetric.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@DefaultImplementation(CosineItemSimilarity.class)
+public interface ItemSimilarity {
+    /**
+     * Normalize an item's ratings in place.
+     * @param users The positions of the users who rated the item, in increasing order.
+     * @param ratings The item's ratings, parallel to {@code users}.
+     * @param itemMean The item's mean rating.
+     * @param userMeans The mean rating of each user, by position.
+     */
+    void normalize(int[] users, double[] ratings, double itemMean, double[] userMeans);
+
+    /**
+     * Compute the similarity of two items.
+     * @param stats The co-rating statistics of the items' normalized ratings.
+     * @return The similarity.  Only positive similarities are kept in the model.
+     */
+    double similarity(CoRatings stats);
+}
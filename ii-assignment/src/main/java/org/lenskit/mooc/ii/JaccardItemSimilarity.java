@@ -0,0 +1,22 @@
+package org.lenskit.mooc.ii;
+
+/**
+ * Jaccard similarity between the sets of users who rated each item, for binary implicit data.
+ * Rating values are ignored.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class JaccardItemSimilarity implements ItemSimilarity {
+    @Override
+    public void normalize(int[] users, double[] ratings, double itemMean, double[] userMeans) {
+        for (int i = 0; i < ratings.length; i++) {
+            ratings[i] = 1.0;
+        }
+    }
+
+    @Override
+    public double similarity(CoRatings stats) {
+        int n = stats.getCount();
+        return (double) n / (stats.getSize1() + stats.getSize2() - n);
+    }
+}
@@ -0,0 +1,25 @@
+package org.lenskit.mooc.ii;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling the number of neighbors retained for each item in the item-item model.
+ * 0 keeps every neighbor with a positive similarity.  Truncated neighborhoods are no longer
+ * symmetric, so {@link SimpleItemItemRecommender} then scores each candidate from its own
+ * neighborhood instead of walking outward from the user's items.
+ * {@link SimpleItemBasedItemRecommender} still walks outward from the basket when recommending
+ * from the whole catalog, so it only approximates the scores of
+ * {@link SimpleItemBasedItemScorer}, which reads each item's own neighborhood.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(0)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ModelSize {
+}
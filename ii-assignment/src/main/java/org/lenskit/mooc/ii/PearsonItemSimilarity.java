@@ -0,0 +1,28 @@
+package org.lenskit.mooc.ii;
+
+/**
+ * Pearson correlation between item ratings, computed over the users who rated both items.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class PearsonItemSimilarity implements ItemSimilarity {
+    @Override
+    public void normalize(int[] users, double[] ratings, double itemMean, double[] userMeans) {
+        // the correlation centers the ratings over the co-raters itself
+    }
+
+    @Override
+    public double similarity(CoRatings stats) {
+        int n = stats.getCount();
+        if (n < 2) {
+            return 0;
+        }
+        double cov = stats.getSumXY() - stats.getSumX() * stats.getSumY() / n;
+        double var1 = stats.getSumXX() - stats.getSumX() * stats.getSumX() / n;
+        double var2 = stats.getSumYY() - stats.getSumY() * stats.getSumY() / n;
+        if (var1 <= 0 || var2 <= 0) {
+            return 0;
+        }
+        return cov / Math.sqrt(var1 * var2);
+    }
+}
@@ -0,0 +1,21 @@
+package org.lenskit.mooc.ii;
+
+import org.grouplens.grapht.annotation.DefaultDouble;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling when an incremental model update falls back to a full rebuild.  It is
+ * the largest batch of ratings, as a fraction of the ratings already in the model, that will be
+ * applied incrementally.
+ */
+@Documented
+@Qualifier
+@Parameter(Double.class)
+@DefaultDouble(0.1)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RebuildThreshold {
+}
@@ -0,0 +1,20 @@
+package org.lenskit.mooc.ii;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter for significance damping of item similarities.  Similarities computed from fewer
+ * than this many common users are scaled down in proportion; 0 disables damping.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(0)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SignificanceThreshold {
+}
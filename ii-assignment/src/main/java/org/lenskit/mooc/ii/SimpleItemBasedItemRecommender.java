@@ -0,0 +1,72 @@
+package org.lenskit.mooc.ii;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.lenskit.basic.AbstractItemBasedItemRecommender;
+import org.lenskit.results.ResultAccumulator;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.KeyIndex;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.Set;
+
+/**
+ * Global item recommender that picks the items most similar to a basket directly from the
+ * basket's neighborhoods, without scoring the whole catalog.  When candidate items are given,
+ * they are scored one by one with {@link SimpleItemBasedItemScorer} instead.  With a
+ * {@linkplain ModelSize truncated model}, recommendations over the whole catalog only see the
+ * items in the basket's neighborhoods, scored by {@link SimpleItemBasedItemScorer#scoreBasket}.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class SimpleItemBasedItemRecommender extends AbstractItemBasedItemRecommender {
+    private final ItemItemModelSource modelSource;
+    private final SimpleItemBasedItemScorer scorer;
+
+    @Inject
+    public SimpleItemBasedItemRecommender(ItemItemModelSource src, SimpleItemBasedItemScorer scorer) {
+        modelSource = src;
+        this.scorer = scorer;
+    }
+
+    /**
+     * Recommend items related to a basket.
+     * @param basket The reference items.
+     * @param n The number of recommendations to produce, or a negative value for unlimited.
+     * @param candidates The candidate items, or {@code null} to consider all items.
+     * @param exclude The items to exclude, or {@code null} to exclude the basket.
+     * @return The top-{@code n} related items.
+     */
+    @Override
+    public ResultList recommendRelatedItemsWithDetails(Set<Long> basket, int n,
+                                                       @Nullable Set<Long> candidates,
+                                                       @Nullable Set<Long> exclude) {
+        // Use the same model snapshot for the whole request
+        SimpleItemItemModel model = modelSource.getModel();
+        KeyIndex itemIndex = model.getItemIndex();
+        LongSet excluded = LongUtils.asLongSet(exclude != null ? exclude : basket);
+        ResultAccumulator accum = ResultAccumulator.create(n);
+
+        if (candidates != null) {
+            for (Result r: scorer.score(model, basket, candidates)) {
+                // items with no similarity to the basket are not related
+                if (r.getScore() > 0 && !excluded.contains(r.getId())) {
+                    accum.add(r.getId(), r.getScore());
+                }
+            }
+            return accum.finish();
+        }
+
+        for (Int2DoubleMap.Entry e: scorer.scoreBasket(model, basket).int2DoubleEntrySet()) {
+            long item = itemIndex.getKey(e.getIntKey());
+            if (!excluded.contains(item)) {
+                accum.add(item, e.getDoubleValue());
+            }
+        }
+
+        return accum.finish();
+    }
+}
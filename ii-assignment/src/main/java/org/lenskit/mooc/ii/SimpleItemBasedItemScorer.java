@@ -1,29 +1,36 @@
 package org.lenskit.mooc.ii;
 
-import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import org.lenskit.api.Result;
 import org.lenskit.api.ResultMap;
 import org.lenskit.basic.AbstractItemBasedItemScorer;
 import org.lenskit.results.Results;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.KeyIndex;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 /**
- * Global item scorer to find similar items.
+ * Global item scorer to find similar items.  The score of an item is the sum of its similarities
+ * to the basket items, read from the item's own neighborhood.
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 
 public class SimpleItemBasedItemScorer extends AbstractItemBasedItemScorer {
-    private final SimpleItemItemModel model;
+    private final ItemItemModelSource modelSource;
 
     @Inject
-    public SimpleItemBasedItemScorer(SimpleItemItemModel mod) {
-        model = mod;
+    public SimpleItemBasedItemScorer(ItemItemModelSource src) {
+        modelSource = src;
     }
 
     /**
@@ -34,20 +41,85 @@ public class SimpleItemBasedItemScorer extends AbstractItemBasedItemScorer {
      */
     @Override
     public ResultMap scoreRelatedItemsWithDetails(@Nonnull Collection<Long> basket, Collection<Long> items) {
-        List<Result> results = new ArrayList<>();
-
-        // Score the items and put them in results
-        for (long item: items) {
-            Long2DoubleMap itemNeighbors = model.getNeighbors(item);
-            double score = 0.0;
-            for(long otherItem: basket) {
-                if(itemNeighbors.containsKey(otherItem)) {
-                    score += itemNeighbors.get(otherItem);
-                }
+        return score(modelSource.getModel(), basket, items);
+    }
+
+    /**
+     * Score items with respect to a basket with a particular model snapshot.
+     * @param model The model.
+     * @param basket The reference items.
+     * @param items The items to score.
+     * @return The scores.
+     */
+    ResultMap score(SimpleItemItemModel model, Collection<Long> basket, Collection<Long> items) {
+        KeyIndex itemIndex = model.getItemIndex();
+        IntSet basketItems = new IntOpenHashSet(basket.size());
+        LongIterator iter = LongUtils.asLongCollection(basket).iterator();
+        while (iter.hasNext()) {
+            int idx = itemIndex.tryGetIndex(iter.nextLong());
+            if (idx >= 0) {
+                basketItems.add(idx);
             }
-            results.add(Results.create(item, score));
+        }
+
+        List<Result> results = new ArrayList<>(items.size());
+        iter = LongUtils.asLongCollection(items).iterator();
+        while (iter.hasNext()) {
+            long item = iter.nextLong();
+            int idx = itemIndex.tryGetIndex(item);
+            results.add(Results.create(item, idx >= 0 ? scoreItem(model, idx, basketItems) : 0.0));
         }
 
         return Results.newResultMap(results);
     }
+
+    /**
+     * Sum an item's similarities to the basket items.
+     * @param model The model.
+     * @param idx The item position.
+     * @param basket The positions of the basket items.
+     * @return The summed similarities of the basket items in the item's neighborhood.
+     */
+    private static double scoreItem(SimpleItemItemModel model, int idx, IntSet basket) {
+        int[] nbrs = model.getNeighborIndices(idx);
+        double[] sims = model.getNeighborSimilarities(idx);
+        double score = 0.0;
+        for (int i = 0; i < nbrs.length; i++) {
+            if (basket.contains(nbrs[i])) {
+                score += sims[i];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Accumulate the similarity of every item to a basket by walking the neighborhoods of the
+     * basket items.  While item neighborhoods are symmetric, this is the same as summing each
+     * item's similarity to the basket items, but only touches items that are neighbors of the
+     * basket.  Once the model is truncated to a {@linkplain ModelSize model size}, an item's score
+     * only counts the basket items that kept it as a neighbor, so it differs from what
+     * {@link #scoreRelatedItemsWithDetails(Collection, Collection)} returns.
+     *
+     * @param model The model.
+     * @param basket The reference items.
+     * @return The summed similarities, keyed by item position in the model.  Items that are not
+     *         neighbors of any basket item are absent and have a default score of 0.
+     */
+    Int2DoubleMap scoreBasket(SimpleItemItemModel model, Collection<Long> basket) {
+        KeyIndex itemIndex = model.getItemIndex();
+        Int2DoubleOpenHashMap scores = new Int2DoubleOpenHashMap();
+        LongIterator iter = LongUtils.asLongCollection(basket).iterator();
+        while (iter.hasNext()) {
+            int idx = itemIndex.tryGetIndex(iter.nextLong());
+            if (idx < 0) {
+                continue;
+            }
+            int[] nbrs = model.getNeighborIndices(idx);
+            double[] sims = model.getNeighborSimilarities(idx);
+            for (int i = 0; i < nbrs.length; i++) {
+                scores.addTo(nbrs[i], sims[i]);
+            }
+        }
+        return scores;
+    }
 }
@@ -1,32 +1,51 @@
 package org.lenskit.mooc.ii;
 
+import com.google.common.base.Preconditions;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
-import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.lenskit.inject.Shareable;
-import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.KeyIndex;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
 
 import java.io.Serializable;
-import java.util.Map;
 
 /**
+ * Item-item model.  Items are identified by their position in an item index; each item's
+ * neighborhood is stored as a pair of parallel arrays (neighbor positions and similarities),
+ * sorted by decreasing similarity, so scorers can walk them without allocating.
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 @Shareable
 @DefaultProvider(SimpleItemItemModelProvider.class)
 public class SimpleItemItemModel implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private final Long2DoubleMap itemMeans;
-    private final Map<Long,Long2DoubleMap> neighborhoods;
+    private final KeyIndex itemIndex;
+    private final double[] itemMeans;
+    private final int[][] neighborIndices;
+    private final double[][] neighborSimilarities;
+    private final Long2DoubleMap itemMeanMap;
 
     /**
      * Create a new item-item model.
-     * @param nbrhoods A mapping of items to neighborhoods.
+     * @param items The index mapping item IDs to positions.
+     * @param means The item mean ratings, by item position.
+     * @param nbrs The neighbor positions of each item, sorted by decreasing similarity.
+     * @param sims The neighbor similarities of each item, parallel to {@code nbrs}.
      */
-    public SimpleItemItemModel(Long2DoubleMap means, Map<Long,Long2DoubleMap> nbrhoods) {
-        itemMeans = LongUtils.frozenMap(means);
-        neighborhoods = nbrhoods;
+    SimpleItemItemModel(KeyIndex items, double[] means, int[][] nbrs, double[][] sims) {
+        Preconditions.checkArgument(means.length == items.size(),
+                                    "mean array has incorrect size (%s != %s)",
+                                    means.length, items.size());
+        Preconditions.checkArgument(nbrs.length == items.size() && sims.length == items.size(),
+                                    "neighborhood arrays have incorrect size");
+        itemIndex = items;
+        itemMeans = means;
+        neighborIndices = nbrs;
+        neighborSimilarities = sims;
+        itemMeanMap = Long2DoubleSortedArrayMap.fromArray(items, means);
     }
 
     /**
@@ -34,19 +53,60 @@ public class SimpleItemItemModel implements Serializable {
      * @return The vector of item mean ratings.
      */
     public Long2DoubleMap getItemMeans() {
-        return itemMeans;
+        return itemMeanMap;
     }
 
     /**
      * Get the neighbors of an item.
-     * @return The neighbors of the item, sorted by decreasing score.
+     * @return The neighbors of the item.  Unknown items share a single empty, immutable map.
      */
     public Long2DoubleMap getNeighbors(long item) {
-        Long2DoubleMap nbrs = neighborhoods.get(item);
-        if (nbrs == null) {
-            return new Long2DoubleOpenHashMap();
-        } else {
-            return nbrs;
+        int idx = itemIndex.tryGetIndex(item);
+        if (idx < 0) {
+            return Long2DoubleMaps.EMPTY_MAP;
         }
+        int[] nbrs = neighborIndices[idx];
+        long[] ids = new long[nbrs.length];
+        for (int i = 0; i < nbrs.length; i++) {
+            ids[i] = itemIndex.getKey(nbrs[i]);
+        }
+        return Long2DoubleSortedArrayMap.wrapUnsorted(ids, neighborSimilarities[idx].clone());
+    }
+
+    /**
+     * Get the item index.  Positions in this index are used by {@link #getItemMean(int)},
+     * {@link #getNeighborIndices(int)} and {@link #getNeighborSimilarities(int)}.
+     * @return The index mapping item IDs to positions.
+     */
+    public KeyIndex getItemIndex() {
+        return itemIndex;
+    }
+
+    /**
+     * Get the mean rating of an item.
+     * @param idx The item's position in the {@linkplain #getItemIndex() item index}.
+     * @return The item's mean rating.
+     */
+    public double getItemMean(int idx) {
+        return itemMeans[idx];
+    }
+
+    /**
+     * Get the positions of an item's neighbors.
+     * @param idx The item's position in the {@linkplain #getItemIndex() item index}.
+     * @return The neighbor positions, sorted by decreasing similarity (this must not be modified).
+     */
+    public int[] getNeighborIndices(int idx) {
+        return neighborIndices[idx];
+    }
+
+    /**
+     * Get the similarities of an item's neighbors.
+     * @param idx The item's position in the {@linkplain #getItemIndex() item index}.
+     * @return The neighbor similarities, parallel to {@link #getNeighborIndices(int)} (this must
+     *         not be modified).
+     */
+    public double[] getNeighborSimilarities(int idx) {
+        return neighborSimilarities[idx];
     }
 }
@@ -1,9 +1,14 @@
 package org.lenskit.mooc.ii;
 
 import com.google.common.collect.Maps;
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
-import org.apache.commons.lang3.tuple.Pair;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.entities.CommonAttributes;
 import org.lenskit.data.ratings.Rating;
@@ -12,15 +17,17 @@ import org.lenskit.inject.Transient;
 import org.lenskit.util.IdBox;
 import org.lenskit.util.collections.LongUtils;
 import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.SortedKeyIndex;
 import org.lenskit.util.math.Vectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
@@ -28,15 +35,48 @@ import java.util.Map;
 public class SimpleItemItemModelProvider implements Provider<SimpleItemItemModel> {
     private static final Logger logger = LoggerFactory.getLogger(SimpleItemItemModelProvider.class);
 
+    /**
+     * The largest number of items for which dense similarity computation is considered.
+     */
+    private static final int DENSE_MAX_ITEMS = 20000;
+    /**
+     * The fraction of the maximum heap size that the dense user-item matrix may take up.
+     */
+    private static final double DENSE_MAX_HEAP_FRACTION = 0.25;
+    /**
+     * The lowest rating matrix density at which dense computation beats the sparse merge.
+     */
+    private static final double DENSE_MIN_DENSITY = 0.005;
+    /**
+     * The number of similarity matrix rows computed together in the dense matrix product.
+     */
+    private static final int BLOCK_ROWS = 64;
+    /**
+     * The number of similarity matrix columns updated together in the dense matrix product.
+     */
+    private static final int BLOCK_COLUMNS = 1024;
+
     private final DataAccessObject dao;
+    private final ItemSimilarity similarity;
+    private final int significanceThreshold;
+    private final int modelSize;
 
     /**
      * Construct the model provider.
      * @param dao The data access object.
+     * @param sim The item similarity function.
+     * @param threshold The significance damping threshold (0 for no damping).
+     * @param size The number of neighbors to retain per item (0 to retain all).
      */
     @Inject
-    public SimpleItemItemModelProvider(@Transient DataAccessObject dao) {
+    public SimpleItemItemModelProvider(@Transient DataAccessObject dao,
+                                       @Transient ItemSimilarity sim,
+                                       @SignificanceThreshold int threshold,
+                                       @ModelSize int size) {
         this.dao = dao;
+        similarity = sim;
+        significanceThreshold = threshold;
+        modelSize = size;
     }
 
     /**
@@ -45,71 +85,268 @@ public class SimpleItemItemModelProvider implements Provider<SimpleItemItemModel
      */
     @Override
     public SimpleItemItemModel get() {
-        Map<Long,Long2DoubleMap> itemVectors = Maps.newHashMap();
-        Long2DoubleMap itemMeans = new Long2DoubleOpenHashMap();
+        Map<Long,Long2DoubleMap> itemRatings = Maps.newHashMap();
+        Long2DoubleOpenHashMap userSums = new Long2DoubleOpenHashMap();
+        Long2IntOpenHashMap userCounts = new Long2IntOpenHashMap();
+        long nratings = 0;
 
         try (ObjectStream<IdBox<List<Rating>>> stream = dao.query(Rating.class)
                                                            .groupBy(CommonAttributes.ITEM_ID)
                                                            .stream()) {
             for (IdBox<List<Rating>> item : stream) {
-                long itemId = item.getId();
-                List<Rating> itemRatings = item.getValue();
-                Long2DoubleOpenHashMap ratings = new Long2DoubleOpenHashMap(Ratings.itemRatingVector(itemRatings));
+                Long2DoubleMap ratings = LongUtils.frozenMap(Ratings.itemRatingVector(item.getValue()));
+                itemRatings.put(item.getId(), ratings);
+                nratings += ratings.size();
+                // Accumulate user sums for the user means.
+                for (Long2DoubleMap.Entry e: ratings.long2DoubleEntrySet()) {
+                    userSums.addTo(e.getLongKey(), e.getDoubleValue());
+                    userCounts.addTo(e.getLongKey(), 1);
+                }
+            }
+        }
 
-                // Compute and store the item's mean.
-                double mean = Vectors.mean(ratings);
-                itemMeans.put(itemId, mean);
+        // Index the items so the model can store neighborhoods as arrays of positions, and the
+        // users so each item vector is a sorted array of user positions.
+        SortedKeyIndex itemIndex = SortedKeyIndex.fromCollection(itemRatings.keySet());
+        SortedKeyIndex userIndex = SortedKeyIndex.fromCollection(userSums.keySet());
+        int nitems = itemIndex.size();
+        int nusers = userIndex.size();
+        double[] userMeans = new double[nusers];
+        for (int u = 0; u < nusers; u++) {
+            long user = userIndex.getKey(u);
+            userMeans[u] = userSums.get(user) / userCounts.get(user);
+        }
 
-                // Mean center the ratings.
-                for (Map.Entry<Long, Double> entry : ratings.entrySet()) {
-                    entry.setValue(entry.getValue() - mean);
-                }
+        double[] means = new double[nitems];
+        int[][] users = new int[nitems][];
+        double[][] values = new double[nitems][];
+        double[] norms = new double[nitems];
+        for (int i = 0; i < nitems; i++) {
+            Long2DoubleMap ratings = itemRatings.get(itemIndex.getKey(i));
+            users[i] = new int[ratings.size()];
+            values[i] = new double[ratings.size()];
+            int k = 0;
+            // the frozen map iterates in increasing order of user ID, so positions are sorted
+            for (Long2DoubleMap.Entry e: ratings.long2DoubleEntrySet()) {
+                users[i][k] = userIndex.getIndex(e.getLongKey());
+                values[i][k] = e.getDoubleValue();
+                k++;
+            }
+            means[i] = Vectors.mean(ratings);
+            similarity.normalize(users[i], values[i], means[i], userMeans);
+            double sumSquares = 0.0;
+            for (double v: values[i]) {
+                sumSquares += v * v;
+            }
+            norms[i] = Math.sqrt(sumSquares);
+        }
+
+        int[][] neighbors = new int[nitems][];
+        double[][] similarities = new double[nitems][];
+        if (useDenseMode(nusers, nitems, nratings)) {
+            logger.info("computing dense similarities for {} items and {} users", nitems, nusers);
+            computeDense(nusers, users, values, norms, neighbors, similarities);
+        } else {
+            logger.info("computing sparse similarities for {} items and {} users", nitems, nusers);
+            computeSparse(users, values, norms, neighbors, similarities);
+        }
+
+        return new SimpleItemItemModel(itemIndex, means, neighbors, similarities);
+    }
+
+    /**
+     * Decide whether to compute similarities as a dense matrix product.  This is only possible for
+     * cosine similarities without significance damping, and only pays off when the catalog is
+     * small and the rating matrix is not too sparse.
+     */
+    boolean useDenseMode(int nusers, int nitems, long nratings) {
+        if (!(similarity instanceof CosineItemSimilarity) || significanceThreshold > 0) {
+            return false;
+        }
+        long cells = (long) nusers * nitems;
+        return nitems <= DENSE_MAX_ITEMS
+                && cells <= getDenseMaxCells()
+                && nratings >= DENSE_MIN_DENSITY * cells;
+    }
+
+    /**
+     * Get the largest user-item matrix, in cells, that will be allocated for dense computation.
+     * This is limited by the heap size, and by the largest array that can be allocated.
+     */
+    static long getDenseMaxCells() {
+        long bytes = (long) (Runtime.getRuntime().maxMemory() * DENSE_MAX_HEAP_FRACTION);
+        return Math.min(bytes / Float.BYTES, Integer.MAX_VALUE - 8);
+    }
 
-                itemVectors.put(itemId, LongUtils.frozenMap(ratings));
+    /**
+     * Compute neighborhoods by merging each pair of sparse item vectors.  Similarities are
+     * symmetric, so each pair is computed once and stored in both items' neighborhoods.
+     */
+    void computeSparse(int[][] users, double[][] values, double[] norms,
+                       int[][] neighbors, double[][] similarities) {
+        int nitems = users.length;
+        IntArrayList[] nbrs = new IntArrayList[nitems];
+        DoubleArrayList[] sims = new DoubleArrayList[nitems];
+        for (int i = 0; i < nitems; i++) {
+            nbrs[i] = new IntArrayList();
+            sims[i] = new DoubleArrayList();
+        }
+        CoRatings stats = new CoRatings();
+        for (int i = 0; i < nitems; i++) {
+            for (int j = i; j < nitems; j++) {
+                stats.compute(users[i], values[i], norms[i], users[j], values[j], norms[j]);
+                double sim = similarity.similarity(stats);
+                if (significanceThreshold > 0 && stats.getCount() < significanceThreshold) {
+                    sim *= (double) stats.getCount() / significanceThreshold;
+                }
+                if (sim > 0) {
+                    nbrs[i].add(j);
+                    sims[i].add(sim);
+                    if (j != i) {
+                        nbrs[j].add(i);
+                        sims[j].add(sim);
+                    }
+                }
             }
         }
 
-        // Map items to vectors (maps) of item similarities.
-        Map<Long,Long2DoubleMap> itemSimilarities = Maps.newHashMap();
+        for (int i = 0; i < nitems; i++) {
+            storeNeighborhood(i, nbrs[i], sims[i], neighbors, similarities);
+        }
+    }
 
-        // Compute the similarities between each pair of items
-        for(Map.Entry<Long, Long2DoubleMap> i1 : itemVectors.entrySet()) {
-            Long2DoubleMap similarities = new Long2DoubleOpenHashMap();
-            for(Map.Entry<Long, Long2DoubleMap> i2 : itemVectors.entrySet()) {
-                Double similarity = calculateCosineSimilarity(i1.getValue(), i2.getValue());
-                if(similarity > 0) {
-                    similarities.put(i2.getKey(), similarity);
+    /**
+     * Compute cosine neighborhoods as a dense matrix product.  The normalized item vectors are
+     * scaled to unit length and laid out as the columns of a user-by-item float matrix, and the
+     * item-item similarity matrix is computed one block of rows at a time, in parallel on the
+     * common fork-join pool.
+     */
+    void computeDense(int nusers, int[][] users, double[][] values, double[] norms,
+                      int[][] neighbors, double[][] similarities) {
+        int nitems = users.length;
+        float[] matrix = new float[nusers * nitems];
+        for (int i = 0; i < nitems; i++) {
+            if (norms[i] > 0) {
+                for (int k = 0; k < users[i].length; k++) {
+                    matrix[users[i][k] * nitems + i] = (float) (values[i][k] / norms[i]);
                 }
             }
-            itemSimilarities.put(i1.getKey(), similarities);
         }
 
-        return new SimpleItemItemModel(LongUtils.frozenMap(itemMeans), itemSimilarities);
+        ForkJoinPool.commonPool().invoke(new DenseRowsTask(matrix, nusers, neighbors, similarities,
+                                                           0, nitems));
     }
 
-    private Double calculateCosineSimilarity(Long2DoubleMap ratings1, Long2DoubleMap ratings2) {
-        double v1v2 = 0.0;
-        double v1v1 = 0.0;
-        double v2v2 = 0.0;
+    /**
+     * Task computing the neighborhoods for a range of rows of the dense similarity matrix.
+     */
+    private class DenseRowsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final float[] matrix;
+        private final int nusers;
+        private final int[][] neighbors;
+        private final double[][] similarities;
+        private final int start;
+        private final int end;
+
+        DenseRowsTask(float[] matrix, int nusers, int[][] neighbors, double[][] similarities,
+                      int start, int end) {
+            this.matrix = matrix;
+            this.nusers = nusers;
+            this.neighbors = neighbors;
+            this.similarities = similarities;
+            this.start = start;
+            this.end = end;
+        }
 
-        HashSet<Long> commonItems = new HashSet<>();
-        commonItems.addAll(ratings1.keySet());
-        commonItems.addAll(ratings2.keySet());
+        @Override
+        protected void compute() {
+            if (end - start > BLOCK_ROWS) {
+                // split on a block boundary
+                int mid = start + (end - start) / BLOCK_ROWS / 2 * BLOCK_ROWS;
+                mid = Math.max(mid, start + BLOCK_ROWS);
+                invokeAll(new DenseRowsTask(matrix, nusers, neighbors, similarities, start, mid),
+                          new DenseRowsTask(matrix, nusers, neighbors, similarities, mid, end));
+            } else {
+                computeDenseRows(matrix, neighbors.length, nusers, start, end,
+                                 neighbors, similarities);
+            }
+        }
+    }
 
-        for(long item: commonItems) {
-            double u1 = 0.0;
-            double u2 = 0.0;
-            if(ratings1.containsKey(item)) {
-                u1 = ratings1.get(item);
+    /**
+     * Compute the neighborhoods for one block of rows of the dense similarity matrix.  The product
+     * is accumulated as a sum of scaled user rows, so the inner loop is a contiguous
+     * multiply-add that the JIT can vectorize, and zero entries are skipped.  Columns are
+     * processed in tiles so the block of results being updated stays in cache.
+     */
+    private void computeDenseRows(float[] matrix, int nitems, int nusers, int rowStart, int rowEnd,
+                                  int[][] neighbors, double[][] similarities) {
+        int nrows = rowEnd - rowStart;
+        float[] block = new float[nrows * nitems];
+        for (int j0 = 0; j0 < nitems; j0 += BLOCK_COLUMNS) {
+            int j1 = Math.min(j0 + BLOCK_COLUMNS, nitems);
+            for (int u = 0; u < nusers; u++) {
+                int uoff = u * nitems;
+                for (int i = rowStart; i < rowEnd; i++) {
+                    float x = matrix[uoff + i];
+                    if (x == 0) {
+                        continue;
+                    }
+                    int boff = (i - rowStart) * nitems;
+                    for (int j = j0; j < j1; j++) {
+                        block[boff + j] += x * matrix[uoff + j];
+                    }
+                }
             }
-            if(ratings2.containsKey(item)) {
-                u2 = ratings2.get(item);
+        }
+
+        for (int i = rowStart; i < rowEnd; i++) {
+            IntArrayList nbrs = new IntArrayList();
+            DoubleArrayList sims = new DoubleArrayList();
+            int boff = (i - rowStart) * nitems;
+            for (int j = 0; j < nitems; j++) {
+                if (block[boff + j] > 0) {
+                    nbrs.add(j);
+                    sims.add(block[boff + j]);
+                }
             }
-            v1v2 += u1*u2;
-            v1v1 += u1*u1;
-            v2v2 += u2*u2;
+            storeNeighborhood(i, nbrs, sims, neighbors, similarities);
+        }
+    }
+
+    /**
+     * Sort an item's neighborhood, truncate it to the model size, and store it.
+     */
+    private void storeNeighborhood(int i, IntArrayList nbrs, DoubleArrayList sims,
+                                   int[][] neighbors, double[][] similarities) {
+        sortNeighbors(nbrs, sims);
+        if (modelSize > 0 && nbrs.size() > modelSize) {
+            nbrs.size(modelSize);
+            sims.size(modelSize);
         }
+        neighbors[i] = nbrs.toIntArray();
+        similarities[i] = sims.toDoubleArray();
+    }
 
-        return v1v2 / Math.sqrt(v1v1) / Math.sqrt(v2v2);
+    /**
+     * Sort a neighborhood by decreasing similarity.
+     * @param nbrs The neighbor positions.
+     * @param sims The neighbor similarities, parallel to {@code nbrs}.
+     */
+    static void sortNeighbors(final IntArrayList nbrs, final DoubleArrayList sims) {
+        Arrays.quickSort(0, nbrs.size(), new AbstractIntComparator() {
+            @Override
+            public int compare(int i, int j) {
+                return Double.compare(sims.getDouble(j), sims.getDouble(i));
+            }
+        }, new Swapper() {
+            @Override
+            public void swap(int i, int j) {
+                nbrs.set(i, nbrs.set(j, nbrs.getInt(i)));
+                sims.set(i, sims.set(j, sims.getDouble(i)));
+            }
+        });
     }
 }
@@ -0,0 +1,169 @@
+package org.lenskit.mooc.ii;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.api.ResultList;
+import org.lenskit.basic.AbstractItemRecommender;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.results.ResultAccumulator;
+import org.lenskit.util.keys.KeyIndex;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.List;
+
+/**
+ * Item-item recommender that works outward from the user's ratings.  Rather than scoring every
+ * candidate by scanning its neighborhood, it walks the neighborhood of each item the user has
+ * rated once and pushes weighted contributions to the neighbors, so the cost of a recommendation
+ * depends on the size of the user's profile rather than the size of the catalog.  Scores are the
+ * same as those computed by {@link SimpleItemItemScorer}.
+ *
+ * <p>Pushing contributions outward relies on neighborhoods being symmetric, which they are not
+ * once the model is truncated to a {@linkplain ModelSize model size}.  With a truncated model, the
+ * recommender still only considers the items reached from the truncated neighborhoods of the
+ * user's rated items, but scores each of them from its own neighborhood, so their scores are
+ * again the scorer's.  This is an approximation: an item that keeps one of the user's rated items
+ * as a neighbor, but is not kept as a neighbor by any of them, has a score but is never
+ * recommended.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class SimpleItemItemRecommender extends AbstractItemRecommender {
+    private final ItemItemModelSource modelSource;
+    private final DataAccessObject dao;
+    private final boolean truncated;
+    private final int neighborhoodSize;
+
+    /**
+     * Construct the recommender.
+     * @param src The source of the item-item model.
+     * @param dao The data access object.
+     * @param size The number of neighbors kept for each item in the model (0 if all are kept).
+     */
+    @Inject
+    public SimpleItemItemRecommender(ItemItemModelSource src, DataAccessObject dao,
+                                     @ModelSize int size) {
+        modelSource = src;
+        this.dao = dao;
+        truncated = size > 0;
+        neighborhoodSize = SimpleItemItemScorer.NEIGHBORHOOD_SIZE;
+    }
+
+    /**
+     * Recommend items for a user.
+     * @param user The user ID.
+     * @param n The number of recommendations to produce, or a negative value for unlimited.
+     * @param candidates The candidate items, or {@code null} to consider all items.
+     * @param exclude The items to exclude, or {@code null} to exclude the items the user has rated.
+     * @return The top-{@code n} recommendations.
+     */
+    @Override
+    protected ResultList recommendWithDetails(long user, int n,
+                                              @Nullable LongSet candidates,
+                                              @Nullable LongSet exclude) {
+        // Use the same model snapshot for the whole request
+        SimpleItemItemModel model = modelSource.getModel();
+        KeyIndex itemIndex = model.getItemIndex();
+        List<Rating> history = dao.query(Rating.class)
+                                  .withAttribute(CommonAttributes.USER_ID, user)
+                                  .get();
+
+        // Mean-center the user's ratings, keyed by item position.
+        Int2DoubleMap offsets = new Int2DoubleOpenHashMap(history.size());
+        offsets.defaultReturnValue(Double.NaN);
+        for (Rating r: history) {
+            int idx = itemIndex.tryGetIndex(r.getItemId());
+            if (idx >= 0) {
+                offsets.put(idx, r.getValue() - model.getItemMean(idx));
+            }
+        }
+
+        // Push each rated item's contributions to its neighbors.  Accumulator slots are
+        // allocated only for the items that are actually reached.
+        Int2IntOpenHashMap slots = new Int2IntOpenHashMap();
+        slots.defaultReturnValue(-1);
+        IntArrayList reached = new IntArrayList();
+        IntArrayList counts = new IntArrayList();
+        DoubleArrayList weightSums = new DoubleArrayList();
+        DoubleArrayList weightRatingSums = new DoubleArrayList();
+        for (Int2DoubleMap.Entry e: offsets.int2DoubleEntrySet()) {
+            double rating = e.getDoubleValue();
+            int[] nbrs = model.getNeighborIndices(e.getIntKey());
+            double[] sims = model.getNeighborSimilarities(e.getIntKey());
+            for (int i = 0; i < nbrs.length; i++) {
+                int slot = slots.get(nbrs[i]);
+                if (slot < 0) {
+                    slot = reached.size();
+                    slots.put(nbrs[i], slot);
+                    reached.add(nbrs[i]);
+                    counts.add(0);
+                    weightSums.add(0);
+                    weightRatingSums.add(0);
+                }
+                counts.set(slot, counts.getInt(slot) + 1);
+                weightSums.set(slot, weightSums.getDouble(slot) + sims[i]);
+                weightRatingSums.set(slot, weightRatingSums.getDouble(slot) + sims[i] * rating);
+            }
+        }
+
+        // Select the top N of the reached items.
+        ResultAccumulator accum = ResultAccumulator.create(n);
+        for (int slot = 0; slot < reached.size(); slot++) {
+            int idx = reached.getInt(slot);
+            long item = itemIndex.getKey(idx);
+            if (candidates != null && !candidates.contains(item)) {
+                continue;
+            }
+            if (exclude != null ? exclude.contains(item) : offsets.containsKey(idx)) {
+                continue;
+            }
+
+            double score;
+            if (!truncated && counts.getInt(slot) <= neighborhoodSize) {
+                score = weightRatingSums.getDouble(slot) / weightSums.getDouble(slot);
+            } else {
+                // Too many rated neighbors, or the pushed ones may not be the item's own
+                // neighbors; score from the item's neighborhood.
+                score = scoreTopNeighbors(model, idx, offsets);
+                if (Double.isNaN(score)) {
+                    continue;
+                }
+            }
+            accum.add(item, model.getItemMean(idx) + score);
+        }
+
+        return accum.finish();
+    }
+
+    /**
+     * Compute an item's mean-centered score from the most similar neighbors the user has rated.
+     * @param model The model.
+     * @param idx The item position.
+     * @param offsets The user's mean-centered ratings.
+     * @return The weighted average offset, or {@link Double#NaN} if the user has rated none of
+     *         the item's neighbors.
+     */
+    private double scoreTopNeighbors(SimpleItemItemModel model, int idx, Int2DoubleMap offsets) {
+        int[] nbrs = model.getNeighborIndices(idx);
+        double[] sims = model.getNeighborSimilarities(idx);
+        int count = 0;
+        double weightSum = 0.0;
+        double weightRatingSum = 0.0;
+        for (int i = 0; i < nbrs.length && count < neighborhoodSize; i++) {
+            double rating = offsets.get(nbrs[i]);
+            if (!Double.isNaN(rating)) {
+                weightSum += sims[i];
+                weightRatingSum += sims[i] * rating;
+                count++;
+            }
+        }
+        return count > 0 ? weightRatingSum / weightSum : Double.NaN;
+    }
+}
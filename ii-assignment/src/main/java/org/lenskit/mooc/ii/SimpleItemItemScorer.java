@@ -1,7 +1,6 @@
 package org.lenskit.mooc.ii;
 
-import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
-import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import org.lenskit.api.Result;
 import org.lenskit.api.ResultMap;
 import org.lenskit.basic.AbstractItemScorer;
@@ -9,27 +8,34 @@ import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.entities.CommonAttributes;
 import org.lenskit.data.ratings.Rating;
 import org.lenskit.results.Results;
-import org.lenskit.util.ScoredIdAccumulator;
-import org.lenskit.util.TopNScoredIdAccumulator;
-import org.lenskit.util.math.Vectors;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.KeyIndex;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public class SimpleItemItemScorer extends AbstractItemScorer {
-    private final SimpleItemItemModel model;
+    /**
+     * The number of the most similar rated neighbors that contribute to a score.
+     */
+    static final int NEIGHBORHOOD_SIZE = 20;
+
+    private final ItemItemModelSource modelSource;
     private final DataAccessObject dao;
     private final int neighborhoodSize;
 
     @Inject
-    public SimpleItemItemScorer(SimpleItemItemModel m, DataAccessObject dao) {
-        model = m;
+    public SimpleItemItemScorer(ItemItemModelSource src, DataAccessObject dao) {
+        modelSource = src;
         this.dao = dao;
-        neighborhoodSize = 20;
+        neighborhoodSize = NEIGHBORHOOD_SIZE;
     }
 
     /**
@@ -40,80 +46,74 @@ public class SimpleItemItemScorer extends AbstractItemScorer {
      */
     @Override
     public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
-        Long2DoubleMap itemMeans = model.getItemMeans();
-        Long2DoubleMap ratings = getUserRatingVector(user);
-
-        // Normalize the user's ratings by subtracting the item mean from each one.
-        for (Map.Entry<Long, Double> entry : ratings.entrySet()) {
-            entry.setValue(entry.getValue() - itemMeans.get(entry.getKey()));
-        }
-
-        List<Result> results = new ArrayList<>();
+        return score(modelSource.getModel(), user, items);
+    }
 
-        for (long item: items) {
-            // Compute the user's score for each item, add it to results
-            Long2DoubleMap itemNeighbors = model.getNeighbors(item);
+    /**
+     * Score items for a user with a particular model snapshot.
+     * @param model The model.
+     * @param user The user ID.
+     * @param items The items to score.
+     * @return The scores.
+     */
+    ResultMap score(SimpleItemItemModel model, long user, Collection<Long> items) {
+        KeyIndex itemIndex = model.getItemIndex();
+        double[] offsets = getUserOffsets(model, user);
+
+        List<Result> results = new ArrayList<>(items.size());
+
+        LongIterator iter = LongUtils.asLongCollection(items).iterator();
+        while (iter.hasNext()) {
+            long item = iter.nextLong();
+            int idx = itemIndex.tryGetIndex(item);
+            if (idx < 0) {
+                continue;
+            }
 
-            // Calculate top neighbors
-            ValueComparator bvc = new ValueComparator(itemNeighbors);
-            TreeMap<Long,Double> sortedSimilarities = new TreeMap<>(bvc);
-            sortedSimilarities.putAll(itemNeighbors);
-            int count = 1;
+            // Walk the neighbors in decreasing order of similarity, using the top ones the user rated
+            int[] nbrs = model.getNeighborIndices(idx);
+            double[] sims = model.getNeighborSimilarities(idx);
+            int count = 0;
             double weightSum = 0.0;
             double weightRatingSum = 0.0;
-            for (Map.Entry<Long, Double> entry : sortedSimilarities.entrySet()) {
-                if (count > neighborhoodSize)
-                    break;
-                Long otherItem = entry.getKey();
-                if(ratings.containsKey(otherItem)) {
-                    double weight = entry.getValue();
-                    double rating = ratings.get(otherItem);
-                    weightSum += weight;
-                    weightRatingSum += weight * rating;
-                    count ++;
+            for (int i = 0; i < nbrs.length && count < neighborhoodSize; i++) {
+                double rating = offsets[nbrs[i]];
+                if (!Double.isNaN(rating)) {
+                    weightSum += sims[i];
+                    weightRatingSum += sims[i] * rating;
+                    count++;
                 }
             }
-            double score = itemMeans.get(item) + weightRatingSum / weightSum;
-            results.add(Results.create(item, score));
+            if (count > 0) {
+                results.add(Results.create(item, model.getItemMean(idx) + weightRatingSum / weightSum));
+            }
         }
 
         return Results.newResultMap(results);
-
     }
 
     /**
-     * Get a user's ratings.
+     * Get a user's mean-centered ratings.
+     * @param model The model.
      * @param user The user ID.
-     * @return The ratings to retrieve.
+     * @return An array, indexed by item position in the model, of the user's ratings minus the
+     *         item means.  Items the user has not rated are {@link Double#NaN}.
      */
-    private Long2DoubleOpenHashMap getUserRatingVector(long user) {
+    private double[] getUserOffsets(SimpleItemItemModel model, long user) {
         List<Rating> history = dao.query(Rating.class)
                                   .withAttribute(CommonAttributes.USER_ID, user)
                                   .get();
 
-        Long2DoubleOpenHashMap ratings = new Long2DoubleOpenHashMap();
+        KeyIndex itemIndex = model.getItemIndex();
+        double[] offsets = new double[itemIndex.size()];
+        Arrays.fill(offsets, Double.NaN);
         for (Rating r: history) {
-            ratings.put(r.getItemId(), r.getValue());
-        }
-
-        return ratings;
-    }
-
-
-    class ValueComparator implements Comparator<Long> {
-
-        Map<Long, Double> base;
-        public ValueComparator(Map<Long, Double> base) {
-            this.base = base;
+            int idx = itemIndex.tryGetIndex(r.getItemId());
+            if (idx >= 0) {
+                offsets[idx] = r.getValue() - model.getItemMean(idx);
+            }
         }
 
-        // Note: this comparator imposes orderings that are inconsistent with equals.
-        public int compare(Long a, Long b) {
-            if (base.get(a) >= base.get(b)) {
-                return -1;
-            } else {
-                return 1;
-            } // returning 0 would merge keys
-        }
+        return offsets;
     }
 }
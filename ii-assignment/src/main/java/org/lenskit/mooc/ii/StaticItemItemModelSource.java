@@ -0,0 +1,22 @@
+package org.lenskit.mooc.ii;
+
+import javax.inject.Inject;
+
+/**
+ * Model source for a model that does not change once it is built.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class StaticItemItemModelSource implements ItemItemModelSource {
+    private final SimpleItemItemModel model;
+
+    @Inject
+    public StaticItemItemModelSource(SimpleItemItemModel m) {
+        model = m;
+    }
+
+    @Override
+    public SimpleItemItemModel getModel() {
+        return model;
+    }
+}
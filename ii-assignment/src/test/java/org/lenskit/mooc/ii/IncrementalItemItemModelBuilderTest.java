@@ -0,0 +1,176 @@
+package org.lenskit.mooc.ii;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.api.ItemScorer;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.ratings.Rating;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class IncrementalItemItemModelBuilderTest {
+    private static final double TOLERANCE = 1.0e-5;
+
+    private Random rng;
+    private List<Rating> initial;
+    private List<Rating> held;
+
+    @Before
+    public void createData() {
+        // 80 users rating about a third of 40 items, with a few ratings held back
+        rng = new Random(42);
+        initial = new ArrayList<>();
+        held = new ArrayList<>();
+        for (long user = 1; user <= 80; user++) {
+            for (long item = 1; item <= 40; item++) {
+                if (rng.nextDouble() < 0.3) {
+                    Rating r = rating(user, item, 0.5 + 0.5 * rng.nextInt(10));
+                    if (rng.nextDouble() < 0.05) {
+                        held.add(r);
+                    } else {
+                        initial.add(r);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdateMatchesRebuild() {
+        checkIncrementalUpdate(0);
+    }
+
+    @Test
+    public void testTruncatedUpdateMatchesRebuild() {
+        checkIncrementalUpdate(5);
+    }
+
+    private void checkIncrementalUpdate(int size) {
+        IncrementalItemItemModelBuilder builder = newBuilder(dao(initial), size);
+        List<Rating> batch = new ArrayList<>(held);
+        // change a few existing ratings too
+        for (int k = 0; k < 10; k++) {
+            Rating r = initial.get(rng.nextInt(initial.size()));
+            double value = r.getValue() == 5 ? 1 : r.getValue() + 0.5;
+            batch.add(rating(r.getUserId(), r.getItemId(), value));
+        }
+        assertThat(batch.size(), lessThan(initial.size() / 10));
+
+        SimpleItemItemModel updated = builder.applyRatings(batch);
+        assertThat(builder.getModel(), sameInstance(updated));
+        assertSameModel(updated, rebuild(batch, size));
+        if (size > 0) {
+            for (long item: updated.getItemIndex().getKeyList()) {
+                assertThat(updated.getNeighbors(item).size(), lessThanOrEqualTo(size));
+            }
+        }
+    }
+
+    @Test
+    public void testNewItemRebuilds() {
+        IncrementalItemItemModelBuilder builder = newBuilder(dao(initial), 0);
+        List<Rating> batch = new ArrayList<>();
+        for (long user = 1; user <= 10; user++) {
+            batch.add(rating(user, 41, 0.5 + 0.5 * rng.nextInt(10)));
+        }
+
+        SimpleItemItemModel updated = builder.applyRatings(batch);
+        assertThat(updated.getItemIndex().containsKey(41), equalTo(true));
+        assertSameModel(updated, rebuild(batch, 0));
+    }
+
+    @Test
+    public void testRecommendersShareUpdates() {
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(ItemScorer.class).to(SimpleItemItemScorer.class);
+        config.bind(ItemItemModelSource.class).to(IncrementalItemItemModelBuilder.class);
+        DataAccessObject dao = dao(initial);
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(config, dao);
+        LenskitRecommender first = engine.createRecommender(dao);
+        LenskitRecommender second = engine.createRecommender(dao);
+
+        IncrementalItemItemModelBuilder builder = first.get(IncrementalItemItemModelBuilder.class);
+        assertThat(second.get(IncrementalItemItemModelBuilder.class), sameInstance(builder));
+
+        SimpleItemItemModel updated = builder.applyRatings(held);
+        assertThat(second.get(ItemItemModelSource.class).getModel(), sameInstance(updated));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectOtherSimilarity() {
+        new IncrementalItemItemModelBuilder(dao(initial), new AdjustedCosineItemSimilarity(),
+                                            0, 0, 0.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectDamping() {
+        new IncrementalItemItemModelBuilder(dao(initial), new CosineItemSimilarity(), 50, 0, 0.1);
+    }
+
+    private static IncrementalItemItemModelBuilder newBuilder(DataAccessObject dao, int size) {
+        return new IncrementalItemItemModelBuilder(dao, new CosineItemSimilarity(), 0, size, 0.1);
+    }
+
+    private static DataAccessObject dao(List<Rating> ratings) {
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(ratings);
+        return data.get();
+    }
+
+    private static Rating rating(long user, long item, double value) {
+        return Rating.newBuilder()
+                     .setId(1000 * user + item)
+                     .setUserId(user)
+                     .setItemId(item)
+                     .setRating(value)
+                     .build();
+    }
+
+    /**
+     * Build a model from scratch over the initial ratings with a batch applied.
+     */
+    private SimpleItemItemModel rebuild(List<Rating> batch, int size) {
+        Map<String, Rating> ratings = new LinkedHashMap<>();
+        for (Rating r: initial) {
+            ratings.put(r.getUserId() + ":" + r.getItemId(), r);
+        }
+        for (Rating r: batch) {
+            ratings.put(r.getUserId() + ":" + r.getItemId(), r);
+        }
+        DataAccessObject dao = dao(new ArrayList<>(ratings.values()));
+        return new SimpleItemItemModelProvider(dao, new CosineItemSimilarity(), 0, size).get();
+    }
+
+    private static void assertSameModel(SimpleItemItemModel actual, SimpleItemItemModel expected) {
+        assertThat(actual.getItemIndex().getKeyList(),
+                   equalTo(expected.getItemIndex().getKeyList()));
+        for (long item: expected.getItemIndex().getKeyList()) {
+            assertThat(actual.getItemMeans().get(item),
+                       closeTo(expected.getItemMeans().get(item), TOLERANCE));
+            Long2DoubleMap nbrs = actual.getNeighbors(item);
+            Long2DoubleMap expectedNbrs = expected.getNeighbors(item);
+            LongSet all = new LongOpenHashSet(nbrs.keySet());
+            all.addAll(expectedNbrs.keySet());
+            // near-zero similarities may fall on either side of the cutoff
+            for (long nbr: all) {
+                double sim = nbrs.containsKey(nbr) ? nbrs.get(nbr) : 0;
+                double expectedSim = expectedNbrs.containsKey(nbr) ? expectedNbrs.get(nbr) : 0;
+                assertThat(sim, closeTo(expectedSim, TOLERANCE));
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.lenskit.mooc.ii;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.lenskit.api.ResultMap;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.results.ResultAccumulator;
+import org.lenskit.results.Results;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SimpleItemBasedItemRecommenderTest {
+    private static final int USERS = 60;
+    private static final int ITEMS = 40;
+    private static final double TOLERANCE = 1.0e-9;
+
+    private DataAccessObject dao;
+    private List<LongSet> baskets;
+
+    @Before
+    public void createData() {
+        Random rng = new Random(42);
+        List<Rating> ratings = new ArrayList<>();
+        for (long user = 1; user <= USERS; user++) {
+            for (long item = 1; item <= ITEMS; item++) {
+                if (rng.nextDouble() < 0.3) {
+                    ratings.add(Rating.newBuilder()
+                                      .setId(1000 * user + item)
+                                      .setUserId(user)
+                                      .setItemId(item)
+                                      .setRating(0.5 + 0.5 * rng.nextInt(10))
+                                      .build());
+                }
+            }
+        }
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(ratings);
+        dao = data.get();
+
+        baskets = new ArrayList<>();
+        for (int b = 0; b < 10; b++) {
+            LongSet basket = new LongOpenHashSet();
+            while (basket.size() < 1 + b % 4) {
+                basket.add(1 + rng.nextInt(ITEMS));
+            }
+            baskets.add(basket);
+        }
+    }
+
+    @Test
+    public void testCandidatesScoreRows() {
+        ItemItemModelSource src = modelSource(5);
+        SimpleItemBasedItemScorer scorer = new SimpleItemBasedItemScorer(src);
+        SimpleItemBasedItemRecommender rec = new SimpleItemBasedItemRecommender(src, scorer);
+
+        LongSet candidates = new LongOpenHashSet();
+        for (long item = 1; item <= ITEMS; item += 2) {
+            candidates.add(item);
+        }
+        for (LongSet basket: baskets) {
+            ResultAccumulator accum = ResultAccumulator.create(5);
+            for (Result r: scorer.scoreRelatedItemsWithDetails(basket, candidates)) {
+                if (r.getScore() > 0 && !basket.contains(r.getId())) {
+                    accum.add(r.getId(), r.getScore());
+                }
+            }
+            assertSameResults(rec.recommendRelatedItemsWithDetails(basket, 5, candidates, null),
+                              accum.finish());
+        }
+    }
+
+    @Test
+    public void testPushSumsBasketNeighborhoods() {
+        ItemItemModelSource src = modelSource(5);
+        SimpleItemItemModel model = src.getModel();
+        SimpleItemBasedItemRecommender rec =
+                new SimpleItemBasedItemRecommender(src, new SimpleItemBasedItemScorer(src));
+
+        for (LongSet basket: baskets) {
+            Long2DoubleOpenHashMap sums = new Long2DoubleOpenHashMap();
+            for (long item: basket) {
+                for (Long2DoubleMap.Entry e: model.getNeighbors(item).long2DoubleEntrySet()) {
+                    sums.addTo(e.getLongKey(), e.getDoubleValue());
+                }
+            }
+            ResultAccumulator accum = ResultAccumulator.create(5);
+            for (Long2DoubleMap.Entry e: sums.long2DoubleEntrySet()) {
+                if (!basket.contains(e.getLongKey())) {
+                    accum.add(e.getLongKey(), e.getDoubleValue());
+                }
+            }
+            assertSameResults(rec.recommendRelatedItemsWithDetails(basket, 5, null, null),
+                              accum.finish());
+        }
+    }
+
+    @Test
+    public void testPathsAgreeOnFullModel() {
+        ItemItemModelSource src = modelSource(0);
+        SimpleItemBasedItemRecommender rec =
+                new SimpleItemBasedItemRecommender(src, new SimpleItemBasedItemScorer(src));
+
+        LongSet all = new LongOpenHashSet();
+        for (long item = 1; item <= ITEMS; item++) {
+            all.add(item);
+        }
+        LongSet exclude = new LongOpenHashSet(new long[]{2, 3});
+        for (LongSet basket: baskets) {
+            ResultList pushed = rec.recommendRelatedItemsWithDetails(basket, 10, null, null);
+            ResultList scored = rec.recommendRelatedItemsWithDetails(basket, 10, all, null);
+            assertThat(pushed, hasSize(10));
+            // similarities are computed once per pair, but summed in a different order, so
+            // near-ties may swap; compare the ranked scores instead
+            for (int i = 0; i < scored.size(); i++) {
+                assertThat(pushed.get(i).getScore(), closeTo(scored.get(i).getScore(), TOLERANCE));
+            }
+            assertSameScores(rec.recommendRelatedItemsWithDetails(basket, -1, null, exclude),
+                             rec.recommendRelatedItemsWithDetails(basket, -1, all, exclude));
+        }
+    }
+
+    private ItemItemModelSource modelSource(int size) {
+        return new StaticItemItemModelSource(
+                new SimpleItemItemModelProvider(dao, new CosineItemSimilarity(), 0, size).get());
+    }
+
+    private static void assertSameScores(ResultList actual, ResultList expected) {
+        assertThat(actual.idList(), containsInAnyOrder(expected.idList().toArray()));
+        ResultMap scores = Results.newResultMap(actual);
+        for (Result r: expected) {
+            assertThat(scores.getScore(r.getId()), closeTo(r.getScore(), TOLERANCE));
+        }
+    }
+
+    private static void assertSameResults(ResultList actual, ResultList expected) {
+        assertThat(actual.idList(), equalTo(expected.idList()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getScore(), closeTo(expected.get(i).getScore(), TOLERANCE));
+        }
+    }
+}
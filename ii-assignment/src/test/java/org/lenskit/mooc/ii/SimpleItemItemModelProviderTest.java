@@ -0,0 +1,102 @@
+package org.lenskit.mooc.ii;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.Test;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.ratings.Rating;
+
+import java.util.Collections;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SimpleItemItemModelProviderTest {
+    private static final int USERS = 150;
+    // more than one block of rows, and not a multiple of the block size
+    private static final int ITEMS = 150;
+    private static final double TOLERANCE = 1.0e-5;
+
+    @Test
+    public void testDenseMatchesSparse() {
+        Random rng = new Random(42);
+        int[][] users = new int[ITEMS][];
+        double[][] values = new double[ITEMS][];
+        double[] norms = new double[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            IntArrayList us = new IntArrayList();
+            DoubleArrayList vs = new DoubleArrayList();
+            for (int u = 0; u < USERS; u++) {
+                if (rng.nextDouble() < 0.2) {
+                    us.add(u);
+                    vs.add(rng.nextGaussian());
+                }
+            }
+            users[i] = us.toIntArray();
+            values[i] = vs.toDoubleArray();
+            double sumSquares = 0;
+            for (double v: values[i]) {
+                sumSquares += v * v;
+            }
+            norms[i] = Math.sqrt(sumSquares);
+        }
+
+        SimpleItemItemModelProvider provider = newProvider();
+        int[][] sparseNbrs = new int[ITEMS][];
+        double[][] sparseSims = new double[ITEMS][];
+        provider.computeSparse(users, values, norms, sparseNbrs, sparseSims);
+        int[][] denseNbrs = new int[ITEMS][];
+        double[][] denseSims = new double[ITEMS][];
+        provider.computeDense(USERS, users, values, norms, denseNbrs, denseSims);
+
+        for (int i = 0; i < ITEMS; i++) {
+            assertThat(sparseNbrs[i].length, greaterThan(0));
+            Int2DoubleMap sparse = neighborhood(sparseNbrs[i], sparseSims[i]);
+            Int2DoubleMap dense = neighborhood(denseNbrs[i], denseSims[i]);
+            IntSet all = new IntOpenHashSet(sparse.keySet());
+            all.addAll(dense.keySet());
+            // the dense product is single-precision, so near-zero similarities may fall on
+            // either side of the cutoff
+            for (int j: all) {
+                assertThat(dense.get(j), closeTo(sparse.get(j), TOLERANCE));
+            }
+            for (int k = 1; k < denseSims[i].length; k++) {
+                assertThat(denseSims[i][k], lessThanOrEqualTo(denseSims[i][k - 1]));
+            }
+        }
+    }
+
+    @Test
+    public void testDenseModeBoundedByHeap() {
+        SimpleItemItemModelProvider provider = newProvider();
+        long maxCells = SimpleItemItemModelProvider.getDenseMaxCells();
+        assertThat(maxCells, lessThanOrEqualTo(Runtime.getRuntime().maxMemory() / Float.BYTES));
+        assertThat(maxCells, lessThan((long) Integer.MAX_VALUE));
+        assertThat(provider.useDenseMode(100, 100, 5000), equalTo(true));
+        assertThat(provider.useDenseMode((int) (maxCells / 100) + 1, 100, maxCells),
+                   equalTo(false));
+        // too sparse to pay off
+        assertThat(provider.useDenseMode(10000, 1000, 100), equalTo(false));
+    }
+
+    private static SimpleItemItemModelProvider newProvider() {
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(Collections.<Rating>emptyList());
+        DataAccessObject dao = data.get();
+        return new SimpleItemItemModelProvider(dao, new CosineItemSimilarity(), 0, 0);
+    }
+
+    private static Int2DoubleMap neighborhood(int[] nbrs, double[] sims) {
+        Int2DoubleOpenHashMap map = new Int2DoubleOpenHashMap();
+        for (int k = 0; k < nbrs.length; k++) {
+            map.put(nbrs[k], sims[k]);
+        }
+        return map;
+    }
+}
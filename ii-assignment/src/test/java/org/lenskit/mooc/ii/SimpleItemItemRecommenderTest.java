@@ -0,0 +1,152 @@
+package org.lenskit.mooc.ii;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.results.ResultAccumulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SimpleItemItemRecommenderTest {
+    private static final int USERS = 60;
+    private static final int ITEMS = 40;
+    private static final double TOLERANCE = 1.0e-9;
+
+    private DataAccessObject dao;
+
+    @Before
+    public void createData() {
+        // users rate between a tenth and most of the items, so some have more rated neighbors
+        // than the scorer's neighborhood size
+        Random rng = new Random(42);
+        List<Rating> ratings = new ArrayList<>();
+        for (long user = 1; user <= USERS; user++) {
+            double density = 0.1 + 0.8 * (user - 1) / (USERS - 1);
+            for (long item = 1; item <= ITEMS; item++) {
+                if (rng.nextDouble() < density) {
+                    ratings.add(Rating.newBuilder()
+                                      .setId(1000 * user + item)
+                                      .setUserId(user)
+                                      .setItemId(item)
+                                      .setRating(0.5 + 0.5 * rng.nextInt(10))
+                                      .build());
+                }
+            }
+        }
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(ratings);
+        dao = data.get();
+    }
+
+    @Test
+    public void testPushMatchesScorer() {
+        ItemItemModelSource src = modelSource(0);
+        SimpleItemItemScorer scorer = new SimpleItemItemScorer(src, dao);
+        SimpleItemItemRecommender rec = new SimpleItemItemRecommender(src, dao, 0);
+
+        boolean sawLargeProfile = false;
+        for (long user = 1; user <= USERS; user++) {
+            LongSet rated = ratedItems(user);
+            sawLargeProfile |= rated.size() > SimpleItemItemScorer.NEIGHBORHOOD_SIZE;
+            ResultList expected = topN(scorer, src.getModel(), user, allItems(), rated, 10);
+            assertSameResults(rec.recommendWithDetails(user, 10, null, null), expected);
+        }
+        assertThat(sawLargeProfile, equalTo(true));
+    }
+
+    @Test
+    public void testPushHonorsCandidates() {
+        ItemItemModelSource src = modelSource(0);
+        SimpleItemItemScorer scorer = new SimpleItemItemScorer(src, dao);
+        SimpleItemItemRecommender rec = new SimpleItemItemRecommender(src, dao, 0);
+
+        LongSet candidates = new LongOpenHashSet();
+        for (long item = 1; item <= ITEMS; item += 3) {
+            candidates.add(item);
+        }
+        LongSet exclude = new LongOpenHashSet(new long[]{1, 4});
+        for (long user = 1; user <= USERS; user += 7) {
+            ResultList expected = topN(scorer, src.getModel(), user, candidates, exclude, 5);
+            assertSameResults(rec.recommendWithDetails(user, 5, candidates, exclude), expected);
+        }
+    }
+
+    @Test
+    public void testTruncatedPushScoresReachedItems() {
+        int size = 5;
+        ItemItemModelSource src = modelSource(size);
+        SimpleItemItemModel model = src.getModel();
+        SimpleItemItemScorer scorer = new SimpleItemItemScorer(src, dao);
+        SimpleItemItemRecommender rec = new SimpleItemItemRecommender(src, dao, size);
+
+        for (long user = 1; user <= USERS; user++) {
+            LongSet rated = ratedItems(user);
+            // only items kept as neighbors by the user's rated items can be recommended
+            LongSet reached = new LongOpenHashSet();
+            for (long item: rated) {
+                reached.addAll(model.getNeighbors(item).keySet());
+            }
+            ResultList expected = topN(scorer, model, user, reached, rated, 10);
+            ResultList actual = rec.recommendWithDetails(user, 10, null, null);
+            assertSameResults(actual, expected);
+            for (Result r: actual) {
+                assertThat(r.getScore(),
+                           closeTo(scorer.score(user, r.getId()).getScore(), TOLERANCE));
+            }
+        }
+    }
+
+    private ItemItemModelSource modelSource(int size) {
+        return new StaticItemItemModelSource(
+                new SimpleItemItemModelProvider(dao, new CosineItemSimilarity(), 0, size).get());
+    }
+
+    private LongSet allItems() {
+        LongSet items = new LongOpenHashSet();
+        for (long item = 1; item <= ITEMS; item++) {
+            items.add(item);
+        }
+        return items;
+    }
+
+    private LongSet ratedItems(long user) {
+        LongSet items = new LongOpenHashSet();
+        for (Rating r: dao.query(Rating.class).withAttribute(CommonAttributes.USER_ID, user).get()) {
+            items.add(r.getItemId());
+        }
+        return items;
+    }
+
+    /**
+     * Rank items exhaustively by their scores.
+     */
+    private static ResultList topN(SimpleItemItemScorer scorer, SimpleItemItemModel model,
+                                   long user, LongSet items, LongSet exclude, int n) {
+        ResultAccumulator accum = ResultAccumulator.create(n);
+        for (Result r: scorer.score(model, user, items)) {
+            if (!exclude.contains(r.getId())) {
+                accum.add(r.getId(), r.getScore());
+            }
+        }
+        return accum.finish();
+    }
+
+    private static void assertSameResults(ResultList actual, ResultList expected) {
+        assertThat(actual.idList(), equalTo(expected.idList()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getScore(), closeTo(expected.get(i).getScore(), TOLERANCE));
+        }
+    }
+}
@@ -2,6 +2,7 @@ import org.lenskit.api.ItemScorer
 import org.lenskit.bias.*
 import org.lenskit.knn.NeighborhoodSize
 import org.lenskit.knn.item.ItemItemScorer
+import org.lenskit.mooc.svd.FeatureEncoding
 import org.lenskit.mooc.svd.LatentFeatureCount
 import org.lenskit.mooc.svd.SVDItemScorer
 import org.lenskit.transform.normalize.MeanCenteringVectorNormalizer
@@ -57,3 +58,15 @@ for (size in [0, 1, 5, 10, 15, 20, 25, 30, 40, 50]) {
     }
 }
 
+// test smaller feature encodings; the double-precision model is the user-item SVD of size 25
+for (encoding in ["float", "int8"]) {
+    algorithm("SVD") {
+        attributes["FeatureCount"] = 25
+        attributes["Bias"] = "user-item"
+        attributes["Encoding"] = encoding
+        bind ItemScorer to SVDItemScorer
+        set LatentFeatureCount to 25
+        set FeatureEncoding to encoding
+        bind BiasModel to UserItemBiasModel
+    }
+}
@@ -1,7 +1,18 @@
+import org.lenskit.api.ItemRecommender
 import org.lenskit.api.ItemScorer
+import org.lenskit.mooc.svd.DenseSVDSolver
 import org.lenskit.mooc.svd.LatentFeatureCount
+import org.lenskit.mooc.svd.RandomSeed
+import org.lenskit.mooc.svd.SVDItemRecommender
 import org.lenskit.mooc.svd.SVDItemScorer
+import org.lenskit.mooc.svd.SVDSolver
 
 // Set up item scorer
 bind ItemScorer to SVDItemScorer
-set LatentFeatureCount to 25
\ No newline at end of file
+// Rank the whole catalog in one pass over the item features
+bind ItemRecommender to SVDItemRecommender
+set LatentFeatureCount to 25
+// Decompose the full dense rating matrix (see the README for the other solvers)
+bind SVDSolver to DenseSVDSolver
+// Seed for the randomized and ALS solvers and the item factor index
+set RandomSeed to 42
@@ -0,0 +1,291 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Preconditions;
+import org.grouplens.lenskit.iterative.RegularizationTerm;
+import org.grouplens.lenskit.iterative.StoppingCondition;
+import org.grouplens.lenskit.iterative.TrainingLoopController;
+import org.lenskit.util.keys.KeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Factorizes the residual matrix by alternating least squares instead of decomposing it.  Each
+ * iteration fixes the item features and solves a small regularized least-squares problem for every
+ * user's features, then does the same for the items with the users fixed.  The solves for different
+ * users (or items) are independent, so they are split across a fork-join pool.  Missing entries are
+ * left out of the fit rather than treated as zeros.
+ *
+ * <p>Each row's features {@code x} solve {@code (Y'Y + lambda n I) x = Y'r}, where {@code Y} holds
+ * the other side's features for the {@code n} entries {@code r} in the row; scaling the
+ * regularization by {@code n} keeps heavy and light users on an equal footing.  The resulting
+ * model has unit feature weights.
+ *
+ * <p>Training stops according to the {@link StoppingCondition}, which is given the training RMSE
+ * after each iteration.  If an {@linkplain InitialModel initial model} is available with the same
+ * number of features, its item features are the starting point (new items start at random), so a
+ * retrain on slightly changed data needs few iterations.
+ */
+public class ALSSolver implements SVDSolver {
+    private static final Logger logger = LoggerFactory.getLogger(ALSSolver.class);
+    /**
+     * Number of rows to solve in a single task.
+     */
+    private static final int TASK_SIZE = 256;
+    /**
+     * Standard deviation of the random starting features.
+     */
+    private static final double INITIAL_SCALE = 0.1;
+
+    private final StoppingCondition stoppingCondition;
+    private final double regularization;
+    private final int seed;
+    private final SVDModel initialModel;
+
+    /**
+     * Construct an ALS solver.
+     * @param stop The stopping condition.
+     * @param reg The regularization term, scaled by each row's entry count.
+     * @param seed The random seed for initial features.
+     * @param initial The model to start from, if any.
+     */
+    @Inject
+    public ALSSolver(StoppingCondition stop,
+                     @RegularizationTerm double reg,
+                     @RandomSeed int seed,
+                     @Nullable @InitialModel SVDModel initial) {
+        Preconditions.checkArgument(reg > 0, "regularization term must be positive");
+        stoppingCondition = stop;
+        regularization = reg;
+        this.seed = seed;
+        initialModel = initial;
+    }
+
+    @Override
+    public SVDModel decompose(ResidualMatrix matrix, int featureCount) {
+        Preconditions.checkArgument(featureCount > 0, "ALS requires a positive feature count");
+        ResidualMatrix transpose = matrix.transpose();
+        logger.info("training {} features of {} by {} matrix with {} ratings",
+                    featureCount, matrix.getRowCount(), matrix.getColumnCount(),
+                    matrix.getEntryCount());
+
+        double[] userFeatures = new double[matrix.getRowCount() * featureCount];
+        double[] itemFeatures = initialItemFeatures(matrix.getItemIndex(), featureCount);
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            TrainingLoopController loop = stoppingCondition.newLoop();
+            double rmse = Double.MAX_VALUE;
+            while (loop.keepTraining(rmse)) {
+                pool.invoke(new SolveTask(matrix, itemFeatures, userFeatures, featureCount,
+                                          regularization, 0, matrix.getRowCount()));
+                // the item solves see the final user features, so their error is the iteration's
+                double sse = pool.invoke(new SolveTask(transpose, userFeatures, itemFeatures,
+                                                       featureCount, regularization,
+                                                       0, transpose.getRowCount()));
+                rmse = Math.sqrt(sse / matrix.getEntryCount());
+                logger.debug("iteration {}: RMSE {}", loop.getIterationCount(), rmse);
+            }
+            logger.info("trained {} features in {} iterations (RMSE {})",
+                        featureCount, loop.getIterationCount(), rmse);
+        } finally {
+            pool.shutdown();
+        }
+
+        double[] ones = new double[featureCount];
+        for (int f = 0; f < featureCount; f++) {
+            ones[f] = 1;
+        }
+        return new SVDModel(matrix.getUserIndex(), matrix.getItemIndex(),
+                            ones, userFeatures, itemFeatures);
+    }
+
+    /**
+     * Set up the starting item features, from the initial model if it is usable and at random
+     * otherwise.
+     */
+    private double[] initialItemFeatures(KeyIndex items, int featureCount) {
+        SVDModel start = initialModel;
+        if (start != null && start.getFeatureCount() != featureCount) {
+            logger.warn("initial model has {} features, expected {}; ignoring it",
+                        start.getFeatureCount(), featureCount);
+            start = null;
+        }
+
+        int nitems = items.size();
+        double[] features = new double[nitems * featureCount];
+        Random random = new Random(seed);
+        int reused = 0;
+        for (int i = 0; i < nitems; i++) {
+            int prev = start != null
+                    ? start.getItemIndexMapping().tryGetIndex(items.getKey(i))
+                    : -1;
+            if (prev >= 0) {
+                // the model's weights are on its user side, so the user solve recovers them
+                start.getItemFeatures(prev, features, i * featureCount);
+                reused += 1;
+            } else {
+                for (int f = 0; f < featureCount; f++) {
+                    features[i * featureCount + f] = random.nextGaussian() * INITIAL_SCALE;
+                }
+            }
+        }
+        if (start != null) {
+            logger.info("starting from initial model features for {} of {} items",
+                        reused, nitems);
+        }
+        return features;
+    }
+
+    /**
+     * Task solving for the features of a range of rows, with the other side's features fixed.  Each
+     * leaf task allocates its scratch space once and reuses it for all of its rows.
+     */
+    private static class SolveTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final ResidualMatrix matrix;
+        private final double[] fixed;
+        private final double[] solved;
+        private final int featureCount;
+        private final double regularization;
+        private final int start;
+        private final int end;
+
+        /**
+         * Create a task.
+         * @param matrix The matrix whose rows are solved.
+         * @param fixed The row-major features of its columns.
+         * @param solved The row-major features of its rows, to be filled in.
+         * @param k The number of features.
+         * @param reg The regularization term.
+         * @param start The first row to solve.
+         * @param end The row after the last row to solve.
+         */
+        SolveTask(ResidualMatrix matrix, double[] fixed, double[] solved, int k, double reg,
+                  int start, int end) {
+            this.matrix = matrix;
+            this.fixed = fixed;
+            this.solved = solved;
+            featureCount = k;
+            regularization = reg;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Solve the rows.
+         * @return The sum of squared errors of the solved rows' entries.
+         */
+        @Override
+        protected Double compute() {
+            if (end - start > TASK_SIZE) {
+                int mid = (start + end) >>> 1;
+                SolveTask left = new SolveTask(matrix, fixed, solved, featureCount, regularization,
+                                               start, mid);
+                SolveTask right = new SolveTask(matrix, fixed, solved, featureCount, regularization,
+                                                mid, end);
+                invokeAll(left, right);
+                return left.join() + right.join();
+            }
+
+            int k = featureCount;
+            double[] gram = new double[k * k];
+            double[] rhs = new double[k];
+            double sse = 0;
+            for (int r = start; r < end; r++) {
+                int rs = matrix.getRowStart(r);
+                int re = matrix.getRowEnd(r);
+                int xoff = r * k;
+                if (rs == re) {
+                    Arrays.fill(solved, xoff, xoff + k, 0);
+                    continue;
+                }
+
+                // accumulate the lower triangle of Y'Y and Y'r
+                Arrays.fill(gram, 0);
+                Arrays.fill(rhs, 0);
+                for (int p = rs; p < re; p++) {
+                    int yoff = matrix.getEntryColumn(p) * k;
+                    double v = matrix.getEntryValue(p);
+                    for (int a = 0; a < k; a++) {
+                        double ya = fixed[yoff + a];
+                        rhs[a] += v * ya;
+                        int row = a * k;
+                        for (int b = 0; b <= a; b++) {
+                            gram[row + b] += ya * fixed[yoff + b];
+                        }
+                    }
+                }
+                double lambda = regularization * (re - rs);
+                for (int a = 0; a < k; a++) {
+                    gram[a * k + a] += lambda;
+                }
+                solveCholesky(gram, rhs, k);
+                System.arraycopy(rhs, 0, solved, xoff, k);
+
+                for (int p = rs; p < re; p++) {
+                    int yoff = matrix.getEntryColumn(p) * k;
+                    double pred = 0;
+                    for (int a = 0; a < k; a++) {
+                        pred += rhs[a] * fixed[yoff + a];
+                    }
+                    double err = matrix.getEntryValue(p) - pred;
+                    sse += err * err;
+                }
+            }
+            return sse;
+        }
+    }
+
+    /**
+     * Solve a symmetric positive definite system in place by Cholesky decomposition.
+     * @param a The row-major {@code k} by {@code k} matrix; only its lower triangle is read, and it
+     *          is overwritten with the Cholesky factor.
+     * @param b The right-hand side, overwritten with the solution.
+     * @param k The size of the system.
+     */
+    static void solveCholesky(double[] a, double[] b, int k) {
+        // factor A = L L'
+        for (int j = 0; j < k; j++) {
+            int rj = j * k;
+            double d = a[rj + j];
+            for (int m = 0; m < j; m++) {
+                d -= a[rj + m] * a[rj + m];
+            }
+            d = Math.sqrt(d);
+            a[rj + j] = d;
+            for (int i = j + 1; i < k; i++) {
+                int ri = i * k;
+                double s = a[ri + j];
+                for (int m = 0; m < j; m++) {
+                    s -= a[ri + m] * a[rj + m];
+                }
+                a[ri + j] = s / d;
+            }
+        }
+        // forward substitution, L y = b
+        for (int i = 0; i < k; i++) {
+            int ri = i * k;
+            double s = b[i];
+            for (int m = 0; m < i; m++) {
+                s -= a[ri + m] * b[m];
+            }
+            b[i] = s / a[ri + i];
+        }
+        // back substitution, L' x = y
+        for (int i = k - 1; i >= 0; i--) {
+            double s = b[i];
+            for (int m = i + 1; m < k; m++) {
+                s -= a[m * k + i] * b[m];
+            }
+            b[i] = s / a[i * k + i];
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.lenskit.mooc.svd;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SVD solver that copies the residuals into a dense matrix, computes its full decomposition, and
+ * truncates it.  It needs memory for the whole user-item matrix, so it is only suitable for small
+ * data sets.
+ */
+public class DenseSVDSolver implements SVDSolver {
+    private static final Logger logger = LoggerFactory.getLogger(DenseSVDSolver.class);
+
+    @Override
+    public SVDModel decompose(ResidualMatrix residuals, int featureCount) {
+        logger.info("creating {} by {} rating matrix",
+                    residuals.getRowCount(), residuals.getColumnCount());
+        RealMatrix matrix = residuals.toDenseMatrix();
+
+        // compute its factorization
+        logger.info("factorizing matrix");
+        SingularValueDecomposition svd = new SingularValueDecomposition(matrix);
+        logger.info("decomposed matrix has rank {}", svd.getRank());
+
+        // truncate the decomposed matrix
+        RealMatrix userMatrix = svd.getU();
+        RealMatrix itemMatrix = svd.getV();
+        RealVector weights = new ArrayRealVector(svd.getSingularValues());
+        if (featureCount > 0) {
+            logger.info("truncating matrix to {} features", featureCount);
+            // Use the getSubMatrix method to truncate the user and item matrices
+            userMatrix = userMatrix.getSubMatrix(0, userMatrix.getRowDimension() - 1,
+                                                 0, featureCount - 1);
+            itemMatrix = itemMatrix.getSubMatrix(0, itemMatrix.getRowDimension() - 1,
+                                                 0, featureCount - 1);
+            weights = weights.getSubVector(0, featureCount);
+        }
+
+        return new SVDModel(residuals.getUserIndex(), residuals.getItemIndex(),
+                            userMatrix, itemMatrix,
+                            weights);
+    }
+}
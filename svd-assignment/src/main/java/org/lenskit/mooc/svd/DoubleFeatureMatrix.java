@@ -0,0 +1,171 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nullable;
+import java.nio.DoubleBuffer;
+
+/**
+ * Feature matrix stored in double precision.
+ */
+class DoubleFeatureMatrix extends FeatureMatrix {
+    private static final long serialVersionUID = 1L;
+
+    private transient DoubleBuffer values;
+    /**
+     * The array behind the buffer of a matrix in memory, read directly in the inner loops (a buffer
+     * access costs a good deal more than an array access); {@code null} for a mapped matrix.
+     */
+    @Nullable
+    private final double[] array;
+
+    /**
+     * Create a matrix backed by an array.
+     * @param values The row-major values.
+     * @param k The number of features.
+     */
+    DoubleFeatureMatrix(double[] values, int k) {
+        this(DoubleBuffer.wrap(values), k);
+    }
+
+    /**
+     * Create a matrix backed by a buffer.  Its contents are used from index 0, regardless of its
+     * position, and must not change.
+     * @param values The row-major values.
+     * @param k The number of features.
+     */
+    DoubleFeatureMatrix(DoubleBuffer values, int k) {
+        super(k > 0 ? values.capacity() / k : 0, k);
+        Preconditions.checkArgument(values.capacity() == getRowCount() * k,
+                                    "matrix size %s is not a multiple of %s", values.capacity(), k);
+        this.values = values.duplicate();
+        if (values.hasArray() && values.arrayOffset() == 0
+                && values.array().length == values.capacity()) {
+            array = values.array();
+        } else {
+            array = null;
+        }
+    }
+
+    @Override
+    Encoding getEncoding() {
+        return Encoding.DOUBLE;
+    }
+
+    @Override
+    long getStorageSize() {
+        return 8L * values.capacity();
+    }
+
+    /**
+     * Get a read-only view of the values.
+     * @return The row-major values.
+     */
+    DoubleBuffer getValues() {
+        return values.asReadOnlyBuffer();
+    }
+
+    @Override
+    void getRow(int row, double[] out, int offset) {
+        int k = getFeatureCount();
+        if (array != null) {
+            System.arraycopy(array, row * k, out, offset, k);
+        } else {
+            DoubleBuffer view = values.duplicate();
+            view.position(row * k);
+            view.get(out, offset, k);
+        }
+    }
+
+    @Override
+    double dot(int row, double[] vector) {
+        int k = getFeatureCount();
+        int off = row * k;
+        double sum = 0;
+        if (array != null) {
+            for (int f = 0; f < k; f++) {
+                sum += vector[f] * array[off + f];
+            }
+        } else {
+            for (int f = 0; f < k; f++) {
+                sum += vector[f] * values.get(off + f);
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    void dotAll(double[] vector, double[] out) {
+        int nrows = getRowCount();
+        if (array != null) {
+            dotRows(vector, array, nrows, out, 0);
+            return;
+        }
+        // copy a mapped matrix's rows out a block at a time, so the loop still reads an array
+        int k = getFeatureCount();
+        double[] block = new double[Math.min(BLOCK_ROWS, nrows) * k];
+        DoubleBuffer view = values.duplicate();
+        view.position(0);
+        for (int start = 0; start < nrows; start += BLOCK_ROWS) {
+            int n = Math.min(BLOCK_ROWS, nrows - start);
+            view.get(block, 0, n * k);
+            dotRows(vector, block, n, out, start);
+        }
+    }
+
+    /**
+     * Multiply rows by a vector.
+     * @param vector The vector.
+     * @param rows The row-major values.
+     * @param nrows The number of rows to multiply.
+     * @param out The output array.
+     * @param outOffset Where in {@code out} to put the first row's result.
+     */
+    private static void dotRows(double[] vector, double[] rows, int nrows,
+                                double[] out, int outOffset) {
+        final int k = vector.length;
+        int r = 0;
+        for (; r + 4 <= nrows; r += 4) {
+            int off = r * k;
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int f = 0; f < k; f++) {
+                double v = vector[f];
+                s0 += v * rows[off + f];
+                s1 += v * rows[off + k + f];
+                s2 += v * rows[off + 2 * k + f];
+                s3 += v * rows[off + 3 * k + f];
+            }
+            out[outOffset + r] = s0;
+            out[outOffset + r + 1] = s1;
+            out[outOffset + r + 2] = s2;
+            out[outOffset + r + 3] = s3;
+        }
+        for (; r < nrows; r++) {
+            int off = r * k;
+            double sum = 0;
+            for (int f = 0; f < k; f++) {
+                sum += vector[f] * rows[off + f];
+            }
+            out[outOffset + r] = sum;
+        }
+    }
+
+    /**
+     * Serialize a mapped matrix as a copy in memory.
+     */
+    private Object writeReplace() {
+        if (array != null) {
+            return this;
+        }
+        double[] copy = new double[values.capacity()];
+        getValues().get(copy);
+        return new DoubleFeatureMatrix(copy, getFeatureCount());
+    }
+
+    /**
+     * Re-create the buffer over the deserialized array.
+     */
+    private Object readResolve() {
+        return new DoubleFeatureMatrix(array, getFeatureCount());
+    }
+}
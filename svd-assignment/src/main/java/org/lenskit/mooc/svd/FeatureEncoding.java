@@ -0,0 +1,22 @@
+package org.lenskit.mooc.svd;
+
+import org.grouplens.grapht.annotation.DefaultString;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling how the {@link SVDModel} stores its feature matrices: {@code "double"}
+ * (the default), {@code "float"} for half the memory, or {@code "int8"} for about an eighth,
+ * quantizing each row to bytes with its own scale.  The model is trained in double precision and
+ * converted when it is built.
+ */
+@Documented
+@Qualifier
+@Parameter(String.class)
+@DefaultString("double")
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface FeatureEncoding {
+}
@@ -0,0 +1,151 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+/**
+ * A row-major matrix of user or item features in an {@link SVDModel}.  The values may be stored in
+ * double or single precision, or quantized to bytes with a scale for each row; the scoring methods
+ * decode them on the fly.  A matrix can be backed by an array or by a buffer, such as a view of a
+ * {@linkplain SVDModelFile mapped file}.
+ */
+abstract class FeatureMatrix implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Number of rows {@link #dotAll(double[], double[])} copies out of a buffer at once.
+     */
+    static final int BLOCK_ROWS = 64;
+
+    /**
+     * The ways a feature matrix can be stored.
+     */
+    enum Encoding {
+        /**
+         * 8-byte doubles.
+         */
+        DOUBLE,
+        /**
+         * 4-byte floats.
+         */
+        FLOAT,
+        /**
+         * Signed bytes, scaled so each row's largest magnitude is 127, with a float scale per row.
+         */
+        INT8;
+
+        /**
+         * Look up an encoding by its (case-insensitive) name.
+         * @param name The name.
+         * @return The encoding.
+         * @throws IllegalArgumentException if there is no such encoding.
+         */
+        static Encoding fromName(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown feature encoding " + name, e);
+            }
+        }
+    }
+
+    private final int rowCount;
+    private final int featureCount;
+
+    FeatureMatrix(int nrows, int k) {
+        rowCount = nrows;
+        featureCount = k;
+    }
+
+    /**
+     * Encode a matrix.
+     * @param values The row-major values.
+     * @param k The number of features (columns).
+     * @param encoding The encoding to store them in.
+     * @return The matrix.
+     */
+    static FeatureMatrix create(double[] values, int k, Encoding encoding) {
+        Preconditions.checkArgument(k > 0 ? values.length % k == 0 : values.length == 0,
+                                    "matrix size %s is not a multiple of %s", values.length, k);
+        switch (encoding) {
+        case DOUBLE:
+            return new DoubleFeatureMatrix(values, k);
+        case FLOAT:
+            return FloatFeatureMatrix.create(values, k);
+        case INT8:
+            return QuantizedFeatureMatrix.create(values, k);
+        default:
+            throw new IllegalArgumentException("unknown encoding " + encoding);
+        }
+    }
+
+    /**
+     * Get the number of rows.
+     * @return The number of rows.
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get the number of features.
+     * @return The number of features (columns).
+     */
+    int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Get this matrix in another encoding.
+     * @param encoding The encoding.
+     * @return The matrix in that encoding (this matrix, if it already has it).
+     */
+    FeatureMatrix encode(Encoding encoding) {
+        if (encoding == getEncoding()) {
+            return this;
+        }
+        double[] values = new double[rowCount * featureCount];
+        for (int r = 0; r < rowCount; r++) {
+            getRow(r, values, r * featureCount);
+        }
+        return create(values, featureCount, encoding);
+    }
+
+    /**
+     * Get the encoding of the values.
+     * @return The encoding.
+     */
+    abstract Encoding getEncoding();
+
+    /**
+     * Get the size of the stored values.
+     * @return The number of bytes taken by the values and any scales.
+     */
+    abstract long getStorageSize();
+
+    /**
+     * Decode a row.
+     * @param row The row number.
+     * @param out The array to receive the row's values.
+     * @param offset The position in {@code out} of the row's first value.
+     */
+    abstract void getRow(int row, double[] out, int offset);
+
+    /**
+     * Compute the dot product of a row with a vector.
+     * @param row The row number.
+     * @param vector The vector, with one value per feature.
+     * @return The dot product.
+     */
+    abstract double dot(int row, double[] vector);
+
+    /**
+     * Multiply the matrix by a vector, reading the rows straight through, four at a time with
+     * independent sums, so the loop is bound by memory bandwidth rather than by the latency of each
+     * addition.
+     * @param vector The vector, with one value per feature.
+     * @param out An array with one element per row, to receive the dot products.
+     */
+    abstract void dotAll(double[] vector, double[] out);
+}
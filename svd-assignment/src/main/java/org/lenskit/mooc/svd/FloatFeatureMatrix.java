@@ -0,0 +1,178 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nullable;
+import java.nio.FloatBuffer;
+
+/**
+ * Feature matrix stored in single precision, taking half the space of doubles.  The dot products
+ * are still accumulated in double precision.
+ */
+class FloatFeatureMatrix extends FeatureMatrix {
+    private static final long serialVersionUID = 1L;
+
+    private transient FloatBuffer values;
+    /**
+     * The array behind the buffer of a matrix in memory; {@code null} for a mapped matrix.
+     */
+    @Nullable
+    private final float[] array;
+
+    /**
+     * Create a matrix backed by a buffer.  Its contents are used from index 0, regardless of its
+     * position, and must not change.
+     * @param values The row-major values.
+     * @param k The number of features.
+     */
+    FloatFeatureMatrix(FloatBuffer values, int k) {
+        super(k > 0 ? values.capacity() / k : 0, k);
+        Preconditions.checkArgument(values.capacity() == getRowCount() * k,
+                                    "matrix size %s is not a multiple of %s", values.capacity(), k);
+        this.values = values.duplicate();
+        if (values.hasArray() && values.arrayOffset() == 0
+                && values.array().length == values.capacity()) {
+            array = values.array();
+        } else {
+            array = null;
+        }
+    }
+
+    /**
+     * Round a matrix to single precision.
+     * @param values The row-major values.
+     * @param k The number of features.
+     * @return The matrix.
+     */
+    static FloatFeatureMatrix create(double[] values, int k) {
+        float[] floats = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            floats[i] = (float) values[i];
+        }
+        return new FloatFeatureMatrix(FloatBuffer.wrap(floats), k);
+    }
+
+    @Override
+    Encoding getEncoding() {
+        return Encoding.FLOAT;
+    }
+
+    @Override
+    long getStorageSize() {
+        return 4L * values.capacity();
+    }
+
+    /**
+     * Get a read-only view of the values.
+     * @return The row-major values.
+     */
+    FloatBuffer getValues() {
+        return values.asReadOnlyBuffer();
+    }
+
+    @Override
+    void getRow(int row, double[] out, int offset) {
+        int k = getFeatureCount();
+        int off = row * k;
+        if (array != null) {
+            for (int f = 0; f < k; f++) {
+                out[offset + f] = array[off + f];
+            }
+        } else {
+            for (int f = 0; f < k; f++) {
+                out[offset + f] = values.get(off + f);
+            }
+        }
+    }
+
+    @Override
+    double dot(int row, double[] vector) {
+        int k = getFeatureCount();
+        int off = row * k;
+        double sum = 0;
+        if (array != null) {
+            for (int f = 0; f < k; f++) {
+                sum += vector[f] * array[off + f];
+            }
+        } else {
+            for (int f = 0; f < k; f++) {
+                sum += vector[f] * values.get(off + f);
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    void dotAll(double[] vector, double[] out) {
+        int nrows = getRowCount();
+        if (array != null) {
+            dotRows(vector, array, nrows, out, 0);
+            return;
+        }
+        int k = getFeatureCount();
+        float[] block = new float[Math.min(BLOCK_ROWS, nrows) * k];
+        FloatBuffer view = values.duplicate();
+        view.position(0);
+        for (int start = 0; start < nrows; start += BLOCK_ROWS) {
+            int n = Math.min(BLOCK_ROWS, nrows - start);
+            view.get(block, 0, n * k);
+            dotRows(vector, block, n, out, start);
+        }
+    }
+
+    /**
+     * Multiply rows by a vector.
+     * @param vector The vector.
+     * @param rows The row-major values.
+     * @param nrows The number of rows to multiply.
+     * @param out The output array.
+     * @param outOffset Where in {@code out} to put the first row's result.
+     */
+    private static void dotRows(double[] vector, float[] rows, int nrows,
+                                double[] out, int outOffset) {
+        final int k = vector.length;
+        int r = 0;
+        for (; r + 4 <= nrows; r += 4) {
+            int off = r * k;
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int f = 0; f < k; f++) {
+                double v = vector[f];
+                s0 += v * rows[off + f];
+                s1 += v * rows[off + k + f];
+                s2 += v * rows[off + 2 * k + f];
+                s3 += v * rows[off + 3 * k + f];
+            }
+            out[outOffset + r] = s0;
+            out[outOffset + r + 1] = s1;
+            out[outOffset + r + 2] = s2;
+            out[outOffset + r + 3] = s3;
+        }
+        for (; r < nrows; r++) {
+            int off = r * k;
+            double sum = 0;
+            for (int f = 0; f < k; f++) {
+                sum += vector[f] * rows[off + f];
+            }
+            out[outOffset + r] = sum;
+        }
+    }
+
+    /**
+     * Serialize a mapped matrix as a copy in memory.
+     */
+    private Object writeReplace() {
+        if (array != null) {
+            return this;
+        }
+        float[] copy = new float[values.capacity()];
+        getValues().get(copy);
+        return new FloatFeatureMatrix(FloatBuffer.wrap(copy), getFeatureCount());
+    }
+
+    /**
+     * Re-create the buffer over the deserialized array.
+     */
+    private Object readResolve() {
+        return new FloatFeatureMatrix(FloatBuffer.wrap(array), getFeatureCount());
+    }
+}
@@ -0,0 +1,142 @@
+package org.lenskit.mooc.svd;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.LenskitRecommenderEngineBuilder;
+import org.lenskit.api.ItemRecommender;
+import org.lenskit.bias.BiasModel;
+import org.lenskit.config.ConfigHelpers;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.CommonTypes;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how the {@link ItemFactorIndex} trades recall for speed.  It trains the configured SVD
+ * recommender, computes every user's exact top-N list with {@link SVDItemRecommender}, and then
+ * the same lists with {@link IndexedSVDItemRecommender} at several probe counts, reporting the
+ * fraction of the exact lists recovered and the time per user.
+ *
+ * <p>Usage: {@code IndexEvaluation [-n N] [--probes P1,P2,...] [--partitions K] [--seed SEED]
+ * DATA CONFIG...}
+ */
+public class IndexEvaluation {
+    public static void main(String[] args) throws Exception {
+        int listSize = 10;
+        int partitions = 0;
+        String probeList = "1,2,4,8,16,32";
+        int seed = 42;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-n":
+                listSize = Integer.parseInt(args[++i]);
+                break;
+            case "--probes":
+                probeList = args[++i];
+                break;
+            case "--partitions":
+                partitions = Integer.parseInt(args[++i]);
+                break;
+            case "--seed":
+                seed = Integer.parseInt(args[++i]);
+                break;
+            default:
+                files.add(args[i]);
+            }
+        }
+        if (files.size() < 2) {
+            System.err.println("usage: IndexEvaluation [-n N] [--probes P1,P2,...] [--partitions K]"
+                               + " [--seed SEED] DATA CONFIG...");
+            System.exit(2);
+        }
+
+        DataAccessObject dao = StaticDataSource.load(Paths.get(files.get(0))).get();
+        LenskitRecommenderEngineBuilder builder = LenskitRecommenderEngine.newBuilder();
+        for (String file: files.subList(1, files.size())) {
+            builder.addConfiguration(ConfigHelpers.load(new File(file)));
+        }
+        LenskitConfiguration exactConfig = new LenskitConfiguration();
+        exactConfig.bind(ItemRecommender.class).to(SVDItemRecommender.class);
+        builder.addConfiguration(exactConfig);
+        LenskitRecommender rec = builder.build(dao).createRecommender(dao);
+        try {
+            SVDModel model = rec.get(SVDModel.class);
+            BiasModel bias = rec.get(BiasModel.class);
+            ModelItemBiases itemBiases = rec.get(ModelItemBiases.class);
+            // the recommenders' superclass only takes the old DAO interfaces
+            @SuppressWarnings("deprecation")
+            org.lenskit.data.dao.UserEventDAO events =
+                    rec.get(org.lenskit.data.dao.UserEventDAO.class);
+            @SuppressWarnings("deprecation")
+            org.lenskit.data.dao.ItemDAO items = rec.get(org.lenskit.data.dao.ItemDAO.class);
+            SVDItemScorer scorer = rec.get(SVDItemScorer.class);
+            long[] users = dao.getEntityIds(CommonTypes.USER).toLongArray();
+
+            long start = System.nanoTime();
+            ItemFactorIndex index =
+                    new ItemFactorIndexBuilder(model, bias, partitions, seed).get();
+            System.out.format("built index of %d items in %d partitions in %.1f ms%n",
+                              model.getItemIndexMapping().size(), index.getPartitionCount(),
+                              (System.nanoTime() - start) / 1.0e6);
+
+            List<LongSet> exact = new ArrayList<>(users.length);
+            ItemRecommender exactRec = rec.getItemRecommender();
+            // one untimed pass, so the exact timing is not charged with warming up
+            for (long user: users) {
+                exactRec.recommend(user, listSize);
+            }
+            start = System.nanoTime();
+            for (long user: users) {
+                exact.add(new LongOpenHashSet(exactRec.recommend(user, listSize)));
+            }
+            double exactTime = (System.nanoTime() - start) / 1.0e6 / users.length;
+
+            System.out.format("%8s %10s %12s %10s%n",
+                              "probes", "recall@" + listSize, "candidates", "ms/user");
+            System.out.format("%8s %10.4f %12d %10.4f%n", "exact", 1.0,
+                              model.getItemIndexMapping().size(), exactTime);
+            for (String p: probeList.split(",")) {
+                int probes = Integer.parseInt(p.trim());
+                IndexedSVDItemRecommender indexed =
+                        new IndexedSVDItemRecommender(events, items, scorer, model, bias,
+                                                      itemBiases, index, probes);
+                List<List<Long>> lists = new ArrayList<>(users.length);
+                start = System.nanoTime();
+                for (long user: users) {
+                    lists.add(indexed.recommend(user, listSize));
+                }
+                double time = (System.nanoTime() - start) / 1.0e6 / users.length;
+
+                long found = 0;
+                long wanted = 0;
+                long candidates = 0;
+                for (int u = 0; u < users.length; u++) {
+                    LongSet truth = exact.get(u);
+                    for (Long item: lists.get(u)) {
+                        if (truth.contains(item)) {
+                            found += 1;
+                        }
+                    }
+                    wanted += truth.size();
+                    int row = model.getUserIndexMapping().tryGetIndex(users[u]);
+                    if (row >= 0) {
+                        candidates += index.getCandidateRows(model, row, probes).length;
+                    }
+                }
+                System.out.format("%8d %10.4f %12d %10.4f%n", probes,
+                                  wanted > 0 ? (double) found / wanted : 1.0,
+                                  candidates / users.length, time);
+            }
+        } finally {
+            rec.close();
+        }
+    }
+}
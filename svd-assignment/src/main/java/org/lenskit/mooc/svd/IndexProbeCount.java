@@ -0,0 +1,21 @@
+package org.lenskit.mooc.svd;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling how many partitions of the {@linkplain ItemFactorIndex item factor index}
+ * are searched for each user.  More partitions find more of the true top items, at the cost of
+ * scoring more of them.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(8)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface IndexProbeCount {
+}
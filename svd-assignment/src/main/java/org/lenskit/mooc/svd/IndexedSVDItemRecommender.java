@@ -0,0 +1,44 @@
+package org.lenskit.mooc.svd;
+
+import org.lenskit.bias.BiasModel;
+
+import javax.inject.Inject;
+
+/**
+ * SVD top-N recommender that only scores the items an {@link ItemFactorIndex} finds for the user,
+ * instead of the whole catalog.  The candidates are scored exactly, bias terms included, so the
+ * recommendations can only differ from {@link SVDItemRecommender}'s by missing some top items.
+ */
+public class IndexedSVDItemRecommender extends SVDItemRecommender {
+    private final SVDModel model;
+    private final ItemFactorIndex index;
+    private final int probeCount;
+
+    /**
+     * Construct an indexed SVD item recommender.
+     * @param events The user event DAO.
+     * @param items The item DAO.
+     * @param scorer The SVD item scorer.
+     * @param m The SVD model.
+     * @param bias The baseline bias model.
+     * @param ibias The model's item biases.
+     * @param index The index of the model's item features.
+     * @param nprobe The number of index partitions to search.
+     */
+    @Inject
+    @SuppressWarnings("deprecation") // TopNItemRecommender only takes the old DAO interfaces
+    public IndexedSVDItemRecommender(org.lenskit.data.dao.UserEventDAO events,
+                                     org.lenskit.data.dao.ItemDAO items, SVDItemScorer scorer,
+                                     SVDModel m, BiasModel bias, ModelItemBiases ibias,
+                                     ItemFactorIndex index, @IndexProbeCount int nprobe) {
+        super(events, items, scorer, m, bias, ibias);
+        model = m;
+        this.index = index;
+        probeCount = nprobe;
+    }
+
+    @Override
+    protected int[] getCandidateRows(int userRow) {
+        return index.getCandidateRows(model, userRow, probeCount);
+    }
+}
@@ -0,0 +1,24 @@
+package org.lenskit.mooc.svd;
+
+import org.grouplens.grapht.annotation.DefaultNull;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Qualifier for a previously-trained model to start training from, such as yesterday's model when
+ * retraining daily.  There is none unless one is bound:
+ *
+ * <pre>
+ * bind (InitialModel, SVDModel) to previousModel
+ * </pre>
+ *
+ * @see ALSSolver
+ */
+@Documented
+@Qualifier
+@DefaultNull
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface InitialModel {
+}
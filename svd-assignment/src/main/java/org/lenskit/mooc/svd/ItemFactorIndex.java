@@ -0,0 +1,118 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Preconditions;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.inject.Shareable;
+
+import java.io.Serializable;
+
+/**
+ * Approximate maximum inner product search index over the item features of an {@link SVDModel}.
+ *
+ * <p>A user's score for an item, less the user's own baseline, is the inner product of
+ * {@code [u, 1]} with {@code [v, b]}, where {@code u} and {@code v} are their feature rows and
+ * {@code b} is the item's bias.  Each item's {@code [v, b]} gets one more coordinate that brings
+ * every item to the same length, so the items with the largest inner products with a query are
+ * exactly those at the smallest angle to it.  The lengthened item vectors are partitioned by
+ * spherical k-means, and a search scores the partition centroids and returns the items in the
+ * closest few partitions, to be scored exactly.
+ *
+ * <p>The index is a separate component from the model, but is stored with it in a trained
+ * recommender.
+ *
+ * @see ItemFactorIndexBuilder
+ * @see IndexedSVDItemRecommender
+ */
+@Shareable
+@DefaultProvider(ItemFactorIndexBuilder.class)
+public class ItemFactorIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int featureCount;
+    private final int partitionCount;
+    private final double[] centroids;
+    private final int[] listStart;
+    private final int[] listItems;
+
+    /**
+     * Construct an index.
+     * @param k The number of features in the model.
+     * @param centroids The unit centroids of the partitions, row-major, with {@code k + 2} values
+     *                  each (the features, the bias, and the length correction).
+     * @param listStart The start of each partition's items in {@code listItems}, with a final
+     *                  element holding the number of items.
+     * @param listItems The item row numbers in each partition, back to back.
+     */
+    ItemFactorIndex(int k, double[] centroids, int[] listStart, int[] listItems) {
+        int nparts = listStart.length - 1;
+        Preconditions.checkArgument(centroids.length == nparts * (k + 2),
+                                    "centroid array has incorrect size (%s != %s)",
+                                    centroids.length, nparts * (k + 2));
+        featureCount = k;
+        partitionCount = nparts;
+        this.centroids = centroids;
+        this.listStart = listStart;
+        this.listItems = listItems;
+    }
+
+    /**
+     * Get the number of partitions.
+     * @return The number of partitions.
+     */
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * Get the candidate items for a user.
+     * @param model The model the index was built from.
+     * @param userRow The user's row number in the model.
+     * @param probes The number of partitions to search.
+     * @return The row numbers of the items in the {@code probes} partitions whose centroids have
+     *         the largest inner products with the user's query.
+     */
+    public int[] getCandidateRows(SVDModel model, int userRow, int probes) {
+        Preconditions.checkArgument(model.getFeatureCount() == featureCount,
+                                    "model has incorrect feature count");
+        final int k = featureCount;
+        final int dim = k + 2;
+        double[] user = model.getUserFeatures(userRow);
+        int nprobe = Math.min(Math.max(probes, 1), partitionCount);
+
+        // keep the best partitions in decreasing order of score; nprobe is small
+        int[] best = new int[nprobe];
+        double[] bestScores = new double[nprobe];
+        int nbest = 0;
+        for (int p = 0; p < partitionCount; p++) {
+            int coff = p * dim;
+            double s = centroids[coff + k];
+            for (int f = 0; f < k; f++) {
+                s += user[f] * centroids[coff + f];
+            }
+            if (nbest < nprobe || s > bestScores[nbest - 1]) {
+                int pos = nbest < nprobe ? nbest++ : nbest - 1;
+                while (pos > 0 && bestScores[pos - 1] < s) {
+                    best[pos] = best[pos - 1];
+                    bestScores[pos] = bestScores[pos - 1];
+                    pos -= 1;
+                }
+                best[pos] = p;
+                bestScores[pos] = s;
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < nbest; i++) {
+            count += listStart[best[i] + 1] - listStart[best[i]];
+        }
+        int[] rows = new int[count];
+        int pos = 0;
+        for (int i = 0; i < nbest; i++) {
+            int start = listStart[best[i]];
+            int len = listStart[best[i] + 1] - start;
+            System.arraycopy(listItems, start, rows, pos, len);
+            pos += len;
+        }
+        return rows;
+    }
+}
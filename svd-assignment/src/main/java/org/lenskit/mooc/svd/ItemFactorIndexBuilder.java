@@ -0,0 +1,178 @@
+package org.lenskit.mooc.svd;
+
+import org.lenskit.bias.BiasModel;
+import org.lenskit.inject.Transient;
+import org.lenskit.util.keys.KeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.Random;
+
+/**
+ * Builds the {@link ItemFactorIndex} for a trained SVD model.  The partition centroids are trained
+ * by spherical k-means on a random sample of the items, then every item is put in the partition
+ * of its closest centroid.
+ */
+public class ItemFactorIndexBuilder implements Provider<ItemFactorIndex> {
+    private static final Logger logger = LoggerFactory.getLogger(ItemFactorIndexBuilder.class);
+    /**
+     * Number of k-means iterations over the sample.
+     */
+    private static final int KMEANS_ITERATIONS = 10;
+    /**
+     * Maximum number of sampled items per partition for training the centroids.
+     */
+    private static final int SAMPLE_PER_PARTITION = 64;
+
+    private final SVDModel model;
+    private final BiasModel baseline;
+    private final int partitionCount;
+    private final int seed;
+
+    /**
+     * Construct the index builder.
+     * @param model The SVD model to index.
+     * @param bias The baseline bias model, whose item biases are indexed with the features.
+     * @param nparts The number of partitions, or 0 to use the square root of the number of items.
+     * @param seed The random seed for sampling items.
+     */
+    @Inject
+    public ItemFactorIndexBuilder(@Transient SVDModel model,
+                                  @Transient BiasModel bias,
+                                  @IndexPartitionCount int nparts,
+                                  @RandomSeed int seed) {
+        this.model = model;
+        baseline = bias;
+        partitionCount = nparts;
+        this.seed = seed;
+    }
+
+    @Override
+    public ItemFactorIndex get() {
+        KeyIndex items = model.getItemIndexMapping();
+        final int nitems = items.size();
+        final int k = model.getFeatureCount();
+        final int dim = k + 2;
+        int nparts = partitionCount > 0 ? partitionCount : (int) Math.round(Math.sqrt(nitems));
+        nparts = Math.max(1, Math.min(nparts, nitems));
+        logger.info("indexing {} items with {} features in {} partitions", nitems, k, nparts);
+        Random random = new Random(seed);
+
+        // lay out [v, b] for each item, then lengthen them all to the longest and scale to unit
+        double[] points = new double[nitems * dim];
+        double[] squares = new double[nitems];
+        double maxSquare = 0;
+        for (int i = 0; i < nitems; i++) {
+            int off = i * dim;
+            model.getItemFeatures(i, points, off);
+            points[off + k] = baseline.getItemBias(items.getKey(i));
+            double sq = 0;
+            for (int f = 0; f <= k; f++) {
+                sq += points[off + f] * points[off + f];
+            }
+            squares[i] = sq;
+            maxSquare = Math.max(maxSquare, sq);
+        }
+        double scale = maxSquare > 0 ? 1 / Math.sqrt(maxSquare) : 1;
+        for (int i = 0; i < nitems; i++) {
+            int off = i * dim;
+            points[off + k + 1] = Math.sqrt(Math.max(maxSquare - squares[i], 0));
+            for (int f = 0; f < dim; f++) {
+                points[off + f] *= scale;
+            }
+        }
+
+        // sample the training items with a partial shuffle
+        int[] order = new int[nitems];
+        for (int i = 0; i < nitems; i++) {
+            order[i] = i;
+        }
+        int nsample = (int) Math.min((long) nparts * SAMPLE_PER_PARTITION, nitems);
+        for (int i = 0; i < nsample; i++) {
+            int j = i + random.nextInt(nitems - i);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+
+        // start from the first sampled items, and refine the centroids on the sample
+        double[] centroids = new double[nparts * dim];
+        for (int p = 0; p < nparts; p++) {
+            System.arraycopy(points, order[p] * dim, centroids, p * dim, dim);
+        }
+        int[] assignment = new int[nitems];
+        for (int iter = 0; iter < KMEANS_ITERATIONS; iter++) {
+            double[] sums = new double[nparts * dim];
+            int[] counts = new int[nparts];
+            for (int s = 0; s < nsample; s++) {
+                int i = order[s];
+                int p = closest(points, i, centroids, nparts, dim);
+                assignment[i] = p;
+                counts[p] += 1;
+                for (int f = 0; f < dim; f++) {
+                    sums[p * dim + f] += points[i * dim + f];
+                }
+            }
+            for (int p = 0; p < nparts; p++) {
+                if (counts[p] == 0) {
+                    // restart an empty partition at a random sampled item
+                    int i = order[random.nextInt(nsample)];
+                    System.arraycopy(points, i * dim, centroids, p * dim, dim);
+                } else {
+                    double sq = 0;
+                    for (int f = 0; f < dim; f++) {
+                        sq += sums[p * dim + f] * sums[p * dim + f];
+                    }
+                    double norm = Math.sqrt(sq);
+                    for (int f = 0; f < dim; f++) {
+                        centroids[p * dim + f] = norm > 0 ? sums[p * dim + f] / norm : 0;
+                    }
+                }
+            }
+        }
+
+        // put every item in its partition
+        int[] listStart = new int[nparts + 1];
+        for (int i = 0; i < nitems; i++) {
+            assignment[i] = closest(points, i, centroids, nparts, dim);
+            listStart[assignment[i] + 1] += 1;
+        }
+        int largest = 0;
+        for (int p = 0; p < nparts; p++) {
+            largest = Math.max(largest, listStart[p + 1]);
+            listStart[p + 1] += listStart[p];
+        }
+        int[] next = new int[nparts];
+        System.arraycopy(listStart, 0, next, 0, nparts);
+        int[] listItems = new int[nitems];
+        for (int i = 0; i < nitems; i++) {
+            listItems[next[assignment[i]]++] = i;
+        }
+        logger.info("built index with {} partitions (largest has {} items)", nparts, largest);
+
+        return new ItemFactorIndex(k, centroids, listStart, listItems);
+    }
+
+    /**
+     * Find the centroid with the largest inner product with a point.
+     */
+    private static int closest(double[] points, int i, double[] centroids, int nparts, int dim) {
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        int off = i * dim;
+        for (int p = 0; p < nparts; p++) {
+            int coff = p * dim;
+            double s = 0;
+            for (int f = 0; f < dim; f++) {
+                s += points[off + f] * centroids[coff + f];
+            }
+            if (s > bestScore) {
+                best = p;
+                bestScore = s;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,62 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Preconditions;
+import org.grouplens.lenskit.iterative.RegularizationTerm;
+import org.lenskit.inject.Shareable;
+
+import javax.inject.Inject;
+import java.io.Serializable;
+
+/**
+ * Folds users in by fitting their features to their observed ratings only, the same way
+ * {@link ALSSolver} fits each user: the features {@code x} solve
+ * {@code (Y'Y + lambda n I) x = Y'r}, where {@code Y} holds the features of the {@code n} items the
+ * user rated.  This is the fold-in to use with models trained by ALS.
+ */
+@Shareable
+public class LeastSquaresFoldIn implements UserFoldIn, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final double regularization;
+
+    /**
+     * Construct a least-squares fold-in.
+     * @param reg The regularization term, scaled by the user's rating count.
+     */
+    @Inject
+    public LeastSquaresFoldIn(@RegularizationTerm double reg) {
+        Preconditions.checkArgument(reg > 0, "regularization term must be positive");
+        regularization = reg;
+    }
+
+    @Override
+    public double[] foldIn(SVDModel model, int[] itemRows, double[] residuals) {
+        int k = model.getFeatureCount();
+        double[] features = new double[k];
+        double[] gram = new double[k * k];
+        double[] rhs = new double[k];
+        if (itemRows.length == 0) {
+            return rhs;
+        }
+
+        // accumulate the lower triangle of Y'Y and Y'r
+        for (int j = 0; j < itemRows.length; j++) {
+            model.getItemFeatures(itemRows[j], features, 0);
+            double r = residuals[j];
+            for (int a = 0; a < k; a++) {
+                double ya = features[a];
+                rhs[a] += r * ya;
+                int row = a * k;
+                for (int b = 0; b <= a; b++) {
+                    gram[row + b] += ya * features[b];
+                }
+            }
+        }
+        double lambda = regularization * itemRows.length;
+        for (int a = 0; a < k; a++) {
+            gram[a * k + a] += lambda;
+        }
+        ALSSolver.solveCholesky(gram, rhs, k);
+        return rhs;
+    }
+}
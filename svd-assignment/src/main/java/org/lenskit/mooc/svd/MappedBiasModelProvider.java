@@ -0,0 +1,28 @@
+package org.lenskit.mooc.svd;
+
+import org.lenskit.bias.BiasModel;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Provides the baseline stored in a {@linkplain SVDModelFile model file}, so the scores of a mapped
+ * model use the same biases it was trained with.
+ */
+public class MappedBiasModelProvider implements Provider<BiasModel> {
+    private final SVDModelFile file;
+
+    /**
+     * Construct the provider.
+     * @param file The opened model file.
+     */
+    @Inject
+    public MappedBiasModelProvider(SVDModelFile file) {
+        this.file = file;
+    }
+
+    @Override
+    public BiasModel get() {
+        return file.getBiasModel();
+    }
+}
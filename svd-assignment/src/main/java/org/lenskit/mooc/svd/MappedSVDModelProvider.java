@@ -0,0 +1,26 @@
+package org.lenskit.mooc.svd;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Provides the SVD model by mapping it from a {@linkplain SVDModelFile model file} instead of
+ * training it.
+ */
+public class MappedSVDModelProvider implements Provider<SVDModel> {
+    private final SVDModelFile file;
+
+    /**
+     * Construct the provider.
+     * @param file The opened model file.
+     */
+    @Inject
+    public MappedSVDModelProvider(SVDModelFile file) {
+        this.file = file;
+    }
+
+    @Override
+    public SVDModel get() {
+        return file.getModel();
+    }
+}
@@ -0,0 +1,19 @@
+package org.lenskit.mooc.svd;
+
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter naming the {@linkplain SVDModelFile model file} to map the SVD model and baseline from.
+ * It has no default, and must be set when using {@link MappedSVDModelProvider} or
+ * {@link MappedBiasModelProvider}, which share the file opened by {@link SVDModelFileProvider}.
+ */
+@Documented
+@Qualifier
+@Parameter(String.class)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ModelFile {
+}
@@ -0,0 +1,52 @@
+package org.lenskit.mooc.svd;
+
+import org.lenskit.bias.BiasModel;
+import org.lenskit.inject.Shareable;
+import org.lenskit.inject.Transient;
+import org.lenskit.util.keys.KeyIndex;
+
+import javax.inject.Inject;
+import java.io.Serializable;
+
+/**
+ * The baseline item biases of the items in an {@link SVDModel}, by item row number, so that
+ * scoring the whole catalog can add them from an array.  It is built with the model, and shared by
+ * all recommenders from the engine.
+ */
+@Shareable
+public class ModelItemBiases implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] biases;
+
+    /**
+     * Look up the item biases.
+     * @param model The SVD model, whose item rows the biases are arranged by.
+     * @param bias The baseline bias model.
+     */
+    @Inject
+    public ModelItemBiases(@Transient SVDModel model, @Transient BiasModel bias) {
+        KeyIndex itemIndex = model.getItemIndexMapping();
+        biases = new double[itemIndex.size()];
+        for (int i = 0; i < biases.length; i++) {
+            biases[i] = bias.getItemBias(itemIndex.getKey(i));
+        }
+    }
+
+    /**
+     * Get the number of items.
+     * @return The number of item rows.
+     */
+    public int size() {
+        return biases.length;
+    }
+
+    /**
+     * Get an item's bias.
+     * @param itemRow The item's row number in the model.
+     * @return The item's baseline bias.
+     */
+    public double get(int itemRow) {
+        return biases[itemRow];
+    }
+}
@@ -0,0 +1,40 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Preconditions;
+import org.lenskit.inject.Shareable;
+
+import java.io.Serializable;
+
+/**
+ * Folds users in by projecting their residuals onto the item features, {@code u = r V S^-1}.  With
+ * the feature weights {@code S} applied, the user's features are just {@code r V}, the sum of the
+ * rated items' features scaled by the residuals.  This is exact for a decomposition of the full
+ * residual matrix, which treats unrated items as zero residuals: folding in a user who is in the
+ * model gives back their features.
+ *
+ * <p>The projection needs orthonormal item features, so it rejects models with
+ * {@linkplain SVDModel#hasUnitFeatureWeights() unit feature weights}, such as those trained by
+ * {@link ALSSolver}; use {@link LeastSquaresFoldIn} for them.
+ */
+@Shareable
+public class ProjectionFoldIn implements UserFoldIn, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public double[] foldIn(SVDModel model, int[] itemRows, double[] residuals) {
+        Preconditions.checkArgument(!model.hasUnitFeatureWeights(),
+                                    "model has unit feature weights (trained by ALS?), "
+                                            + "use LeastSquaresFoldIn to fold users in");
+        int k = model.getFeatureCount();
+        double[] features = new double[k];
+        double[] user = new double[k];
+        for (int j = 0; j < itemRows.length; j++) {
+            model.getItemFeatures(itemRows[j], features, 0);
+            double r = residuals[j];
+            for (int f = 0; f < k; f++) {
+                user[f] += r * features[f];
+            }
+        }
+        return user;
+    }
+}
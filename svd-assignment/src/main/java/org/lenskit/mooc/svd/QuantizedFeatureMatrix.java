@@ -0,0 +1,212 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * Feature matrix quantized to signed bytes, taking an eighth of the space of doubles (plus a float
+ * per row).  Each row is scaled so its largest magnitude maps to 127, and the value of feature
+ * {@code f} in row {@code r} is {@code scale[r] * q[r][f]}.  The dot products are computed on the
+ * bytes and scaled once per row.
+ */
+class QuantizedFeatureMatrix extends FeatureMatrix {
+    private static final long serialVersionUID = 1L;
+    private static final int LEVELS = 127;
+
+    private transient ByteBuffer values;
+    /**
+     * The array behind the buffer of a matrix in memory; {@code null} for a mapped matrix.
+     */
+    @Nullable
+    private final byte[] array;
+    private final float[] scales;
+
+    /**
+     * Create a matrix backed by a buffer.  Its contents are used from index 0, regardless of its
+     * position, and must not change.
+     * @param values The row-major quantized values.
+     * @param scales The scale of each row.
+     * @param k The number of features.
+     */
+    QuantizedFeatureMatrix(ByteBuffer values, float[] scales, int k) {
+        super(scales.length, k);
+        Preconditions.checkArgument(values.capacity() == scales.length * k,
+                                    "matrix has incorrect size (%s != %s)",
+                                    values.capacity(), scales.length * k);
+        this.values = values.duplicate();
+        if (values.hasArray() && values.arrayOffset() == 0
+                && values.array().length == values.capacity()) {
+            array = values.array();
+        } else {
+            array = null;
+        }
+        this.scales = scales;
+    }
+
+    /**
+     * Quantize a matrix.
+     * @param values The row-major values.
+     * @param k The number of features.
+     * @return The matrix.
+     */
+    static QuantizedFeatureMatrix create(double[] values, int k) {
+        int nrows = k > 0 ? values.length / k : 0;
+        byte[] bytes = new byte[values.length];
+        float[] scales = new float[nrows];
+        for (int r = 0; r < nrows; r++) {
+            int off = r * k;
+            double max = 0;
+            for (int f = 0; f < k; f++) {
+                max = Math.max(max, Math.abs(values[off + f]));
+            }
+            if (max == 0) {
+                continue;
+            }
+            float scale = (float) (max / LEVELS);
+            scales[r] = scale;
+            for (int f = 0; f < k; f++) {
+                long q = Math.round(values[off + f] / scale);
+                bytes[off + f] = (byte) Math.max(-LEVELS, Math.min(LEVELS, q));
+            }
+        }
+        return new QuantizedFeatureMatrix(ByteBuffer.wrap(bytes), scales, k);
+    }
+
+    @Override
+    Encoding getEncoding() {
+        return Encoding.INT8;
+    }
+
+    @Override
+    long getStorageSize() {
+        return values.capacity() + 4L * scales.length;
+    }
+
+    /**
+     * Get a read-only view of the quantized values.
+     * @return The row-major quantized values.
+     */
+    ByteBuffer getValues() {
+        return values.asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the row scales.
+     * @return The scale of each row (this must not be modified).
+     */
+    float[] getScales() {
+        return scales;
+    }
+
+    @Override
+    void getRow(int row, double[] out, int offset) {
+        int k = getFeatureCount();
+        int off = row * k;
+        double scale = scales[row];
+        if (array != null) {
+            for (int f = 0; f < k; f++) {
+                out[offset + f] = scale * array[off + f];
+            }
+        } else {
+            for (int f = 0; f < k; f++) {
+                out[offset + f] = scale * values.get(off + f);
+            }
+        }
+    }
+
+    @Override
+    double dot(int row, double[] vector) {
+        int k = getFeatureCount();
+        int off = row * k;
+        double sum = 0;
+        if (array != null) {
+            for (int f = 0; f < k; f++) {
+                sum += vector[f] * array[off + f];
+            }
+        } else {
+            for (int f = 0; f < k; f++) {
+                sum += vector[f] * values.get(off + f);
+            }
+        }
+        return sum * scales[row];
+    }
+
+    @Override
+    void dotAll(double[] vector, double[] out) {
+        int nrows = getRowCount();
+        if (array != null) {
+            dotRows(vector, array, scales, nrows, out, 0);
+            return;
+        }
+        int k = getFeatureCount();
+        byte[] block = new byte[Math.min(BLOCK_ROWS, nrows) * k];
+        ByteBuffer view = values.duplicate();
+        view.position(0);
+        for (int start = 0; start < nrows; start += BLOCK_ROWS) {
+            int n = Math.min(BLOCK_ROWS, nrows - start);
+            view.get(block, 0, n * k);
+            dotRows(vector, block, scales, n, out, start);
+        }
+    }
+
+    /**
+     * Multiply rows by a vector.
+     * @param vector The vector.
+     * @param rows The row-major quantized values.
+     * @param scales The scales of all rows.
+     * @param nrows The number of rows to multiply.
+     * @param out The output array.
+     * @param outOffset The number of the first row in {@code rows}; its scale and its result's
+     *                  position in {@code out}.
+     */
+    private static void dotRows(double[] vector, byte[] rows, float[] scales, int nrows,
+                                double[] out, int outOffset) {
+        final int k = vector.length;
+        int r = 0;
+        for (; r + 4 <= nrows; r += 4) {
+            int off = r * k;
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int f = 0; f < k; f++) {
+                double v = vector[f];
+                s0 += v * rows[off + f];
+                s1 += v * rows[off + k + f];
+                s2 += v * rows[off + 2 * k + f];
+                s3 += v * rows[off + 3 * k + f];
+            }
+            int row = outOffset + r;
+            out[row] = s0 * scales[row];
+            out[row + 1] = s1 * scales[row + 1];
+            out[row + 2] = s2 * scales[row + 2];
+            out[row + 3] = s3 * scales[row + 3];
+        }
+        for (; r < nrows; r++) {
+            int off = r * k;
+            double sum = 0;
+            for (int f = 0; f < k; f++) {
+                sum += vector[f] * rows[off + f];
+            }
+            out[outOffset + r] = sum * scales[outOffset + r];
+        }
+    }
+
+    /**
+     * Serialize a mapped matrix as a copy in memory.
+     */
+    private Object writeReplace() {
+        if (array != null) {
+            return this;
+        }
+        byte[] copy = new byte[values.capacity()];
+        getValues().get(copy);
+        return new QuantizedFeatureMatrix(ByteBuffer.wrap(copy), scales, getFeatureCount());
+    }
+
+    /**
+     * Re-create the buffer over the deserialized array.
+     */
+    private Object readResolve() {
+        return new QuantizedFeatureMatrix(ByteBuffer.wrap(array), scales, getFeatureCount());
+    }
+}
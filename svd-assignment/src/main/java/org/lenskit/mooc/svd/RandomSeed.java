@@ -0,0 +1,22 @@
+package org.lenskit.mooc.svd;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.lenskit.inject.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter for the seed of the random numbers used to train the model (the starting points of the
+ * {@linkplain RandomizedSVDSolver randomized} and {@linkplain ALSSolver ALS} solvers, and the items
+ * sampled to partition the {@linkplain ItemFactorIndexBuilder item factor index}), so that the
+ * same configuration and data always produce the same model and index.
+ */
+@Documented
+@Qualifier
+@Parameter(Integer.class)
+@DefaultInteger(42)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RandomSeed {
+}
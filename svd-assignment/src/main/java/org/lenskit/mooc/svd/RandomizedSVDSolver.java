@@ -0,0 +1,137 @@
+package org.lenskit.mooc.svd;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.Random;
+
+/**
+ * SVD solver that computes only the top singular vectors, working directly on the sparse residual
+ * matrix.  It uses a randomized range finder: the matrix is multiplied by a few more random vectors
+ * than the number of features, a few power iterations sharpen the subspace they span, and
+ * the matrix projected onto that subspace (which has only that many rows) is decomposed exactly.
+ * Memory and time are linear in the number of ratings plus the number of users and items, times
+ * the number of features.
+ *
+ * <p>If every feature is requested, or the matrix is so small that the subspace would cover most
+ * of it, this falls back to the {@linkplain DenseSVDSolver dense solver}.
+ */
+public class RandomizedSVDSolver implements SVDSolver {
+    private static final Logger logger = LoggerFactory.getLogger(RandomizedSVDSolver.class);
+    /**
+     * Number of random vectors beyond the number of features.
+     */
+    private static final int OVERSAMPLING = 10;
+    private static final int POWER_ITERATIONS = 4;
+    /**
+     * Relative size below which a column is treated as dependent on earlier columns.
+     */
+    private static final double EPSILON = 1.0e-10;
+
+    private final int seed;
+
+    /**
+     * Construct a randomized solver.
+     * @param seed The random seed for the range finder's starting vectors.
+     */
+    @Inject
+    public RandomizedSVDSolver(@RandomSeed int seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public SVDModel decompose(ResidualMatrix matrix, int featureCount) {
+        int nusers = matrix.getRowCount();
+        int nitems = matrix.getColumnCount();
+        int size = featureCount + OVERSAMPLING;
+        if (featureCount <= 0 || 2 * size > Math.min(nusers, nitems)) {
+            logger.info("using dense SVD for {} features of {} by {} matrix",
+                        featureCount, nusers, nitems);
+            return new DenseSVDSolver().decompose(matrix, featureCount);
+        }
+
+        logger.info("computing {} features of {} by {} matrix with {} ratings",
+                    featureCount, nusers, nitems, matrix.getEntryCount());
+        // find an orthonormal basis Q (by columns) for the range of the matrix
+        Random random = new Random(seed);
+        double[][] omega = new double[size][nitems];
+        for (double[] col: omega) {
+            for (int i = 0; i < nitems; i++) {
+                col[i] = random.nextGaussian();
+            }
+        }
+        double[][] basis = matrix.multiply(omega);
+        orthonormalize(basis);
+        for (int iter = 0; iter < POWER_ITERATIONS; iter++) {
+            double[][] itemBasis = matrix.multiplyTranspose(basis);
+            orthonormalize(itemBasis);
+            basis = matrix.multiply(itemBasis);
+            orthonormalize(basis);
+        }
+
+        // decompose the projected matrix B = Q^T A through its (items x size) transpose:
+        // B^T = W S X^T, so A ~ Q B = (Q X) S W^T
+        double[][] projected = matrix.multiplyTranspose(basis);
+        RealMatrix bt = new Array2DRowRealMatrix(nitems, size);
+        for (int a = 0; a < size; a++) {
+            for (int i = 0; i < nitems; i++) {
+                bt.setEntry(i, a, projected[a][i]);
+            }
+        }
+        SingularValueDecomposition svd = new SingularValueDecomposition(bt);
+        RealMatrix x = svd.getV().getSubMatrix(0, size - 1, 0, featureCount - 1);
+        RealMatrix itemMatrix = svd.getU().getSubMatrix(0, nitems - 1, 0, featureCount - 1);
+
+        RealMatrix userMatrix = new Array2DRowRealMatrix(nusers, featureCount);
+        for (int u = 0; u < nusers; u++) {
+            for (int j = 0; j < featureCount; j++) {
+                double v = 0;
+                for (int a = 0; a < size; a++) {
+                    v += basis[a][u] * x.getEntry(a, j);
+                }
+                userMatrix.setEntry(u, j, v);
+            }
+        }
+        ArrayRealVector weights = new ArrayRealVector(svd.getSingularValues(), 0, featureCount);
+
+        return new SVDModel(matrix.getUserIndex(), matrix.getItemIndex(),
+                            userMatrix, itemMatrix, weights);
+    }
+
+    /**
+     * Orthonormalize columns in place with modified Gram-Schmidt, applied twice for numerical
+     * stability.  Columns that are (numerically) dependent on earlier ones are zeroed.
+     */
+    private static void orthonormalize(double[][] cols) {
+        for (int j = 0; j < cols.length; j++) {
+            double[] col = cols[j];
+            double before = Math.sqrt(dot(col, col));
+            for (int pass = 0; pass < 2; pass++) {
+                for (int p = 0; p < j; p++) {
+                    double r = dot(col, cols[p]);
+                    for (int i = 0; i < col.length; i++) {
+                        col[i] -= r * cols[p][i];
+                    }
+                }
+            }
+            double norm = Math.sqrt(dot(col, col));
+            double scale = norm > before * EPSILON ? 1 / norm : 0;
+            for (int i = 0; i < col.length; i++) {
+                col[i] *= scale;
+            }
+        }
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,215 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.lenskit.util.keys.KeyIndex;
+
+import java.util.Arrays;
+
+/**
+ * A sparse user-item matrix of rating residuals (ratings minus their baseline), stored in
+ * compressed sparse row (CSR) form: the entries of row {@code u} are at positions
+ * {@code rowPtr[u]} (inclusive) to {@code rowPtr[u+1]} (exclusive) of the column index and value
+ * arrays, in increasing column order.  Missing entries are zero.
+ *
+ * <p>The {@linkplain #transpose() transpose} is the same data in compressed sparse column (CSC)
+ * form, for operations that work item by item.
+ *
+ * @see SVDModelBuilder
+ */
+public class ResidualMatrix {
+    private final KeyIndex userIndex;
+    private final KeyIndex itemIndex;
+    private final int[] rowPtr;
+    private final int[] colIdx;
+    private final float[] vals;
+    private ResidualMatrix transpose;
+
+    /**
+     * Construct a residual matrix.
+     * @param users The mapping between user IDs and row numbers.
+     * @param items The mapping between item IDs and column numbers.
+     * @param rowPtr The start of each row's entries, with a final element holding the number of
+     *               entries.
+     * @param colIdx The column number of each entry, increasing within each row.
+     * @param vals The value of each entry.
+     */
+    ResidualMatrix(KeyIndex users, KeyIndex items, int[] rowPtr, int[] colIdx, float[] vals) {
+        Preconditions.checkArgument(rowPtr.length == users.size() + 1,
+                                    "row pointer array has incorrect size (%s != %s)",
+                                    rowPtr.length, users.size() + 1);
+        Preconditions.checkArgument(colIdx.length == vals.length,
+                                    "column and value arrays have different sizes");
+        userIndex = users;
+        itemIndex = items;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.vals = vals;
+    }
+
+    /**
+     * Get the user index mapping.
+     * @return The mapping between user IDs and row numbers.
+     */
+    public KeyIndex getUserIndex() {
+        return userIndex;
+    }
+
+    /**
+     * Get the item index mapping.
+     * @return The mapping between item IDs and column numbers.
+     */
+    public KeyIndex getItemIndex() {
+        return itemIndex;
+    }
+
+    /**
+     * Get the number of rows (users).
+     * @return The row count.
+     */
+    public int getRowCount() {
+        return userIndex.size();
+    }
+
+    /**
+     * Get the number of columns (items).
+     * @return The column count.
+     */
+    public int getColumnCount() {
+        return itemIndex.size();
+    }
+
+    /**
+     * Get the number of stored entries.
+     * @return The number of ratings in the matrix.
+     */
+    public int getEntryCount() {
+        return vals.length;
+    }
+
+    /**
+     * Get the position of a row's first entry.
+     * @param row The row number.
+     * @return The position of the row's first entry.
+     */
+    public int getRowStart(int row) {
+        return rowPtr[row];
+    }
+
+    /**
+     * Get the position after a row's last entry.
+     * @param row The row number.
+     * @return The position after the row's last entry; the row is empty if this is its start.
+     */
+    public int getRowEnd(int row) {
+        return rowPtr[row + 1];
+    }
+
+    /**
+     * Get the column of an entry.
+     * @param pos The entry's position.
+     * @return The entry's column number.
+     */
+    public int getEntryColumn(int pos) {
+        return colIdx[pos];
+    }
+
+    /**
+     * Get the value of an entry.
+     * @param pos The entry's position.
+     * @return The entry's value.
+     */
+    public float getEntryValue(int pos) {
+        return vals[pos];
+    }
+
+    /**
+     * Get the transpose of this matrix.  Its rows are this matrix's columns, so it is this matrix
+     * in compressed sparse column form.  It is computed on first use and retained.
+     * @return The (items by users) transpose.
+     */
+    public synchronized ResidualMatrix transpose() {
+        if (transpose == null) {
+            int ncols = getColumnCount();
+            int[] tptr = new int[ncols + 1];
+            for (int c: colIdx) {
+                tptr[c + 1] += 1;
+            }
+            for (int c = 0; c < ncols; c++) {
+                tptr[c + 1] += tptr[c];
+            }
+            // walking the rows in order fills each column in increasing row order
+            int[] next = Arrays.copyOf(tptr, ncols);
+            int[] trow = new int[vals.length];
+            float[] tvals = new float[vals.length];
+            for (int r = 0; r < getRowCount(); r++) {
+                for (int p = rowPtr[r]; p < rowPtr[r + 1]; p++) {
+                    int q = next[colIdx[p]]++;
+                    trow[q] = r;
+                    tvals[q] = vals[p];
+                }
+            }
+            transpose = new ResidualMatrix(itemIndex, userIndex, tptr, trow, tvals);
+            transpose.transpose = this;
+        }
+        return transpose;
+    }
+
+    /**
+     * Multiply this matrix by a dense matrix, {@code A X}.
+     * @param cols The columns of {@code X}, each of length {@link #getColumnCount()}.
+     * @return The columns of the product, each of length {@link #getRowCount()}.
+     */
+    public double[][] multiply(double[][] cols) {
+        int nrows = getRowCount();
+        double[][] result = new double[cols.length][nrows];
+        for (int c = 0; c < cols.length; c++) {
+            double[] x = cols[c];
+            double[] y = result[c];
+            for (int r = 0; r < nrows; r++) {
+                double sum = 0;
+                for (int p = rowPtr[r]; p < rowPtr[r + 1]; p++) {
+                    sum += vals[p] * x[colIdx[p]];
+                }
+                y[r] = sum;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Multiply the transpose of this matrix by a dense matrix, {@code A^T X}.
+     * @param cols The columns of {@code X}, each of length {@link #getRowCount()}.
+     * @return The columns of the product, each of length {@link #getColumnCount()}.
+     */
+    public double[][] multiplyTranspose(double[][] cols) {
+        int nrows = getRowCount();
+        double[][] result = new double[cols.length][getColumnCount()];
+        for (int c = 0; c < cols.length; c++) {
+            double[] x = cols[c];
+            double[] y = result[c];
+            for (int r = 0; r < nrows; r++) {
+                double xr = x[r];
+                for (int p = rowPtr[r]; p < rowPtr[r + 1]; p++) {
+                    y[colIdx[p]] += vals[p] * xr;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copy this matrix into a dense matrix.
+     * @return A dense matrix with the same entries (and zeros elsewhere).
+     */
+    public RealMatrix toDenseMatrix() {
+        RealMatrix matrix = MatrixUtils.createRealMatrix(getRowCount(), getColumnCount());
+        for (int r = 0; r < getRowCount(); r++) {
+            for (int p = rowPtr[r]; p < rowPtr[r + 1]; p++) {
+                matrix.setEntry(r, colIdx[p], vals[p]);
+            }
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,204 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.lenskit.basic.TopNItemRecommender;
+import org.lenskit.bias.BiasModel;
+import org.lenskit.results.Results;
+import org.lenskit.util.keys.KeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Top-N recommender for the SVD model.  When no candidate set is given, it scores the whole
+ * catalog at once: the user's offsets for every item come from one pass over the item feature
+ * matrix, the baseline is added from the {@linkplain ModelItemBiases precomputed item biases},
+ * and a heap of size {@code n} picks the best items, so there is no per-item lookup or allocation
+ * until the results are built.  With an explicit candidate set, or for a user who is not in the
+ * model (and so must be folded in), it scores the candidates through the {@link SVDItemScorer} as
+ * usual.  Subclasses can narrow the catalog pass to a
+ * {@linkplain #getCandidateRows(int) subset of items}.
+ *
+ * <p>The scores are the same as the item scorer's, so it gives the same recommendations as the
+ * default recommender.
+ */
+public class SVDItemRecommender extends TopNItemRecommender {
+    private static final Logger logger = LoggerFactory.getLogger(SVDItemRecommender.class);
+    private final SVDModel model;
+    private final BiasModel baseline;
+    private final ModelItemBiases itemBiases;
+
+    /**
+     * Construct an SVD item recommender.
+     * @param events The user event DAO.
+     * @param items The item DAO.
+     * @param scorer The SVD item scorer.
+     * @param m The SVD model.
+     * @param bias The baseline bias model.
+     * @param ibias The model's item biases.
+     */
+    @Inject
+    @SuppressWarnings("deprecation") // TopNItemRecommender only takes the old DAO interfaces
+    public SVDItemRecommender(org.lenskit.data.dao.UserEventDAO events,
+                              org.lenskit.data.dao.ItemDAO items, SVDItemScorer scorer,
+                              SVDModel m, BiasModel bias, ModelItemBiases ibias) {
+        super(events, items, scorer);
+        Preconditions.checkArgument(ibias.size() == m.getItemIndexMapping().size(),
+                                    "item biases have incorrect size (%s != %s)",
+                                    ibias.size(), m.getItemIndexMapping().size());
+        model = m;
+        baseline = bias;
+        itemBiases = ibias;
+    }
+
+    @Override
+    protected List<Long> recommend(long user, int n,
+                                   @Nullable LongSet candidates, @Nullable LongSet exclude) {
+        if (candidates != null) {
+            return super.recommend(user, n, candidates, exclude);
+        }
+        return recommendWithDetails(user, n, null, exclude).idList();
+    }
+
+    @Override
+    protected ResultList recommendWithDetails(long user, int n,
+                                              @Nullable LongSet candidates,
+                                              @Nullable LongSet exclude) {
+        int userRow = model.getUserIndexMapping().tryGetIndex(user);
+        if (candidates != null || userRow < 0) {
+            return super.recommendWithDetails(user, n, candidates, exclude);
+        }
+        if (exclude == null) {
+            exclude = getDefaultExcludes(user);
+        }
+        KeyIndex itemIndex = model.getItemIndexMapping();
+        double userBaseline = baseline.getIntercept() + baseline.getUserBias(user);
+        double[] userFeatures = model.getUserFeatures(userRow);
+        int[] rows = getCandidateRows(userRow);
+        double[] scores;
+        boolean[] excluded;
+        if (rows == null) {
+            scores = new double[itemIndex.size()];
+            model.dotAll(userFeatures, scores);
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] += userBaseline + itemBiases.get(i);
+            }
+            excluded = new boolean[scores.length];
+            LongIterator iter = exclude.iterator();
+            while (iter.hasNext()) {
+                int idx = itemIndex.tryGetIndex(iter.nextLong());
+                if (idx >= 0) {
+                    excluded[idx] = true;
+                }
+            }
+        } else {
+            scores = new double[rows.length];
+            excluded = new boolean[rows.length];
+            for (int j = 0; j < rows.length; j++) {
+                int i = rows[j];
+                scores[j] = model.dot(userFeatures, i) + userBaseline + itemBiases.get(i);
+                excluded[j] = exclude.contains(itemIndex.getKey(i));
+            }
+        }
+
+        int[] top = selectTop(scores, excluded, n);
+        logger.debug("selected {} of {} items for user {}", top.length, scores.length, user);
+        List<Result> results = new ArrayList<>(top.length);
+        for (int j: top) {
+            int i = rows == null ? j : rows[j];
+            results.add(Results.create(itemIndex.getKey(i), scores[j]));
+        }
+        return Results.newResultList(results);
+    }
+
+    /**
+     * Get the items to consider recommending to a user.
+     * @param userRow The user's row number in the model.
+     * @return The row numbers of the items to score, or {@code null} to score every item.
+     */
+    @Nullable
+    protected int[] getCandidateRows(int userRow) {
+        return null;
+    }
+
+    /**
+     * Select the highest-scoring items.
+     * @param scores The item scores.
+     * @param excluded Which items to skip.
+     * @param n The number of items to select, or a negative number to select all of them.
+     * @return The positions of the selected items, in decreasing order of score.
+     */
+    private static int[] selectTop(double[] scores, boolean[] excluded, int n) {
+        int limit = n < 0 ? scores.length : Math.min(n, scores.length);
+        // min-heap of the best items so far, so the worst of them is at the root
+        int[] heap = new int[limit];
+        int size = 0;
+        for (int i = 0; i < scores.length && limit > 0; i++) {
+            if (excluded[i]) {
+                continue;
+            }
+            double s = scores[i];
+            if (size < limit) {
+                int pos = size++;
+                while (pos > 0) {
+                    int parent = (pos - 1) >>> 1;
+                    if (scores[heap[parent]] <= s) {
+                        break;
+                    }
+                    heap[pos] = heap[parent];
+                    pos = parent;
+                }
+                heap[pos] = i;
+            } else if (s > scores[heap[0]]) {
+                int pos = 0;
+                while (true) {
+                    int child = 2 * pos + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && scores[heap[child + 1]] < scores[heap[child]]) {
+                        child += 1;
+                    }
+                    if (scores[heap[child]] >= s) {
+                        break;
+                    }
+                    heap[pos] = heap[child];
+                    pos = child;
+                }
+                heap[pos] = i;
+            }
+        }
+
+        int[] top = Arrays.copyOf(heap, size);
+        IntArrays.quickSort(top, new DecreasingScoreComparator(scores));
+        return top;
+    }
+
+    /**
+     * Compare positions in a score array by decreasing score.
+     */
+    private static class DecreasingScoreComparator extends AbstractIntComparator {
+        private static final long serialVersionUID = 1L;
+        private final double[] scores;
+
+        DecreasingScoreComparator(double[] scores) {
+            this.scores = scores;
+        }
+
+        @Override
+        public int compare(int a, int b) {
+            return Double.compare(scores[b], scores[a]);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package org.lenskit.mooc.svd;
 
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongSet;
-import org.apache.commons.math3.linear.RealVector;
 import org.lenskit.api.Result;
 import org.lenskit.api.ResultMap;
 import org.lenskit.basic.AbstractItemScorer;
@@ -9,6 +9,7 @@ import org.lenskit.bias.BiasModel;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.results.Results;
 import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.KeyIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,26 +20,30 @@ import java.util.Collection;
 import java.util.List;
 
 /**
- * SVD-based item scorer.
+ * SVD-based item scorer.  Users who are not in the model are folded in from their current ratings
+ * by the {@link UserFeatureCache}, so they get personalized scores without retraining.
  */
 public class SVDItemScorer extends AbstractItemScorer {
     private static final Logger logger = LoggerFactory.getLogger(SVDItemScorer.class);
     private final SVDModel model;
     private final BiasModel baseline;
     private final DataAccessObject dao;
+    private final UserFeatureCache foldIns;
 
     /**
      * Construct an SVD item scorer using a model.
      * @param m The model to use when generating scores.
      * @param dao The data access object.
      * @param bias The baseline bias model (providing means).
+     * @param cache The features of users who are not in the model.
      */
     @Inject
     public SVDItemScorer(SVDModel m, DataAccessObject dao,
-                         BiasModel bias) {
+                         BiasModel bias, UserFeatureCache cache) {
         model = m;
         baseline = bias;
         this.dao = dao;
+        foldIns = cache;
     }
 
     /**
@@ -53,22 +58,34 @@ public class SVDItemScorer extends AbstractItemScorer {
     @Nonnull
     @Override
     public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
-        RealVector userFeatures = model.getUserVector(user);
-        if (userFeatures == null) {
-            logger.debug("unknown user {}", user);
-            return Results.newResultMap();
+        int userRow = model.getUserIndexMapping().tryGetIndex(user);
+        double[] userFeatures;
+        if (userRow >= 0) {
+            userFeatures = model.getUserFeatures(userRow);
+        } else {
+            userFeatures = foldIns.getUserFeatures(dao, user);
+            if (userFeatures == null) {
+                logger.debug("unknown user {}", user);
+                return Results.newResultMap();
+            }
         }
 
         LongSet itemSet = LongUtils.asLongSet(items);
+        KeyIndex itemIndex = model.getItemIndexMapping();
+        double userBaseline = baseline.getIntercept() + baseline.getUserBias(user);
 
-        List<Result> results = new ArrayList<>();
-        for(Long item: itemSet) {
+        List<Result> results = new ArrayList<>(itemSet.size());
+        LongIterator iter = itemSet.iterator();
+        while (iter.hasNext()) {
+            long item = iter.nextLong();
+            int itemRow = itemIndex.tryGetIndex(item);
+            if (itemRow < 0) {
+                continue;
+            }
             // Compute the predictions
-            double prediction = userFeatures
-                    .ebeMultiply(model.getFeatureWeights())
-                    .dotProduct(model.getItemVector(item));
+            double prediction = model.dot(userFeatures, itemRow);
             // Add the predicted offsets to the baseline score
-            prediction += baseline.getIntercept() + baseline.getUserBias(user) + baseline.getItemBias(item);
+            prediction += userBaseline + baseline.getItemBias(item);
             // Store the results in 'results'
             results.add(Results.create(item, prediction));
         }
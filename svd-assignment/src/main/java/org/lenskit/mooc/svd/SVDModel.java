@@ -1,6 +1,7 @@
 package org.lenskit.mooc.svd;
 
 import com.google.common.base.Preconditions;
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 import org.grouplens.grapht.annotation.DefaultProvider;
@@ -12,16 +13,23 @@ import java.io.Serializable;
 
 /**
  * SVD model for collaborative filtering.
+ *
+ * <p>The user and item features are stored in two row-major {@linkplain FeatureMatrix feature
+ * matrices}, with the feature weights (singular values) already multiplied into the user features,
+ * so the prediction for a user and item is the plain dot product of their rows.  The matrices may
+ * be stored in double or single precision or quantized to bytes (see {@link FeatureEncoding}), and
+ * may be read straight from a {@linkplain SVDModelFile mapped file}.
  */
 @Shareable
 @DefaultProvider(SVDModelBuilder.class)
 public class SVDModel implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 4L;
     private final KeyIndex userMapping;
     private final KeyIndex itemMapping;
-    private final RealMatrix userFeatureMatrix;
-    private final RealMatrix itemFeatureMatrix;
-    private final RealVector featureWeights;
+    private final int featureCount;
+    private final double[] featureWeights;
+    private final FeatureMatrix userFeatures;
+    private final FeatureMatrix itemFeatures;
 
     /**
      * Construct an SVD model.  The matrices represent the decomposition, such that the predictions
@@ -33,39 +41,177 @@ public class SVDModel implements Serializable {
      * @param weights The singular values.
      */
     SVDModel(KeyIndex umap, KeyIndex imap, RealMatrix umat, RealMatrix imat, RealVector weights) {
-        Preconditions.checkArgument(umat.getColumnDimension() == weights.getDimension(),
-                                    "user matrix has incorrect column dimension (%s != %s)",
-                                    umat.getColumnDimension(), weights.getDimension());
-        Preconditions.checkArgument(imat.getColumnDimension() == weights.getDimension(),
-                                    "item matrix has incorrect column dimension (%s != %s)",
-                                    imat.getColumnDimension(), weights.getDimension());
+        this(umap, imap, weights.toArray(), flatten(umat, weights), flatten(imat, null));
+    }
+
+    /**
+     * Construct an SVD model from flat feature arrays.
+     * @param umap The mapping between user IDs and row numbers.
+     * @param imap The mapping between item IDs and row numbers.
+     * @param weights The feature weights, already multiplied into {@code ufeatures}.
+     * @param ufeatures The row-major user feature matrix (users x features), with the weights
+     *                  applied.
+     * @param ifeatures The row-major item feature matrix (items x features).
+     */
+    SVDModel(KeyIndex umap, KeyIndex imap, double[] weights,
+             double[] ufeatures, double[] ifeatures) {
+        this(umap, imap, weights,
+             new DoubleFeatureMatrix(ufeatures, weights.length),
+             new DoubleFeatureMatrix(ifeatures, weights.length));
+    }
+
+    /**
+     * Construct an SVD model from feature matrices.
+     * @param umap The mapping between user IDs and row numbers.
+     * @param imap The mapping between item IDs and row numbers.
+     * @param weights The feature weights, already multiplied into {@code ufeatures}.
+     * @param ufeatures The user feature matrix (users x features), with the weights applied.
+     * @param ifeatures The item feature matrix (items x features).
+     */
+    SVDModel(KeyIndex umap, KeyIndex imap, double[] weights,
+             FeatureMatrix ufeatures, FeatureMatrix ifeatures) {
+        Preconditions.checkArgument(ufeatures.getFeatureCount() == weights.length
+                                            && ufeatures.getRowCount() == umap.size(),
+                                    "user matrix has incorrect size (%s x %s, expected %s x %s)",
+                                    ufeatures.getRowCount(), ufeatures.getFeatureCount(),
+                                    umap.size(), weights.length);
+        Preconditions.checkArgument(ifeatures.getFeatureCount() == weights.length
+                                            && ifeatures.getRowCount() == imap.size(),
+                                    "item matrix has incorrect size (%s x %s, expected %s x %s)",
+                                    ifeatures.getRowCount(), ifeatures.getFeatureCount(),
+                                    imap.size(), weights.length);
         userMapping = umap;
         itemMapping = imap;
-        userFeatureMatrix = umat;
-        itemFeatureMatrix = imat;
+        featureCount = weights.length;
         featureWeights = weights;
+        userFeatures = ufeatures;
+        itemFeatures = ifeatures;
+    }
+
+    /**
+     * Copy a matrix into a row-major array.
+     * @param matrix The matrix.
+     * @param weights Weights to multiply each column by, or {@code null} to copy it unchanged.
+     */
+    private static double[] flatten(RealMatrix matrix, @Nullable RealVector weights) {
+        int ncols = matrix.getColumnDimension();
+        Preconditions.checkArgument(weights == null || ncols == weights.getDimension(),
+                                    "matrix has incorrect column dimension (%s != %s)",
+                                    ncols, weights == null ? 0 : weights.getDimension());
+        int nrows = matrix.getRowDimension();
+        double[] values = new double[nrows * ncols];
+        for (int r = 0; r < nrows; r++) {
+            for (int c = 0; c < ncols; c++) {
+                double v = matrix.getEntry(r, c);
+                values[r * ncols + c] = weights == null ? v : v * weights.getEntry(c);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Get a copy of this model with its features stored in another encoding.
+     * @param encoding The encoding.
+     * @return The model with the features in that encoding (this model, if it already has it).
+     */
+    SVDModel encode(FeatureMatrix.Encoding encoding) {
+        FeatureMatrix users = userFeatures.encode(encoding);
+        FeatureMatrix items = itemFeatures.encode(encoding);
+        if (users == userFeatures && items == itemFeatures) {
+            return this;
+        }
+        return new SVDModel(userMapping, itemMapping, featureWeights, users, items);
+    }
+
+    /**
+     * Get the number of latent features.
+     * @return The number of features in each user and item row.
+     */
+    public int getFeatureCount() {
+        return featureCount;
     }
 
     /**
-     * Get the feature weights.  This is a diagonal matrix.
+     * Get the feature weights.  This is a diagonal matrix.  The weights are already applied to the
+     * {@linkplain #getUserVector(long) user features}.
      * @return The diagonal matrix of feature weights.
      */
     public RealVector getFeatureWeights() {
-        return featureWeights;
+        return new ArrayRealVector(featureWeights);
+    }
+
+    /**
+     * Query whether every feature weight is 1.  This is the case for factorizations, such as
+     * {@link ALSSolver}'s, that do not separate out singular values; their item features are not
+     * orthonormal, so users cannot be {@linkplain ProjectionFoldIn folded in by projection}.
+     * @return {@code true} if the model has features and all of their weights are 1.
+     */
+    public boolean hasUnitFeatureWeights() {
+        for (double w: featureWeights) {
+            if (w != 1) {
+                return false;
+            }
+        }
+        return featureCount > 0;
+    }
+
+    /**
+     * Compute the predicted offset for a user and an item.  To score many items for one user, get
+     * the user's {@linkplain #getUserFeatures(int) features} once and use
+     * {@link #dot(double[], int)}.
+     * @param userRow The user's row number.
+     * @param itemRow The item's row number.
+     * @return The dot product of the (weighted) user features and the item features.
+     */
+    public double dot(int userRow, int itemRow) {
+        return itemFeatures.dot(itemRow, getUserFeatures(userRow));
+    }
+
+    /**
+     * Compute the predicted offset for a user and an item from the user's features.
+     * @param user The user's features, with the feature weights applied (from
+     *             {@link #getUserFeatures(int)} or a {@linkplain UserFoldIn fold-in}).
+     * @param itemRow The item's row number.
+     * @return The dot product of the user features and the item features.
+     */
+    public double dot(double[] user, int itemRow) {
+        Preconditions.checkArgument(user.length == featureCount, "user vector has incorrect size");
+        return itemFeatures.dot(itemRow, user);
+    }
+
+    /**
+     * Compute the predicted offsets of every item for a user; that is, multiply the item feature
+     * matrix by the user's feature vector.
+     * @param userRow The user's row number.
+     * @param out An array with one element per item, to receive the offsets by item row number.
+     */
+    public void dotAll(int userRow, double[] out) {
+        dotAll(getUserFeatures(userRow), out);
+    }
+
+    /**
+     * Compute the predicted offsets of every item for a user from the user's features.
+     * @param user The user's features, with the feature weights applied.
+     * @param out An array with one element per item, to receive the offsets by item row number.
+     */
+    public void dotAll(double[] user, double[] out) {
+        Preconditions.checkArgument(user.length == featureCount, "user vector has incorrect size");
+        Preconditions.checkArgument(out.length == itemMapping.size(), "output has incorrect size");
+        itemFeatures.dotAll(user, out);
     }
 
     /**
      * Get a user feature vector. This is a row vector whose values (columns) are the feature
-     * values for a particular user.
+     * values for a particular user, multiplied by the feature weights.  It is a copy.
      *
      * @param user The user ID.
      * @return The feature vector for user {@code user}, or {@code null} if the user is unkonwn.
      */
     @Nullable
     public RealVector getUserVector(long user) {
-        long row = userMapping.tryGetIndex(user);
+        int row = userMapping.tryGetIndex(user);
         if (row >= 0) {
-            return userFeatureMatrix.getRowVector((int) row);
+            return new ArrayRealVector(getUserFeatures(row), false);
         } else {
             return null;
         }
@@ -73,37 +219,58 @@ public class SVDModel implements Serializable {
 
     /**
      * Get a item feature vector. This is a row vector whose values (columns) are the feature
-     * values for a particular item.
+     * values for a particular item.  It is a copy.
      *
      *
      * @param item The item ID.
      * @return The feature vector for item {@code item}.
      */
     public RealVector getItemVector(long item) {
-        long row = itemMapping.tryGetIndex(item);
+        int row = itemMapping.tryGetIndex(item);
         if (row >= 0) {
-            return itemFeatureMatrix.getRowVector((int) row);
+            double[] features = new double[featureCount];
+            itemFeatures.getRow(row, features, 0);
+            return new ArrayRealVector(features, false);
         } else {
             return null;
         }
     }
 
     /**
-     * Get a item feature vector matrix.  Its rows are items and its columns are latent features.
-     *
-     * @return The item-feature matrix (this must not be modified).
+     * Get a user's features, with the feature weights applied.
+     * @param userRow The user's row number.
+     * @return A copy of the user's features.
      */
-    public RealMatrix getItemFeatureMatrix() {
-        return itemFeatureMatrix;
+    public double[] getUserFeatures(int userRow) {
+        double[] features = new double[featureCount];
+        userFeatures.getRow(userRow, features, 0);
+        return features;
     }
 
     /**
-     * Get a user feature vector matrix.  Its rows are users and its columns are latent features.
-     *
-     * @return The user-feature matrix (this must not be modified).
+     * Copy an item's features into an array.
+     * @param itemRow The item's row number.
+     * @param out The array to receive the features.
+     * @param offset The position in {@code out} of the first feature.
+     */
+    public void getItemFeatures(int itemRow, double[] out, int offset) {
+        itemFeatures.getRow(itemRow, out, offset);
+    }
+
+    /**
+     * Get the user feature matrix.
+     * @return The user features, with the feature weights applied.
+     */
+    FeatureMatrix getUserMatrix() {
+        return userFeatures;
+    }
+
+    /**
+     * Get the item feature matrix.
+     * @return The item features.
      */
-    public RealMatrix getUserFeatureMatrix() {
-        return userFeatureMatrix;
+    FeatureMatrix getItemMatrix() {
+        return itemFeatures;
     }
 
     /**
@@ -1,6 +1,7 @@
 package org.lenskit.mooc.svd;
 
-import org.apache.commons.math3.linear.*;
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
 import org.lenskit.bias.BiasModel;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.entities.CommonTypes;
@@ -14,6 +15,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
+import java.util.Arrays;
 
 /**
  * Model builder that computes the SVD model.
@@ -23,21 +25,29 @@ public class SVDModelBuilder implements Provider<SVDModel> {
 
     private final DataAccessObject dao;
     private final BiasModel baseline;
+    private final SVDSolver solver;
     private final int featureCount;
+    private final FeatureMatrix.Encoding encoding;
 
     /**
      * Construct the model builder.
      * @param dao The data access object.
      * @param bias The bias model to use as a baseline.
+     * @param solver The SVD solver.
      * @param nfeatures The number of latent features to train.
+     * @param enc The encoding to store the features in.
      */
     @Inject
     public SVDModelBuilder(@Transient DataAccessObject dao,
                            @Transient BiasModel bias,
-                           @LatentFeatureCount int nfeatures) {
+                           @Transient SVDSolver solver,
+                           @LatentFeatureCount int nfeatures,
+                           @FeatureEncoding String enc) {
         this.dao = dao;
         baseline = bias;
+        this.solver = solver;
         featureCount = nfeatures;
+        encoding = FeatureMatrix.Encoding.fromName(enc);
     }
 
     /**
@@ -54,59 +64,141 @@ public class SVDModelBuilder implements Provider<SVDModel> {
 
         // We have to do 2 things:
         // First, prepare a matrix containing the rating data.
-        // You will implement createRatingMatrix
-        RealMatrix matrix = createRatingMatrix(userIndex, itemIndex);
-
-        // Second, compute its factorization
-        logger.info("factorizing matrix");
-        SingularValueDecomposition svd = new SingularValueDecomposition(matrix);
-        logger.info("decomposed matrix has rank {}", svd.getRank());
-
-        // Third, truncate the decomposed matrix
-        RealMatrix userMatrix = svd.getU();
-        RealMatrix itemMatrix = svd.getV();
-        RealVector weights = new ArrayRealVector(svd.getSingularValues());
-        if (featureCount > 0) {
-            logger.info("truncating matrix to {} features", featureCount);
-            // Use the getSubMatrix method to truncate the user and item matrices
-            userMatrix = userMatrix.getSubMatrix(0, userMatrix.getRowDimension()-1, 0, featureCount-1);
-            itemMatrix = itemMatrix.getSubMatrix(0, itemMatrix.getRowDimension()-1, 0, featureCount-1);
-            //userMatrix = userMatrix.getSubMatrix(0, featureCount-1, 0, userMatrix.getColumnDimension()-1);
-            //itemMatrix = itemMatrix.getSubMatrix(0, featureCount-1, 0, itemMatrix.getColumnDimension()-1);
-            weights = weights.getSubVector(0, featureCount);
-        }
+        ResidualMatrix matrix = createRatingMatrix(userIndex, itemIndex);
 
-        return new SVDModel(userIndex, itemIndex,
-                            userMatrix, itemMatrix,
-                            weights);
+        // Second, compute its (truncated) factorization
+        SVDModel model = solver.decompose(matrix, featureCount);
+        if (encoding != FeatureMatrix.Encoding.DOUBLE) {
+            logger.info("storing features as {}", encoding);
+        }
+        return model.encode(encoding);
     }
 
     /**
      * Build a rating residual matrix from the rating data.  Each user's ratings are
      * normalized by subtracting a baseline score (usually a mean).
      *
+     * <p>The ratings are streamed twice: once to count each user's ratings, and again to write the
+     * residuals straight into their places in the matrix arrays.  If a user rated an item more than
+     * once, the last rating is kept.
+     *
      * @param userIndex The index mapping of user IDs to row numbers.
      * @param itemIndex The index mapping of item IDs to column numbers.
-     * @return A matrix storing the <i>normalized</i> user ratings.
+     * @return A sparse matrix storing the <i>normalized</i> user ratings.
      */
-    private RealMatrix createRatingMatrix(KeyIndex userIndex, KeyIndex itemIndex) {
+    private ResidualMatrix createRatingMatrix(KeyIndex userIndex, KeyIndex itemIndex) {
         final int nusers = userIndex.size();
-        final int nitems = itemIndex.size();
+        logger.info("creating {} by {} rating matrix", nusers, itemIndex.size());
 
-        // Create a matrix with users on rows and items on columns
-        logger.info("creating {} by {} rating matrix", nusers, nitems);
-        RealMatrix matrix = MatrixUtils.createRealMatrix(nusers, nitems);
+        // First pass: count each user's ratings, and turn the counts into row offsets
+        int[] rowPtr = new int[nusers + 1];
+        try (ObjectStream<Rating> ratings = dao.query(Rating.class)
+                                               .stream()) {
+            for (Rating r: ratings) {
+                rowPtr[userIndex.getIndex(r.getUserId()) + 1] += 1;
+            }
+        }
+        for (int u = 0; u < nusers; u++) {
+            rowPtr[u + 1] += rowPtr[u];
+        }
 
-        // populate it with data
+        // Second pass: write each residual at the next free position in its row
+        int nratings = rowPtr[nusers];
+        int[] colIdx = new int[nratings];
+        float[] vals = new float[nratings];
+        int[] next = Arrays.copyOf(rowPtr, nusers);
         try (ObjectStream<Rating> ratings = dao.query(Rating.class)
                                                .stream()) {
-            // Put this user's ratings into the matrix
-            for(Rating r: ratings) {
-                double value = r.getValue() - baseline.getIntercept() - baseline.getUserBias(r.getUserId()) - baseline.getItemBias(r.getItemId());
-                matrix.setEntry(userIndex.getIndex(r.getUserId()), itemIndex.getIndex(r.getItemId()), value);
+            for (Rating r: ratings) {
+                int pos = next[userIndex.getIndex(r.getUserId())]++;
+                colIdx[pos] = itemIndex.getIndex(r.getItemId());
+                double bias = baseline.getIntercept()
+                        + baseline.getUserBias(r.getUserId())
+                        + baseline.getItemBias(r.getItemId());
+                vals[pos] = (float) (r.getValue() - bias);
+            }
+        }
+
+        // Put each row in column order, dropping all but the last of any repeated ratings
+        int pos = 0;
+        for (int u = 0; u < nusers; u++) {
+            int start = rowPtr[u];
+            int end = rowPtr[u + 1];
+            if (!isSorted(colIdx, start, end)) {
+                // stable, so repeated ratings stay in the order they were read
+                it.unimi.dsi.fastutil.Arrays.mergeSort(start, end,
+                                                       new ColumnComparator(colIdx),
+                                                       new EntrySwapper(colIdx, vals));
+            }
+            rowPtr[u] = pos;
+            for (int p = start; p < end; p++) {
+                if (p + 1 < end && colIdx[p + 1] == colIdx[p]) {
+                    continue;
+                }
+                colIdx[pos] = colIdx[p];
+                vals[pos] = vals[p];
+                pos += 1;
+            }
+        }
+        rowPtr[nusers] = pos;
+        if (pos < nratings) {
+            logger.info("dropped {} repeated ratings", nratings - pos);
+            return new ResidualMatrix(userIndex, itemIndex, rowPtr,
+                                      Arrays.copyOf(colIdx, pos), Arrays.copyOf(vals, pos));
+        } else {
+            return new ResidualMatrix(userIndex, itemIndex, rowPtr, colIdx, vals);
+        }
+    }
+
+    /**
+     * Check whether a range of an array is in strictly increasing order.
+     */
+    private static boolean isSorted(int[] array, int start, int end) {
+        for (int p = start + 1; p < end; p++) {
+            if (array[p] <= array[p - 1]) {
+                return false;
             }
         }
+        return true;
+    }
 
-        return matrix;
+    /**
+     * Compare positions in a row by column index.
+     */
+    private static class ColumnComparator extends AbstractIntComparator {
+        private static final long serialVersionUID = 1L;
+        private final int[] colIdx;
+
+        ColumnComparator(int[] colIdx) {
+            this.colIdx = colIdx;
+        }
+
+        @Override
+        public int compare(int i, int j) {
+            return Integer.compare(colIdx[i], colIdx[j]);
+        }
+    }
+
+    /**
+     * Swap two entries, column index and value, of the residual arrays.
+     */
+    private static class EntrySwapper implements Swapper {
+        private final int[] colIdx;
+        private final float[] vals;
+
+        EntrySwapper(int[] colIdx, float[] vals) {
+            this.colIdx = colIdx;
+            this.vals = vals;
+        }
+
+        @Override
+        public void swap(int i, int j) {
+            int c = colIdx[i];
+            colIdx[i] = colIdx[j];
+            colIdx[j] = c;
+            float v = vals[i];
+            vals[i] = vals[j];
+            vals[j] = v;
+        }
     }
 }
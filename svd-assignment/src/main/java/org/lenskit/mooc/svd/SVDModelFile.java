@@ -0,0 +1,339 @@
+package org.lenskit.mooc.svd;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.bias.BiasModel;
+import org.lenskit.bias.UserItemBiasModel;
+import org.lenskit.inject.Shareable;
+import org.lenskit.util.keys.FrozenHashKeyIndex;
+import org.lenskit.util.keys.KeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file format for an {@link SVDModel} and its baseline, which is memory-mapped to load.  The
+ * feature matrices are used straight from the mapping, so loading reads only the small arrays, and
+ * every process that maps the same file shares one copy of the features in the page cache.
+ *
+ * <p>The file is little-endian, and laid out as follows:
+ *
+ * <ol>
+ * <li>A 40-byte header: the magic number {@code LKSVDMOD}, the format version (int), the feature
+ * count {@code k}, the user count {@code m}, the item count {@code n}, the
+ * {@linkplain FeatureMatrix.Encoding feature encoding} (0 for double, 1 for float, 2 for int8),
+ * a reserved int, and the baseline intercept (double).</li>
+ * <li>The user IDs ({@code m} longs) and item IDs ({@code n} longs), in row order.</li>
+ * <li>The feature weights ({@code k} doubles).</li>
+ * <li>The user biases ({@code m} doubles) and item biases ({@code n} doubles).</li>
+ * <li>The user features (weights applied) and item features, each a row-major matrix of doubles
+ * or floats; or, quantized, a float scale per row followed by the rows of bytes.  Each section is
+ * padded to a multiple of 8 bytes.</li>
+ * </ol>
+ *
+ * <p>A single mapping is limited to 2GB, so each feature matrix must be smaller than that.
+ *
+ * @see SVDModelFileProvider
+ * @see MappedSVDModelProvider
+ * @see MappedBiasModelProvider
+ */
+@Shareable
+@DefaultProvider(SVDModelFileProvider.class)
+public class SVDModelFile implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(SVDModelFile.class);
+    private static final long MAGIC = 0x444F4D4456534B4CL; // "LKSVDMOD" read little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final SVDModel model;
+    private final BiasModel baseline;
+
+    private SVDModelFile(SVDModel model, BiasModel baseline) {
+        this.model = model;
+        this.baseline = baseline;
+    }
+
+    /**
+     * Get the SVD model.
+     * @return The model, whose features are views of the file's mapping.
+     */
+    public SVDModel getModel() {
+        return model;
+    }
+
+    /**
+     * Get the baseline.  It holds the biases of the model's users and items; other users and items
+     * have no bias.
+     * @return The baseline bias model.
+     */
+    public BiasModel getBiasModel() {
+        return baseline;
+    }
+
+    /**
+     * Open a model file.
+     * @param file The file.
+     * @return The opened file.
+     * @throws IOException if there is an error reading the file, or it is not a valid model file.
+     */
+    public static SVDModelFile open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, HEADER_SIZE, "header");
+            if (header.getLong() != MAGIC) {
+                throw new IOException(file + ": not an SVD model file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + ": unsupported model file version " + version);
+            }
+            int k = header.getInt();
+            int nusers = header.getInt();
+            int nitems = header.getInt();
+            int code = header.getInt();
+            if (code < 0 || code >= FeatureMatrix.Encoding.values().length) {
+                throw new IOException(file + ": unknown feature encoding " + code);
+            }
+            FeatureMatrix.Encoding encoding = FeatureMatrix.Encoding.values()[code];
+            header.getInt();
+            double intercept = header.getDouble();
+            long pos = HEADER_SIZE;
+
+            LongBuffer userIds = map(channel, pos, 8L * nusers, "user IDs").asLongBuffer();
+            pos += 8L * nusers;
+            LongBuffer itemIds = map(channel, pos, 8L * nitems, "item IDs").asLongBuffer();
+            pos += 8L * nitems;
+            DoubleBuffer weightBuffer = map(channel, pos, 8L * k, "feature weights")
+                    .asDoubleBuffer();
+            pos += 8L * k;
+            DoubleBuffer userBiases = map(channel, pos, 8L * nusers, "user biases")
+                    .asDoubleBuffer();
+            pos += 8L * nusers;
+            DoubleBuffer itemBiases = map(channel, pos, 8L * nitems, "item biases")
+                    .asDoubleBuffer();
+            pos += 8L * nitems;
+            FeatureMatrix userFeatures = mapMatrix(channel, pos, nusers, k, encoding,
+                                                   "user features");
+            pos += padded(matrixSize(nusers, k, encoding));
+            FeatureMatrix itemFeatures = mapMatrix(channel, pos, nitems, k, encoding,
+                                                   "item features");
+            pos += padded(matrixSize(nitems, k, encoding));
+            if (pos != channel.size()) {
+                throw new IOException(String.format("%s: expected %d bytes, found %d",
+                                                    file, pos, channel.size()));
+            }
+
+            KeyIndex users = readIndex(userIds);
+            KeyIndex items = readIndex(itemIds);
+            double[] weights = new double[k];
+            weightBuffer.get(weights);
+            SVDModel model = new SVDModel(users, items, weights, userFeatures, itemFeatures);
+            BiasModel bias = new UserItemBiasModel(intercept, readBiases(userIds, userBiases),
+                                                   readBiases(itemIds, itemBiases));
+            logger.info("mapped {} {} features for {} users and {} items from {}",
+                        k, encoding, nusers, nitems, file);
+            return new SVDModelFile(model, bias);
+        }
+    }
+
+    /**
+     * Write a model file.
+     * @param file The file to write.
+     * @param model The SVD model.
+     * @param bias The baseline bias model.
+     * @throws IOException if there is an error writing the file.
+     */
+    public static void write(File file, SVDModel model, BiasModel bias) throws IOException {
+        KeyIndex users = model.getUserIndexMapping();
+        KeyIndex items = model.getItemIndexMapping();
+        int k = model.getFeatureCount();
+        FeatureMatrix.Encoding encoding = model.getItemMatrix().getEncoding();
+        if (model.getUserMatrix().getEncoding() != encoding) {
+            throw new IllegalArgumentException("user and item features have different encodings");
+        }
+        logger.info("writing {} {} features for {} users and {} items to {}",
+                    k, encoding, users.size(), items.size(), file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE)
+                                          .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putLong(MAGIC)
+                  .putInt(VERSION)
+                  .putInt(k)
+                  .putInt(users.size())
+                  .putInt(items.size())
+                  .putInt(encoding.ordinal())
+                  .putInt(0)
+                  .putDouble(bias.getIntercept());
+            for (int u = 0; u < users.size(); u++) {
+                ensureSpace(channel, buffer).putLong(users.getKey(u));
+            }
+            for (int i = 0; i < items.size(); i++) {
+                ensureSpace(channel, buffer).putLong(items.getKey(i));
+            }
+            for (double w: model.getFeatureWeights().toArray()) {
+                ensureSpace(channel, buffer).putDouble(w);
+            }
+            for (int u = 0; u < users.size(); u++) {
+                ensureSpace(channel, buffer).putDouble(bias.getUserBias(users.getKey(u)));
+            }
+            for (int i = 0; i < items.size(); i++) {
+                ensureSpace(channel, buffer).putDouble(bias.getItemBias(items.getKey(i)));
+            }
+            writeMatrix(channel, buffer, model.getUserMatrix());
+            writeMatrix(channel, buffer, model.getItemMatrix());
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Map a section of a file.
+     */
+    private static ByteBuffer map(FileChannel channel, long position, long size,
+                                  String section) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("%s too large to map (%d bytes)", section, size));
+        }
+        if (position + size > channel.size()) {
+            throw new IOException(String.format("file truncated in %s", section));
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size)
+                      .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Map a feature matrix.
+     */
+    private static FeatureMatrix mapMatrix(FileChannel channel, long position, int nrows, int k,
+                                           FeatureMatrix.Encoding encoding,
+                                           String section) throws IOException {
+        long size = (long) nrows * k;
+        switch (encoding) {
+        case DOUBLE:
+            return new DoubleFeatureMatrix(map(channel, position, 8 * size, section)
+                                                   .asDoubleBuffer(), k);
+        case FLOAT:
+            return new FloatFeatureMatrix(map(channel, position, 4 * size, section)
+                                                  .asFloatBuffer(), k);
+        case INT8:
+            float[] scales = new float[nrows];
+            map(channel, position, 4L * nrows, section).asFloatBuffer().get(scales);
+            ByteBuffer values = map(channel, position + 4L * nrows, size, section);
+            return new QuantizedFeatureMatrix(values, scales, k);
+        default:
+            throw new IllegalArgumentException("unknown encoding " + encoding);
+        }
+    }
+
+    /**
+     * Get the number of bytes a feature matrix takes in the file, before padding.
+     */
+    private static long matrixSize(int nrows, int k, FeatureMatrix.Encoding encoding) {
+        long size = (long) nrows * k;
+        switch (encoding) {
+        case DOUBLE:
+            return 8 * size;
+        case FLOAT:
+            return 4 * size;
+        case INT8:
+            return 4L * nrows + size;
+        default:
+            throw new IllegalArgumentException("unknown encoding " + encoding);
+        }
+    }
+
+    /**
+     * Round a section size up to a multiple of 8 bytes.
+     */
+    private static long padded(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static KeyIndex readIndex(LongBuffer ids) {
+        LongArrayList keys = new LongArrayList(ids.capacity());
+        for (int i = 0; i < ids.capacity(); i++) {
+            keys.add(ids.get(i));
+        }
+        return FrozenHashKeyIndex.create(keys);
+    }
+
+    private static Long2DoubleMap readBiases(LongBuffer ids, DoubleBuffer biases) {
+        Long2DoubleMap map = new Long2DoubleOpenHashMap(ids.capacity());
+        for (int i = 0; i < ids.capacity(); i++) {
+            double b = biases.get(i);
+            if (b != 0) {
+                map.put(ids.get(i), b);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Write a feature matrix, padded to a multiple of 8 bytes.
+     */
+    private static void writeMatrix(FileChannel channel, ByteBuffer buffer,
+                                    FeatureMatrix matrix) throws IOException {
+        long size;
+        if (matrix instanceof DoubleFeatureMatrix) {
+            DoubleBuffer values = ((DoubleFeatureMatrix) matrix).getValues();
+            while (values.hasRemaining()) {
+                ensureSpace(channel, buffer).putDouble(values.get());
+            }
+            size = 8L * values.capacity();
+        } else if (matrix instanceof FloatFeatureMatrix) {
+            FloatBuffer values = ((FloatFeatureMatrix) matrix).getValues();
+            while (values.hasRemaining()) {
+                ensureSpace(channel, buffer).putFloat(values.get());
+            }
+            size = 4L * values.capacity();
+        } else if (matrix instanceof QuantizedFeatureMatrix) {
+            QuantizedFeatureMatrix quantized = (QuantizedFeatureMatrix) matrix;
+            for (float scale: quantized.getScales()) {
+                ensureSpace(channel, buffer).putFloat(scale);
+            }
+            ByteBuffer values = quantized.getValues();
+            while (values.hasRemaining()) {
+                ensureSpace(channel, buffer).put(values.get());
+            }
+            size = 4L * quantized.getScales().length + values.capacity();
+        } else {
+            throw new IllegalArgumentException("unsupported feature matrix " + matrix.getClass());
+        }
+        for (long p = size; p < padded(size); p++) {
+            ensureSpace(channel, buffer).put((byte) 0);
+        }
+    }
+
+    /**
+     * Make sure the write buffer has room for another value, flushing it if necessary.
+     */
+    private static ByteBuffer ensureSpace(FileChannel channel,
+                                          ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 8) {
+            flush(channel, buffer);
+        }
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,33 @@
+package org.lenskit.mooc.svd;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Opens the {@linkplain SVDModelFile model file} named by {@link ModelFile}.  The opened file is
+ * a shared component, so {@link MappedSVDModelProvider} and {@link MappedBiasModelProvider} read
+ * the model and baseline from a single mapping of it.
+ */
+public class SVDModelFileProvider implements Provider<SVDModelFile> {
+    private final File file;
+
+    /**
+     * Construct the provider.
+     * @param path The path of the model file.
+     */
+    @Inject
+    public SVDModelFileProvider(@ModelFile String path) {
+        file = new File(path);
+    }
+
+    @Override
+    public SVDModelFile get() {
+        try {
+            return SVDModelFile.open(file);
+        } catch (IOException e) {
+            throw new RuntimeException("I/O error mapping SVD model file", e);
+        }
+    }
+}
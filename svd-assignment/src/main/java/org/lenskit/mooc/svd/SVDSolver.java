@@ -0,0 +1,18 @@
+package org.lenskit.mooc.svd;
+
+import org.grouplens.grapht.annotation.DefaultImplementation;
+
+/**
+ * Computes the (truncated) singular value decomposition of a residual matrix for
+ * {@link SVDModelBuilder}.
+ */
+@DefaultImplementation(DenseSVDSolver.class)
+public interface SVDSolver {
+    /**
+     * Decompose a residual matrix.
+     * @param matrix The residual matrix.
+     * @param featureCount The number of latent features to keep, or 0 to keep all of them.
+     * @return The SVD model.
+     */
+    SVDModel decompose(ResidualMatrix matrix, int featureCount);
+}
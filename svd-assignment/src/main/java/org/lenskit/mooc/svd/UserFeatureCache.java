@@ -0,0 +1,143 @@
+package org.lenskit.mooc.svd;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import org.lenskit.bias.BiasModel;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.inject.Shareable;
+import org.lenskit.util.keys.KeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cache of features for users who are not in the {@link SVDModel}, such as users who signed up
+ * after it was trained.  The first time such a user is scored, their ratings are normalized by the
+ * baseline and {@linkplain UserFoldIn folded in} to the model; the result is kept until the user
+ * is {@linkplain #invalidate(long) invalidated} or the least recently used users are evicted once
+ * the cache reaches its {@linkplain FoldInCacheSize maximum size}.
+ *
+ * <p>The cache is shared by every recommender built from the same engine, so a user folded in
+ * while serving one request is reused by later recommenders; the data access object is therefore
+ * passed to each lookup rather than injected.  An application that stores new ratings for such a
+ * user should invalidate them (getting the cache from any recommender with
+ * {@code get(UserFeatureCache.class)}) so that later requests see the ratings.
+ */
+@Shareable
+public class UserFeatureCache implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(UserFeatureCache.class);
+    /**
+     * Cached in place of the features of users with no ratings of items in the model.
+     */
+    private static final double[] NO_FEATURES = new double[0];
+
+    private final SVDModel model;
+    private final BiasModel baseline;
+    private final UserFoldIn foldIn;
+    private final int maxSize;
+    private transient Cache<Long, double[]> cache;
+
+    /**
+     * Construct a new user feature cache.
+     * @param model The SVD model.
+     * @param bias The baseline bias model.
+     * @param fold The fold-in method.
+     * @param size The maximum number of users to keep.
+     */
+    @Inject
+    public UserFeatureCache(SVDModel model, BiasModel bias, UserFoldIn fold,
+                            @FoldInCacheSize int size) {
+        this.model = model;
+        baseline = bias;
+        foldIn = fold;
+        maxSize = size;
+        cache = createCache(size);
+    }
+
+    private static Cache<Long, double[]> createCache(int size) {
+        return CacheBuilder.newBuilder()
+                           .maximumSize(size)
+                           .build();
+    }
+
+    /**
+     * Get the features of a user who is not in the model.
+     * @param dao The data access object, to load the user's ratings if they are not cached.
+     * @param user The user ID.
+     * @return The user's features, with the feature weights applied (this must not be modified), or
+     *         {@code null} if the user has not rated any items in the model.
+     */
+    @Nullable
+    public double[] getUserFeatures(final DataAccessObject dao, final long user) {
+        double[] features;
+        try {
+            features = cache.get(user, new Callable<double[]>() {
+                @Override
+                public double[] call() {
+                    return foldIn(dao, user);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        return features == NO_FEATURES ? null : features;
+    }
+
+    /**
+     * Discard a user's cached features, so that they are folded in again with their current
+     * ratings.
+     * @param user The user ID.
+     */
+    public void invalidate(long user) {
+        cache.invalidate(user);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // folded-in users are not kept across serialization
+        cache = createCache(maxSize);
+    }
+
+    private double[] foldIn(DataAccessObject dao, long user) {
+        List<Rating> ratings = dao.query(Rating.class)
+                                  .withAttribute(CommonAttributes.USER_ID, user)
+                                  .get();
+        KeyIndex itemIndex = model.getItemIndexMapping();
+        double userBaseline = baseline.getIntercept() + baseline.getUserBias(user);
+        // if the user rated an item more than once, the last rating is kept
+        Int2DoubleMap residuals = new Int2DoubleOpenHashMap(ratings.size());
+        for (Rating r: ratings) {
+            int row = itemIndex.tryGetIndex(r.getItemId());
+            if (row >= 0) {
+                double itemBias = baseline.getItemBias(r.getItemId());
+                residuals.put(row, r.getValue() - userBaseline - itemBias);
+            }
+        }
+        if (residuals.isEmpty()) {
+            logger.debug("user {} has no ratings of items in the model", user);
+            return NO_FEATURES;
+        }
+
+        int[] rows = residuals.keySet().toIntArray();
+        double[] values = new double[rows.length];
+        for (int j = 0; j < rows.length; j++) {
+            values[j] = residuals.get(rows[j]);
+        }
+        logger.debug("folding in user {} with {} ratings", user, rows.length);
+        return foldIn.foldIn(model, rows, values);
+    }
+}
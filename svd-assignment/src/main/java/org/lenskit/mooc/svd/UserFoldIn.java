@@ -0,0 +1,23 @@
+package org.lenskit.mooc.svd;
+
+import org.grouplens.grapht.annotation.DefaultProvider;
+
+/**
+ * Computes features for a user who is not in an {@link SVDModel} from their ratings, so they can be
+ * scored without retraining the model.  By default the fold-in {@linkplain UserFoldInProvider
+ * matches the solver} that trained the model.
+ *
+ * @see UserFeatureCache
+ */
+@DefaultProvider(UserFoldInProvider.class)
+public interface UserFoldIn {
+    /**
+     * Fold a user into a model.
+     * @param model The model.
+     * @param itemRows The row numbers of the items the user has rated.
+     * @param residuals The user's ratings of those items, less their baseline scores.
+     * @return The user's features, with the model's feature weights applied, so that their dot
+     *         product with an item's features is the predicted offset.
+     */
+    double[] foldIn(SVDModel model, int[] itemRows, double[] residuals);
+}
@@ -0,0 +1,53 @@
+package org.lenskit.mooc.svd;
+
+import org.grouplens.lenskit.iterative.RegularizationTerm;
+import org.lenskit.inject.Shareable;
+import org.lenskit.inject.Transient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Provides the {@linkplain UserFoldIn fold-in} that matches how the model was trained: a
+ * {@link LeastSquaresFoldIn} for models trained by {@link ALSSolver}, and a
+ * {@link ProjectionFoldIn} for the singular value decompositions.  Models that were not trained
+ * in this configuration (such as {@linkplain MappedSVDModelProvider mapped model files}) are
+ * recognized as ALS models by their {@linkplain SVDModel#hasUnitFeatureWeights() unit feature
+ * weights}.
+ */
+public class UserFoldInProvider implements Provider<UserFoldIn> {
+    private static final Logger logger = LoggerFactory.getLogger(UserFoldInProvider.class);
+
+    private final SVDSolver solver;
+    private final SVDModel model;
+    private final double regularization;
+
+    /**
+     * Construct the provider.
+     * @param solver The configured SVD solver.
+     * @param model The SVD model.
+     * @param reg The regularization term for least-squares fold-ins.
+     */
+    @Inject
+    public UserFoldInProvider(@Transient SVDSolver solver,
+                              @Transient SVDModel model,
+                              @RegularizationTerm double reg) {
+        this.solver = solver;
+        this.model = model;
+        regularization = reg;
+    }
+
+    @Override
+    @Shareable
+    public UserFoldIn get() {
+        if (solver instanceof ALSSolver || model.hasUnitFeatureWeights()) {
+            logger.debug("folding users in by least squares");
+            return new LeastSquaresFoldIn(regularization);
+        } else {
+            logger.debug("folding users in by projection");
+            return new ProjectionFoldIn();
+        }
+    }
+}
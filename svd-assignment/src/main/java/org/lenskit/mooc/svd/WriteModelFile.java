@@ -0,0 +1,40 @@
+package org.lenskit.mooc.svd;
+
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.LenskitRecommenderEngineBuilder;
+import org.lenskit.bias.BiasModel;
+import org.lenskit.config.ConfigHelpers;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+/**
+ * Trains the configured SVD recommender and writes its model and baseline to a
+ * {@linkplain SVDModelFile model file}.
+ *
+ * <p>Usage: {@code WriteModelFile OUTPUT DATA CONFIG...}
+ */
+public class WriteModelFile {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage: WriteModelFile OUTPUT DATA CONFIG...");
+            System.exit(2);
+        }
+        File output = new File(args[0]);
+        DataAccessObject dao = StaticDataSource.load(Paths.get(args[1])).get();
+        LenskitRecommenderEngineBuilder builder = LenskitRecommenderEngine.newBuilder();
+        for (int i = 2; i < args.length; i++) {
+            builder.addConfiguration(ConfigHelpers.load(new File(args[i])));
+        }
+        LenskitRecommender rec = builder.build(dao).createRecommender(dao);
+        try {
+            SVDModelFile.write(output, rec.get(SVDModel.class), rec.get(BiasModel.class));
+            System.out.format("wrote %s (%d bytes)%n", output, output.length());
+        } finally {
+            rec.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.lenskit.mooc.svd;
+
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.grouplens.lenskit.iterative.IterationCountStoppingCondition;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ALSSolverTest {
+    @Test
+    public void testSolveKnownSystem() {
+        // A = L L' with L = [[2, 0, 0], [1, 3, 0], [-1, 2, 1]], and x = [1, -2, 3]
+        double[] a = {4, 2, -2,
+                      2, 10, 5,
+                      -2, 5, 6};
+        double[] b = {-6, -3, 6};
+        ALSSolver.solveCholesky(a, b, 3);
+        assertThat(b[0], closeTo(1, 1.0e-12));
+        assertThat(b[1], closeTo(-2, 1.0e-12));
+        assertThat(b[2], closeTo(3, 1.0e-12));
+        // the lower triangle holds the factor
+        assertThat(a[0], closeTo(2, 1.0e-12));
+        assertThat(a[3], closeTo(1, 1.0e-12));
+        assertThat(a[4], closeTo(3, 1.0e-12));
+        assertThat(a[6], closeTo(-1, 1.0e-12));
+        assertThat(a[7], closeTo(2, 1.0e-12));
+        assertThat(a[8], closeTo(1, 1.0e-12));
+    }
+
+    @Test
+    public void testSolveReadsLowerTriangle() {
+        // garbage above the diagonal, as the solver only accumulates the lower triangle
+        double[] a = {4, 99, 99,
+                      2, 10, 99,
+                      -2, 5, 6};
+        double[] b = {-6, -3, 6};
+        ALSSolver.solveCholesky(a, b, 3);
+        assertThat(b[0], closeTo(1, 1.0e-12));
+        assertThat(b[1], closeTo(-2, 1.0e-12));
+        assertThat(b[2], closeTo(3, 1.0e-12));
+    }
+
+    @Test
+    public void testSolveRegularizedGram() {
+        Random rng = new Random(42);
+        int k = 8;
+        int n = 20;
+        RealMatrix y = MatrixUtils.createRealMatrix(n, k);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < k; j++) {
+                y.setEntry(i, j, rng.nextGaussian());
+            }
+        }
+        RealMatrix gram = y.transpose().multiply(y)
+                           .add(MatrixUtils.createRealIdentityMatrix(k).scalarMultiply(0.5));
+        double[] rhs = new double[k];
+        for (int j = 0; j < k; j++) {
+            rhs[j] = rng.nextGaussian();
+        }
+        double[] expected = new CholeskyDecomposition(gram).getSolver()
+                                                           .solve(MatrixUtils.createRealVector(rhs))
+                                                           .toArray();
+
+        double[] a = new double[k * k];
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < k; j++) {
+                a[i * k + j] = gram.getEntry(i, j);
+            }
+        }
+        double[] b = rhs.clone();
+        ALSSolver.solveCholesky(a, b, k);
+        for (int j = 0; j < k; j++) {
+            assertThat(b[j], closeTo(expected[j], 1.0e-10));
+        }
+    }
+
+    @Test
+    public void testTrainingErrorFalls() {
+        ResidualMatrix matrix = RandomizedSVDSolverTest.lowRankMatrix(100, 80, 3, 0.3,
+                                                                      new Random(42));
+        double last = Double.MAX_VALUE;
+        for (int iters: new int[]{1, 2, 5, 20}) {
+            double rmse = rmse(train(matrix, iters, null), matrix);
+            assertThat(rmse, lessThan(last));
+            last = rmse;
+        }
+        // the entries are a rank-3 matrix plus noise with standard deviation 0.01
+        assertThat(last, lessThan(0.02));
+    }
+
+    @Test
+    public void testWarmStartReproducesModel() {
+        ResidualMatrix matrix = RandomizedSVDSolverTest.lowRankMatrix(100, 80, 3, 0.3,
+                                                                      new Random(42));
+        SVDModel converged = train(matrix, 50, null);
+        SVDModel cold = train(matrix, 1, null);
+        SVDModel warm = train(matrix, 1, converged);
+
+        double expected = rmse(converged, matrix);
+        assertThat(rmse(warm, matrix), closeTo(expected, 1.0e-4));
+        assertThat(rmse(cold, matrix), greaterThan(2 * expected));
+        for (int u = 0; u < matrix.getRowCount(); u++) {
+            for (int i = 0; i < matrix.getColumnCount(); i++) {
+                assertThat(warm.dot(u, i), closeTo(converged.dot(u, i), 1.0e-2));
+            }
+        }
+    }
+
+    @Test
+    public void testWarmStartNewItemsRandom() {
+        ResidualMatrix matrix = RandomizedSVDSolverTest.lowRankMatrix(100, 80, 3, 0.3,
+                                                                      new Random(42));
+        // the initial model has only the first 70 items
+        SVDModel initial = train(firstItems(matrix, 70), 50, null);
+        SVDModel start = train(matrix, 0, initial);
+
+        double[] expected = new double[3];
+        double[] actual = new double[3];
+        for (int i = 0; i < 80; i++) {
+            start.getItemFeatures(i, actual, 0);
+            if (i < 70) {
+                initial.getItemFeatures(i, expected, 0);
+                assertThat(actual, equalTo(expected));
+            } else {
+                assertThat(actual, not(equalTo(new double[3])));
+                for (double x: actual) {
+                    assertThat(Math.abs(x), lessThan(0.5));
+                }
+            }
+        }
+        // the features of the new items are fitted from there
+        assertThat(rmse(train(matrix, 5, initial), matrix), lessThan(0.02));
+    }
+
+    private static SVDModel train(ResidualMatrix matrix, int iterations, SVDModel initial) {
+        return new ALSSolver(new IterationCountStoppingCondition(iterations), 0.001, 42, initial)
+                .decompose(matrix, 3);
+    }
+
+    private static double rmse(SVDModel model, ResidualMatrix matrix) {
+        double sse = 0;
+        for (int u = 0; u < matrix.getRowCount(); u++) {
+            for (int p = matrix.getRowStart(u); p < matrix.getRowEnd(u); p++) {
+                double err = matrix.getEntryValue(p) - model.dot(u, matrix.getEntryColumn(p));
+                sse += err * err;
+            }
+        }
+        return Math.sqrt(sse / matrix.getEntryCount());
+    }
+
+    /**
+     * Restrict a matrix to its first columns.
+     */
+    private static ResidualMatrix firstItems(ResidualMatrix matrix, int nitems) {
+        int[] rowPtr = new int[matrix.getRowCount() + 1];
+        int[] cols = new int[matrix.getEntryCount()];
+        float[] vals = new float[matrix.getEntryCount()];
+        int n = 0;
+        for (int u = 0; u < matrix.getRowCount(); u++) {
+            rowPtr[u] = n;
+            for (int p = matrix.getRowStart(u); p < matrix.getRowEnd(u); p++) {
+                if (matrix.getEntryColumn(p) < nitems) {
+                    cols[n] = matrix.getEntryColumn(p);
+                    vals[n] = matrix.getEntryValue(p);
+                    n++;
+                }
+            }
+        }
+        rowPtr[matrix.getRowCount()] = n;
+        return new ResidualMatrix(matrix.getUserIndex(), RandomizedSVDSolverTest.keys(nitems),
+                                  rowPtr, Arrays.copyOf(cols, n), Arrays.copyOf(vals, n));
+    }
+}
@@ -0,0 +1,96 @@
+package org.lenskit.mooc.svd;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class QuantizedFeatureMatrixTest {
+    private static final int ROWS = 200;
+    private static final int FEATURES = 16;
+
+    private double[] values;
+    private QuantizedFeatureMatrix matrix;
+    private Random rng;
+
+    @Before
+    public void createMatrix() {
+        rng = new Random(42);
+        values = new double[ROWS * FEATURES];
+        for (int r = 0; r < ROWS; r++) {
+            // rows of very different magnitudes, and one row of zeros
+            double magnitude = r == 7 ? 0 : Math.pow(10, rng.nextInt(7) - 3);
+            for (int f = 0; f < FEATURES; f++) {
+                values[r * FEATURES + f] = rng.nextGaussian() * magnitude;
+            }
+        }
+        matrix = QuantizedFeatureMatrix.create(values, FEATURES);
+    }
+
+    @Test
+    public void testRowsWithinHalfStep() {
+        assertThat(matrix.getRowCount(), equalTo(ROWS));
+        assertThat(matrix.getFeatureCount(), equalTo(FEATURES));
+        double[] row = new double[FEATURES];
+        for (int r = 0; r < ROWS; r++) {
+            matrix.getRow(r, row, 0);
+            double step = maxAbs(r) / 127;
+            for (int f = 0; f < FEATURES; f++) {
+                assertThat(row[f], closeTo(values[r * FEATURES + f], bound(step, 1)));
+            }
+        }
+    }
+
+    @Test
+    public void testDotWithinBound() {
+        double[] out = new double[ROWS];
+        for (int trial = 0; trial < 10; trial++) {
+            double[] vector = new double[FEATURES];
+            double norm1 = 0;
+            for (int f = 0; f < FEATURES; f++) {
+                vector[f] = rng.nextGaussian();
+                norm1 += Math.abs(vector[f]);
+            }
+            matrix.dotAll(vector, out);
+            for (int r = 0; r < ROWS; r++) {
+                double exact = 0;
+                for (int f = 0; f < FEATURES; f++) {
+                    exact += values[r * FEATURES + f] * vector[f];
+                }
+                // each feature is off by at most half a quantization step
+                double tolerance = bound(maxAbs(r) / 127, norm1);
+                assertThat(matrix.dot(r, vector), closeTo(exact, tolerance));
+                assertThat(out[r], closeTo(exact, tolerance));
+            }
+        }
+    }
+
+    @Test
+    public void testZeroRow() {
+        double[] row = new double[FEATURES];
+        matrix.getRow(7, row, 0);
+        for (double v: row) {
+            assertThat(v, equalTo(0.0));
+        }
+        assertThat(matrix.dot(7, row), equalTo(0.0));
+    }
+
+    private double maxAbs(int r) {
+        double max = 0;
+        for (int f = 0; f < FEATURES; f++) {
+            max = Math.max(max, Math.abs(values[r * FEATURES + f]));
+        }
+        return max;
+    }
+
+    /**
+     * The error bound for a quantization step and a weight, allowing for the step being stored as a
+     * float.
+     */
+    private static double bound(double step, double weight) {
+        return (0.5 + 1.0e-5) * step * weight + 1.0e-15;
+    }
+}
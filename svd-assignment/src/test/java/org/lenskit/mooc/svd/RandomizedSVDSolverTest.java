@@ -0,0 +1,126 @@
+package org.lenskit.mooc.svd;
+
+import org.junit.Test;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class RandomizedSVDSolverTest {
+    private static final int FEATURES = 5;
+
+    /**
+     * Create a residual matrix that is a random low-rank matrix plus a little noise.
+     * @param users The number of users (rows).
+     * @param items The number of items (columns).
+     * @param rank The rank of the underlying matrix.
+     * @param density The fraction of entries that are observed.
+     * @param rng The random number generator.
+     * @return The residual matrix.
+     */
+    static ResidualMatrix lowRankMatrix(int users, int items, int rank, double density,
+                                        Random rng) {
+        double[][] p = new double[users][rank];
+        double[][] q = new double[items][rank];
+        for (double[] row: p) {
+            for (int f = 0; f < rank; f++) {
+                row[f] = rng.nextGaussian();
+            }
+        }
+        for (double[] row: q) {
+            for (int f = 0; f < rank; f++) {
+                row[f] = rng.nextGaussian();
+            }
+        }
+
+        int[] rowPtr = new int[users + 1];
+        int[] colIdx = new int[users * items];
+        float[] vals = new float[users * items];
+        int n = 0;
+        for (int u = 0; u < users; u++) {
+            rowPtr[u] = n;
+            for (int i = 0; i < items; i++) {
+                if (rng.nextDouble() < density) {
+                    double v = 0.01 * rng.nextGaussian();
+                    for (int f = 0; f < rank; f++) {
+                        v += p[u][f] * q[i][f];
+                    }
+                    colIdx[n] = i;
+                    vals[n] = (float) v;
+                    n++;
+                }
+            }
+        }
+        rowPtr[users] = n;
+        int[] cols = new int[n];
+        float[] values = new float[n];
+        System.arraycopy(colIdx, 0, cols, 0, n);
+        System.arraycopy(vals, 0, values, 0, n);
+        return new ResidualMatrix(keys(users), keys(items), rowPtr, cols, values);
+    }
+
+    static SortedKeyIndex keys(int n) {
+        long[] keys = new long[n];
+        for (int k = 0; k < n; k++) {
+            keys[k] = k + 1;
+        }
+        return SortedKeyIndex.create(keys);
+    }
+
+    @Test
+    public void testMatchesDenseSolver() {
+        // large enough that the randomized solver does not fall back to the dense one
+        ResidualMatrix matrix = lowRankMatrix(80, 60, FEATURES, 1.0, new Random(42));
+        assertThat(2 * (FEATURES + 10), lessThan(Math.min(80, 60)));
+
+        SVDModel dense = new DenseSVDSolver().decompose(matrix, FEATURES);
+        SVDModel randomized = new RandomizedSVDSolver(42).decompose(matrix, FEATURES);
+
+        double[] expectedWeights = dense.getFeatureWeights().toArray();
+        double[] weights = randomized.getFeatureWeights().toArray();
+        assertThat(weights.length, equalTo(FEATURES));
+        for (int f = 0; f < FEATURES; f++) {
+            assertThat(weights[f], closeTo(expectedWeights[f], 1.0e-6 * expectedWeights[0]));
+        }
+
+        // the features are only unique up to sign, but the rank-k reconstruction is unique
+        double sumSquares = 0;
+        double sumSquareErrors = 0;
+        for (int u = 0; u < matrix.getRowCount(); u++) {
+            for (int i = 0; i < matrix.getColumnCount(); i++) {
+                double expected = dense.dot(u, i);
+                double err = randomized.dot(u, i) - expected;
+                sumSquares += expected * expected;
+                sumSquareErrors += err * err;
+            }
+        }
+        assertThat(Math.sqrt(sumSquareErrors / sumSquares), lessThan(1.0e-6));
+    }
+
+    @Test
+    public void testSmallMatrixUsesDenseSolver() {
+        // 2 * (5 + 10) > 25, so there is no point in sampling the range
+        ResidualMatrix matrix = lowRankMatrix(40, 25, FEATURES, 0.5, new Random(42));
+        SVDModel dense = new DenseSVDSolver().decompose(matrix, FEATURES);
+        SVDModel randomized = new RandomizedSVDSolver(42).decompose(matrix, FEATURES);
+        assertSameModel(randomized, dense);
+    }
+
+    @Test
+    public void testAllFeaturesUsesDenseSolver() {
+        ResidualMatrix matrix = lowRankMatrix(80, 60, FEATURES, 0.5, new Random(42));
+        SVDModel dense = new DenseSVDSolver().decompose(matrix, 0);
+        SVDModel randomized = new RandomizedSVDSolver(42).decompose(matrix, 0);
+        assertThat(randomized.getFeatureCount(), equalTo(60));
+        assertSameModel(randomized, dense);
+    }
+
+    private static void assertSameModel(SVDModel actual, SVDModel expected) {
+        assertThat(actual.getFeatureWeights(), equalTo(expected.getFeatureWeights()));
+        for (int u = 0; u < expected.getUserIndexMapping().size(); u++) {
+            assertThat(actual.getUserFeatures(u), equalTo(expected.getUserFeatures(u)));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.lenskit.mooc.svd;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.api.ItemRecommender;
+import org.lenskit.api.ItemScorer;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.lenskit.bias.BiasModel;
+import org.lenskit.bias.UserItemBiasModel;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SVDItemRecommenderTest {
+    private static final int USERS = 30;
+    private static final int ITEMS = 25;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DataAccessObject dao;
+    private BiasModel bias;
+    private LenskitRecommenderEngine engine;
+
+    @Before
+    public void buildEngine() {
+        Random rng = new Random(42);
+        EntityFactory factory = new EntityFactory();
+        List<Rating> ratings = new ArrayList<>();
+        Long2DoubleMap itemBias = new Long2DoubleOpenHashMap();
+        for (int i = 1; i <= ITEMS; i++) {
+            itemBias.put(100 + i, rng.nextDouble() - 0.5);
+        }
+        for (int u = 1; u <= USERS; u++) {
+            for (int i = 1; i <= ITEMS; i++) {
+                if (rng.nextDouble() < 0.4) {
+                    ratings.add(factory.rating(u, 100 + i, 1 + rng.nextInt(9) * 0.5));
+                }
+            }
+        }
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(ratings);
+        dao = data.get();
+        bias = new UserItemBiasModel(3.0, new Long2DoubleOpenHashMap(), itemBias);
+        engine = LenskitRecommenderEngine.build(createConfig(SVDItemRecommender.class), dao);
+    }
+
+    private LenskitConfiguration createConfig(Class<? extends SVDItemRecommender> recommender) {
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(ItemScorer.class).to(SVDItemScorer.class);
+        config.bind(ItemRecommender.class).to(recommender);
+        config.bind(BiasModel.class).toInstance(bias);
+        config.set(LatentFeatureCount.class).to(5);
+        return config;
+    }
+
+    @Test
+    public void testItemBiasesShared() {
+        try (LenskitRecommender first = engine.createRecommender(dao);
+             LenskitRecommender second = engine.createRecommender(dao)) {
+            ModelItemBiases biases = first.get(ModelItemBiases.class);
+            assertThat(biases, notNullValue());
+            assertThat(second.get(ModelItemBiases.class), sameInstance(biases));
+
+            SVDModel model = first.get(SVDModel.class);
+            assertThat(biases.size(), equalTo(ITEMS));
+            for (int i = 0; i < biases.size(); i++) {
+                long item = model.getItemIndexMapping().getKey(i);
+                assertThat(biases.get(i), equalTo(bias.getItemBias(item)));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesScorer() {
+        try (LenskitRecommender rec = engine.createRecommender(dao)) {
+            ItemRecommender recommender = rec.getItemRecommender();
+            ItemScorer scorer = rec.getItemScorer();
+            assertThat(recommender, instanceOf(SVDItemRecommender.class));
+            for (long user = 1; user <= USERS; user++) {
+                ResultList results = recommender.recommendWithDetails(user, 5, null, null);
+                assertThat(results, hasSize(lessThanOrEqualTo(5)));
+                for (Result r: results) {
+                    assertThat(r.getScore(),
+                               closeTo(scorer.score(user, r.getId()).getScore(), 1.0e-9));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndexSeeded() {
+        try (LenskitRecommender rec = engine.createRecommender(dao)) {
+            SVDModel model = rec.get(SVDModel.class);
+            ItemFactorIndex first = new ItemFactorIndexBuilder(model, bias, 4, 42).get();
+            ItemFactorIndex second = new ItemFactorIndexBuilder(model, bias, 4, 42).get();
+            for (int u = 0; u < model.getUserIndexMapping().size(); u++) {
+                assertThat(second.getCandidateRows(model, u, 2),
+                           equalTo(first.getCandidateRows(model, u, 2)));
+            }
+        }
+    }
+
+    @Test
+    public void testIndexedRecommenderSearchingAllPartitions() {
+        LenskitConfiguration config = createConfig(IndexedSVDItemRecommender.class);
+        config.set(IndexPartitionCount.class).to(4);
+        config.set(IndexProbeCount.class).to(4);
+        LenskitRecommenderEngine indexedEngine = LenskitRecommenderEngine.build(config, dao);
+        try (LenskitRecommender exact = engine.createRecommender(dao);
+             LenskitRecommender indexed = indexedEngine.createRecommender(dao)) {
+            assertThat(indexed.getItemRecommender(), instanceOf(IndexedSVDItemRecommender.class));
+            for (long user = 1; user <= USERS; user++) {
+                assertThat(indexed.getItemRecommender().recommend(user, 5),
+                           equalTo(exact.getItemRecommender().recommend(user, 5)));
+            }
+        }
+    }
+
+    @Test
+    public void testMappedModelFile() throws Exception {
+        File file = folder.newFile("svd.model");
+        try (LenskitRecommender rec = engine.createRecommender(dao)) {
+            SVDModelFile.write(file, rec.get(SVDModel.class), rec.get(BiasModel.class));
+        }
+
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(ItemScorer.class).to(SVDItemScorer.class);
+        config.bind(ItemRecommender.class).to(SVDItemRecommender.class);
+        config.bind(SVDModel.class).toProvider(MappedSVDModelProvider.class);
+        config.bind(BiasModel.class).toProvider(MappedBiasModelProvider.class);
+        config.set(ModelFile.class).to(file.getAbsolutePath());
+        LenskitRecommenderEngine mappedEngine = LenskitRecommenderEngine.build(config, dao);
+        try (LenskitRecommender trained = engine.createRecommender(dao);
+             LenskitRecommender mapped = mappedEngine.createRecommender(dao)) {
+            // the model and baseline come from one opening of the file
+            SVDModelFile opened = mapped.get(SVDModelFile.class);
+            assertThat(opened, notNullValue());
+            assertThat(mapped.get(SVDModel.class), sameInstance(opened.getModel()));
+            assertThat(mapped.get(BiasModel.class), sameInstance(opened.getBiasModel()));
+
+            ItemScorer scorer = trained.getItemScorer();
+            for (long user = 1; user <= USERS; user++) {
+                ResultList results = mapped.getItemRecommender()
+                                           .recommendWithDetails(user, 5, null, null);
+                assertThat(results.idList(),
+                           equalTo(trained.getItemRecommender().recommend(user, 5)));
+                for (Result r: results) {
+                    assertThat(r.getScore(),
+                               closeTo(scorer.score(user, r.getId()).getScore(), 1.0e-9));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.lenskit.mooc.svd;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.bias.BiasModel;
+import org.lenskit.bias.UserItemBiasModel;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SVDModelBuilderTest {
+    private static final int USERS = 12;
+    private static final int ITEMS = 9;
+
+    private EntityFactory factory = new EntityFactory();
+    private BiasModel bias;
+    private List<Rating> ratings;
+    private double[][] expected;
+
+    @Before
+    public void createRatings() {
+        Random rng = new Random(42);
+        Long2DoubleMap userBias = new Long2DoubleOpenHashMap();
+        Long2DoubleMap itemBias = new Long2DoubleOpenHashMap();
+        for (int u = 1; u <= USERS; u++) {
+            userBias.put(u, rng.nextDouble() - 0.5);
+        }
+        for (int i = 1; i <= ITEMS; i++) {
+            itemBias.put(100 + i, rng.nextDouble() - 0.5);
+        }
+        bias = new UserItemBiasModel(3.5, userBias, itemBias);
+
+        // each user rates a random subset of the items, in random order
+        List<Rating> list = new ArrayList<>();
+        for (int u = 1; u <= USERS; u++) {
+            for (int i = 1; i <= ITEMS; i++) {
+                if (rng.nextDouble() < 0.6) {
+                    list.add(factory.rating(u, 100 + i, 1 + rng.nextInt(9) * 0.5));
+                }
+            }
+        }
+        Collections.shuffle(list, rng);
+        // then rates some of them again, and the later ratings should win
+        int n = list.size();
+        for (int k = 0; k < n; k += 4) {
+            Rating r = list.get(k);
+            list.add(factory.rating(r.getUserId(), r.getItemId(), 6 - r.getValue()));
+        }
+        ratings = list;
+
+        expected = new double[USERS][ITEMS];
+        for (Rating r: ratings) {
+            expected[(int) r.getUserId() - 1][(int) r.getItemId() - 101] =
+                    r.getValue() - 3.5 - userBias.get(r.getUserId())
+                            - itemBias.get(r.getItemId());
+        }
+    }
+
+    @Test
+    public void testRatingMatrix() {
+        ResidualMatrix matrix = buildMatrix();
+        assertThat(matrix.getRowCount(), equalTo(USERS));
+        assertThat(matrix.getColumnCount(), equalTo(ITEMS));
+
+        int nonzero = 0;
+        for (int r = 0; r < matrix.getRowCount(); r++) {
+            for (int p = matrix.getRowStart(r); p < matrix.getRowEnd(r); p++) {
+                if (p > matrix.getRowStart(r)) {
+                    assertThat(matrix.getEntryColumn(p),
+                               greaterThan(matrix.getEntryColumn(p - 1)));
+                }
+                nonzero += 1;
+            }
+        }
+        assertThat(nonzero, equalTo(countNonzero()));
+        assertThat(matrix.getEntryCount(), equalTo(nonzero));
+        assertDense(matrix.toDenseMatrix(), dense(matrix, false));
+    }
+
+    @Test
+    public void testTranspose() {
+        ResidualMatrix matrix = buildMatrix();
+        ResidualMatrix transpose = matrix.transpose();
+        assertThat(transpose.getRowCount(), equalTo(matrix.getColumnCount()));
+        assertThat(transpose.getColumnCount(), equalTo(matrix.getRowCount()));
+        assertThat(transpose.getEntryCount(), equalTo(matrix.getEntryCount()));
+        assertThat(transpose.getUserIndex(), sameInstance(matrix.getItemIndex()));
+        assertThat(transpose.getItemIndex(), sameInstance(matrix.getUserIndex()));
+        assertDense(transpose.toDenseMatrix(), dense(matrix, true));
+        assertThat(matrix.transpose(), sameInstance(transpose));
+    }
+
+    @Test
+    public void testMultiply() {
+        ResidualMatrix matrix = buildMatrix();
+        RealMatrix dense = matrix.toDenseMatrix();
+        Random rng = new Random(7);
+        double[][] x = new double[3][ITEMS];
+        double[][] y = new double[3][USERS];
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < ITEMS; i++) {
+                x[c][i] = rng.nextGaussian();
+            }
+            for (int u = 0; u < USERS; u++) {
+                y[c][u] = rng.nextGaussian();
+            }
+        }
+        double[][] ax = matrix.multiply(x);
+        double[][] aty = matrix.multiplyTranspose(y);
+        for (int c = 0; c < 3; c++) {
+            double[] dax = dense.operate(x[c]);
+            double[] daty = dense.preMultiply(y[c]);
+            for (int u = 0; u < USERS; u++) {
+                assertThat(ax[c][u], closeTo(dax[u], 1.0e-10));
+            }
+            for (int i = 0; i < ITEMS; i++) {
+                assertThat(aty[c][i], closeTo(daty[i], 1.0e-10));
+            }
+        }
+    }
+
+    /**
+     * Run the model builder with a solver that keeps the matrix it is given.
+     */
+    private ResidualMatrix buildMatrix() {
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(ratings);
+        DataAccessObject dao = data.get();
+        final ResidualMatrix[] captured = new ResidualMatrix[1];
+        SVDSolver solver = new SVDSolver() {
+            @Override
+            public SVDModel decompose(ResidualMatrix matrix, int featureCount) {
+                captured[0] = matrix;
+                return new DenseSVDSolver().decompose(matrix, featureCount);
+            }
+        };
+        new SVDModelBuilder(dao, bias, solver, 2, "double").get();
+        return captured[0];
+    }
+
+    /**
+     * Lay out the expected residuals (or their transpose) by the matrix's row and column numbers.
+     */
+    private RealMatrix dense(ResidualMatrix matrix, boolean transpose) {
+        RealMatrix result = MatrixUtils.createRealMatrix(transpose ? ITEMS : USERS,
+                                                         transpose ? USERS : ITEMS);
+        for (int u = 0; u < USERS; u++) {
+            int row = matrix.getUserIndex().getIndex(u + 1);
+            for (int i = 0; i < ITEMS; i++) {
+                int col = matrix.getItemIndex().getIndex(101 + i);
+                if (transpose) {
+                    result.setEntry(col, row, expected[u][i]);
+                } else {
+                    result.setEntry(row, col, expected[u][i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int countNonzero() {
+        int n = 0;
+        for (double[] row: expected) {
+            for (double v: row) {
+                if (v != 0) {
+                    n += 1;
+                }
+            }
+        }
+        return n;
+    }
+
+    private static void assertDense(RealMatrix actual, RealMatrix expected) {
+        assertThat(actual.getRowDimension(), equalTo(expected.getRowDimension()));
+        assertThat(actual.getColumnDimension(), equalTo(expected.getColumnDimension()));
+        for (int r = 0; r < expected.getRowDimension(); r++) {
+            for (int c = 0; c < expected.getColumnDimension(); c++) {
+                // the residuals are stored in single precision
+                assertThat(actual.getEntry(r, c), closeTo(expected.getEntry(r, c), 1.0e-6));
+            }
+        }
+    }
+}
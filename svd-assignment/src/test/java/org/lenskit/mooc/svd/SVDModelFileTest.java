@@ -0,0 +1,129 @@
+package org.lenskit.mooc.svd;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lenskit.bias.BiasModel;
+import org.lenskit.bias.UserItemBiasModel;
+import org.lenskit.util.keys.FrozenHashKeyIndex;
+import org.lenskit.util.keys.KeyIndex;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SVDModelFileTest {
+    private static final int USERS = 40;
+    private static final int ITEMS = 70;
+    private static final int FEATURES = 6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SVDModel model;
+    private BiasModel bias;
+
+    @Before
+    public void createModel() {
+        Random rng = new Random(42);
+        LongList userIds = new LongArrayList();
+        Long2DoubleMap userBiases = new Long2DoubleOpenHashMap();
+        for (int u = 0; u < USERS; u++) {
+            long id = 1000 + 7 * u;
+            userIds.add(id);
+            userBiases.put(id, rng.nextGaussian());
+        }
+        LongList itemIds = new LongArrayList();
+        Long2DoubleMap itemBiases = new Long2DoubleOpenHashMap();
+        for (int i = 0; i < ITEMS; i++) {
+            long id = 50 + 3 * i;
+            itemIds.add(id);
+            itemBiases.put(id, rng.nextGaussian());
+        }
+        KeyIndex users = FrozenHashKeyIndex.create(userIds);
+        KeyIndex items = FrozenHashKeyIndex.create(itemIds);
+
+        double[] weights = new double[FEATURES];
+        for (int f = 0; f < FEATURES; f++) {
+            weights[f] = FEATURES - f;
+        }
+        model = new SVDModel(users, items, weights, random(rng, USERS), random(rng, ITEMS));
+        bias = new UserItemBiasModel(3.25, userBiases, itemBiases);
+    }
+
+    @Test
+    public void testRoundTripDouble() throws Exception {
+        checkRoundTrip(FeatureMatrix.Encoding.DOUBLE);
+    }
+
+    @Test
+    public void testRoundTripFloat() throws Exception {
+        checkRoundTrip(FeatureMatrix.Encoding.FLOAT);
+    }
+
+    @Test
+    public void testRoundTripInt8() throws Exception {
+        checkRoundTrip(FeatureMatrix.Encoding.INT8);
+    }
+
+    private void checkRoundTrip(FeatureMatrix.Encoding encoding) throws Exception {
+        SVDModel encoded = model.encode(encoding);
+        File file = folder.newFile(encoding.name().toLowerCase() + ".model");
+        SVDModelFile.write(file, encoded, bias);
+        SVDModelFile mapped = SVDModelFile.open(file);
+        SVDModel loaded = mapped.getModel();
+
+        assertThat(loaded.getFeatureCount(), equalTo(FEATURES));
+        assertThat(loaded.getUserMatrix().getEncoding(), equalTo(encoding));
+        assertThat(loaded.getItemMatrix().getEncoding(), equalTo(encoding));
+        assertThat(loaded.getFeatureWeights(), equalTo(encoded.getFeatureWeights()));
+        assertThat(loaded.getUserIndexMapping().getKeyList(),
+                   equalTo(encoded.getUserIndexMapping().getKeyList()));
+        assertThat(loaded.getItemIndexMapping().getKeyList(),
+                   equalTo(encoded.getItemIndexMapping().getKeyList()));
+
+        // the file holds the encoded values, so they come back exactly
+        for (int u = 0; u < USERS; u++) {
+            assertThat(loaded.getUserFeatures(u), equalTo(encoded.getUserFeatures(u)));
+        }
+        double[] expected = new double[FEATURES];
+        double[] actual = new double[FEATURES];
+        for (int i = 0; i < ITEMS; i++) {
+            encoded.getItemFeatures(i, expected, 0);
+            loaded.getItemFeatures(i, actual, 0);
+            assertThat(actual, equalTo(expected));
+        }
+        double[] expectedScores = new double[ITEMS];
+        double[] actualScores = new double[ITEMS];
+        for (int u = 0; u < USERS; u++) {
+            encoded.dotAll(u, expectedScores);
+            loaded.dotAll(u, actualScores);
+            assertThat(actualScores, equalTo(expectedScores));
+        }
+
+        BiasModel loadedBias = mapped.getBiasModel();
+        assertThat(loadedBias.getIntercept(), equalTo(bias.getIntercept()));
+        for (long user: encoded.getUserIndexMapping().getKeyList()) {
+            assertThat(loadedBias.getUserBias(user), equalTo(bias.getUserBias(user)));
+        }
+        for (long item: encoded.getItemIndexMapping().getKeyList()) {
+            assertThat(loadedBias.getItemBias(item), equalTo(bias.getItemBias(item)));
+        }
+        assertThat(loadedBias.getItemBias(1), equalTo(0.0));
+    }
+
+    private static double[] random(Random rng, int nrows) {
+        double[] values = new double[nrows * FEATURES];
+        for (int j = 0; j < values.length; j++) {
+            values[j] = rng.nextGaussian();
+        }
+        return values;
+    }
+}
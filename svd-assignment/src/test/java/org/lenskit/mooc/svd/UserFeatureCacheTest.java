@@ -0,0 +1,162 @@
+package org.lenskit.mooc.svd;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.grouplens.lenskit.iterative.IterationCount;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.api.ItemScorer;
+import org.lenskit.api.Result;
+import org.lenskit.bias.BiasModel;
+import org.lenskit.bias.UserItemBiasModel;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.EntityFactory;
+import org.lenskit.data.ratings.Rating;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class UserFeatureCacheTest {
+    private static final int USERS = 30;
+    private static final int ITEMS = 20;
+    private static final long NEW_USER = 999;
+
+    private EntityFactory factory = new EntityFactory();
+    private List<Rating> ratings;
+    private List<Rating> newRatings;
+    private BiasModel bias;
+
+    @Before
+    public void createRatings() {
+        Random rng = new Random(42);
+        ratings = new ArrayList<>();
+        for (int u = 1; u <= USERS; u++) {
+            for (int i = 1; i <= ITEMS; i++) {
+                if (rng.nextDouble() < 0.5) {
+                    ratings.add(factory.rating(u, 100 + i, 1 + rng.nextInt(9) * 0.5));
+                }
+            }
+        }
+        newRatings = new ArrayList<>(ratings);
+        newRatings.add(factory.rating(NEW_USER, 101, 5.0));
+        newRatings.add(factory.rating(NEW_USER, 102, 1.0));
+        newRatings.add(factory.rating(NEW_USER, 105, 4.0));
+        bias = new UserItemBiasModel(3.0, new Long2DoubleOpenHashMap(),
+                                     new Long2DoubleOpenHashMap());
+    }
+
+    @Test
+    public void testFoldInFollowsSolver() {
+        DataAccessObject dao = dao(ratings);
+        try (LenskitRecommender dense = buildEngine(DenseSVDSolver.class, dao)
+                .createRecommender(dao);
+             LenskitRecommender als = buildEngine(ALSSolver.class, dao).createRecommender(dao)) {
+            assertThat(dense.get(UserFoldIn.class), instanceOf(ProjectionFoldIn.class));
+            assertThat(als.get(UserFoldIn.class), instanceOf(LeastSquaresFoldIn.class));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProjectionRejectsUnitWeights() {
+        DataAccessObject dao = dao(ratings);
+        try (LenskitRecommender als = buildEngine(ALSSolver.class, dao).createRecommender(dao)) {
+            SVDModel model = als.get(SVDModel.class);
+            assertThat(model.hasUnitFeatureWeights(), equalTo(true));
+            new ProjectionFoldIn().foldIn(model, new int[]{0}, new double[]{1.0});
+        }
+    }
+
+    @Test
+    public void testProjectionRecoversUserFeatures() {
+        DataAccessObject dao = dao(ratings);
+        try (LenskitRecommender rec = buildEngine(DenseSVDSolver.class, dao)
+                .createRecommender(dao)) {
+            SVDModel model = rec.get(SVDModel.class);
+            assertThat(model.hasUnitFeatureWeights(), equalTo(false));
+            UserFeatureCache cache = rec.get(UserFeatureCache.class);
+            for (long user = 1; user <= USERS; user++) {
+                double[] expected = model.getUserFeatures(model.getUserIndexMapping()
+                                                               .getIndex(user));
+                double[] actual = cache.getUserFeatures(dao, user);
+                assertThat(actual, notNullValue());
+                for (int f = 0; f < expected.length; f++) {
+                    // the model was trained on single-precision residuals
+                    assertThat(actual[f], closeTo(expected[f], 1.0e-5));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCacheShared() {
+        DataAccessObject train = dao(ratings);
+        DataAccessObject current = dao(newRatings);
+        LenskitRecommenderEngine engine = buildEngine(DenseSVDSolver.class, train);
+        try (LenskitRecommender first = engine.createRecommender(current);
+             LenskitRecommender second = engine.createRecommender(current)) {
+            UserFeatureCache cache = first.get(UserFeatureCache.class);
+            assertThat(second.get(UserFeatureCache.class), sameInstance(cache));
+
+            // the new user is folded in from the recommender's data, and kept for the next one
+            Result score = first.getItemScorer().score(NEW_USER, 110);
+            assertThat(score, notNullValue());
+            double[] features = cache.getUserFeatures(train, NEW_USER);
+            assertThat(features, notNullValue());
+            assertThat(second.getItemScorer().score(NEW_USER, 110).getScore(),
+                       equalTo(score.getScore()));
+
+            cache.invalidate(NEW_USER);
+            assertThat(cache.getUserFeatures(train, NEW_USER), nullValue());
+        }
+    }
+
+    @Test
+    public void testSerializedCacheIsEmpty() throws Exception {
+        DataAccessObject train = dao(ratings);
+        DataAccessObject current = dao(newRatings);
+        LenskitRecommenderEngine engine = buildEngine(DenseSVDSolver.class, train);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        engine.write(bytes);
+        LenskitRecommenderEngine loaded =
+                LenskitRecommenderEngine.load(new ByteArrayInputStream(bytes.toByteArray()));
+
+        try (LenskitRecommender rec = engine.createRecommender(current);
+             LenskitRecommender copy = loaded.createRecommender(current)) {
+            UserFeatureCache cache = rec.get(UserFeatureCache.class);
+            double[] features = cache.getUserFeatures(current, NEW_USER);
+            assertThat(features, notNullValue());
+
+            // the original still has the user cached, but the loaded copy must fold them in again
+            UserFeatureCache copyCache = copy.get(UserFeatureCache.class);
+            assertThat(copyCache, not(sameInstance(cache)));
+            assertThat(cache.getUserFeatures(train, NEW_USER), equalTo(features));
+            assertThat(copyCache.getUserFeatures(train, NEW_USER), nullValue());
+        }
+    }
+
+    private LenskitRecommenderEngine buildEngine(Class<? extends SVDSolver> solver,
+                                                 DataAccessObject dao) {
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(ItemScorer.class).to(SVDItemScorer.class);
+        config.bind(BiasModel.class).toInstance(bias);
+        config.bind(SVDSolver.class).to(solver);
+        config.set(LatentFeatureCount.class).to(4);
+        config.set(IterationCount.class).to(10);
+        return LenskitRecommenderEngine.build(config, dao);
+    }
+
+    private static DataAccessObject dao(List<Rating> ratings) {
+        StaticDataSource data = new StaticDataSource("test");
+        data.addSource(ratings);
+        return data.get();
+    }
+}